@@ -0,0 +1,43 @@
+package org.gezzon.grad.radiation;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Расчёт защиты брони по кэшированным уровням зачарования (ArmorProtectionCache.calculateProtection).
+ * Время — на один расчёт.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+public class ArmorProtectionBenchmark {
+
+    private static final int SAMPLES = 1024;
+    private static final int LEVELS = 5;
+
+    private int[][] armor;
+    private int[] radiationLevels;
+
+    @Setup
+    public void setup() {
+        armor = BenchmarkData.armor(SAMPLES, LEVELS);
+        radiationLevels = BenchmarkData.regionLevels(SAMPLES, LEVELS);
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(SAMPLES)
+    public void calculateProtection(Blackhole blackhole) {
+        for (int i = 0; i < SAMPLES; i++) {
+            blackhole.consume(ArmorProtectionCache.calculateProtection(armor[i], radiationLevels[i]));
+        }
+    }
+}
@@ -0,0 +1,88 @@
+package org.gezzon.grad.radiation;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * Синтетические данные для бенчмарков: источники, игроки, броня и уровни.
+ * Генерация детерминирована (фиксированный seed), поэтому результаты воспроизводимы.
+ */
+final class BenchmarkData {
+
+    static final String WORLD = "world";
+    static final double AREA = 4096.0; // Сторона квадрата мира, в котором раскиданы источники и игроки
+    static final long SEED = 0x6752414444L;
+
+    private BenchmarkData() {
+    }
+
+    /**
+     * Таблица из count уровней: base_accumulation и damage_start растут с уровнем.
+     */
+    static LevelTable levels(int count) {
+        List<LevelProfile> profiles = new ArrayList<>(count);
+        for (int level = 1; level <= count; level++) {
+            profiles.add(new LevelProfile(level, level * 0.1, level * 100.0, 5.0, level));
+        }
+        return LevelTable.compile(profiles);
+    }
+
+    /**
+     * Хранилище с count источниками: радиус 5–30 блоков, уровень 1–levels.
+     */
+    static WorldSourceStore sources(int count, int levels) {
+        Random random = new Random(SEED);
+        WorldSourceStore store = new WorldSourceStore(WORLD);
+        for (int id = 1; id <= count; id++) {
+            store.add(id,
+                    random.nextDouble() * AREA,
+                    40 + random.nextDouble() * 60,
+                    random.nextDouble() * AREA,
+                    5 + random.nextDouble() * 25,
+                    1 + random.nextInt(levels),
+                    0.5 + random.nextDouble());
+        }
+        return store;
+    }
+
+    /**
+     * count случайных точек {x, y, z} в том же квадрате.
+     */
+    static double[][] positions(int count) {
+        Random random = new Random(SEED + 1);
+        double[][] positions = new double[count][3];
+        for (double[] position : positions) {
+            position[0] = random.nextDouble() * AREA;
+            position[1] = 40 + random.nextDouble() * 60;
+            position[2] = random.nextDouble() * AREA;
+        }
+        return positions;
+    }
+
+    /**
+     * Уровни Radiation Protection на 4 частях брони; примерно половина частей без зачарования.
+     */
+    static int[][] armor(int count, int maxLevel) {
+        Random random = new Random(SEED + 2);
+        int[][] armor = new int[count][4];
+        for (int[] pieces : armor) {
+            for (int i = 0; i < pieces.length; i++) {
+                pieces[i] = random.nextBoolean() ? 0 : 1 + random.nextInt(maxLevel);
+            }
+        }
+        return armor;
+    }
+
+    /**
+     * Уровни регионов для count игроков: 0 (вне регионов) или 1–levels.
+     */
+    static int[] regionLevels(int count, int levels) {
+        Random random = new Random(SEED + 3);
+        int[] result = new int[count];
+        for (int i = 0; i < count; i++) {
+            result[i] = random.nextInt(4) == 0 ? 1 + random.nextInt(levels) : 0;
+        }
+        return result;
+    }
+}
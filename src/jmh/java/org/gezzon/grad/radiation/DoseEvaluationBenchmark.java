@@ -0,0 +1,91 @@
+package org.gezzon.grad.radiation;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.util.concurrent.TimeUnit;
+import java.util.function.IntToDoubleFunction;
+
+/**
+ * Расчёт скорости накопления для всех игроков — то же, что RadiationTask.calculateRadiationForPlayer,
+ * но без сервера: источники из WorldSourceStore, уровень региона из заранее заданного массива,
+ * защита брони через ArmorProtectionCache.calculateProtection.
+ * Время — на один проход по всем игрокам.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class DoseEvaluationBenchmark {
+
+    private static final int LEVELS = 5;
+
+    @Param({"1000", "10000", "100000"})
+    public int sources;
+
+    @Param({"100", "1000"})
+    public int players;
+
+    private WorldSourceStore store;
+    private LevelTable levelTable;
+    private IntToDoubleFunction baseAccumulation;
+    private DoseFieldCache doseFieldCache;
+    private double[][] positions;
+    private int[][] armor;
+    private int[] regionLevels;
+
+    @Setup
+    public void setup() {
+        levelTable = BenchmarkData.levels(LEVELS);
+        baseAccumulation = levelTable::baseAccumulation;
+        store = BenchmarkData.sources(sources, LEVELS);
+        positions = BenchmarkData.positions(players);
+        armor = BenchmarkData.armor(players, LEVELS);
+        regionLevels = BenchmarkData.regionLevels(players, LEVELS);
+        doseFieldCache = new DoseFieldCache(
+                (world, x, y, z, complete) -> store.sumDoseRate(x, y, z, baseAccumulation), 65536);
+    }
+
+    /**
+     * Точный расчёт: обход источников ячейки чанка для каждого игрока.
+     */
+    @Benchmark
+    public void evaluateDirect(Blackhole blackhole) {
+        for (int i = 0; i < players; i++) {
+            double[] position = positions[i];
+            double sourceRate = store.sumDoseRate(position[0], position[1], position[2], baseAccumulation);
+            blackhole.consume(finish(i, sourceRate));
+        }
+    }
+
+    /**
+     * Расчёт через кэш поля по секциям (после прогрева — только чтение из кэша).
+     */
+    @Benchmark
+    public void evaluateWithDoseFieldCache(Blackhole blackhole) {
+        for (int i = 0; i < players; i++) {
+            double[] position = positions[i];
+            double sourceRate = doseFieldCache.get(BenchmarkData.WORLD,
+                    (int) Math.floor(position[0]), (int) Math.floor(position[1]), (int) Math.floor(position[2]));
+            blackhole.consume(finish(i, sourceRate));
+        }
+    }
+
+    /**
+     * Вклад региона и защита брони — как в RadiationTask.
+     */
+    private double finish(int player, double sourceRate) {
+        int regionLevel = regionLevels[player];
+        double total = sourceRate;
+        if (regionLevel > 0) {
+            total += levelTable.baseAccumulation(regionLevel);
+        }
+        return total * (1.0 - ArmorProtectionCache.calculateProtection(armor[player], regionLevel));
+    }
+}
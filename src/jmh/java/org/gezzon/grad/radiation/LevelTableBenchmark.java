@@ -0,0 +1,63 @@
+package org.gezzon.grad.radiation;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Определение уровня урона по накопленной дозе (LevelTable.resolveDamage) и base_accumulation по уровню.
+ * Время — на одно обращение.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+public class LevelTableBenchmark {
+
+    private static final int SAMPLES = 1024;
+
+    @Param({"5", "50", "500"})
+    public int levels;
+
+    private LevelTable table;
+    private double[] doses;
+    private int[] levelIds;
+
+    @Setup
+    public void setup() {
+        table = BenchmarkData.levels(levels);
+        Random random = new Random(BenchmarkData.SEED);
+        doses = new double[SAMPLES];
+        levelIds = new int[SAMPLES];
+        double maxThreshold = levels * 100.0;
+        for (int i = 0; i < SAMPLES; i++) {
+            doses[i] = random.nextDouble() * maxThreshold * 1.2;
+            levelIds[i] = random.nextInt(levels + 2); // Включая несуществующие уровни
+        }
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(SAMPLES)
+    public void resolveDamage(Blackhole blackhole) {
+        for (double dose : doses) {
+            blackhole.consume(table.resolveDamage(dose));
+        }
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(SAMPLES)
+    public void baseAccumulation(Blackhole blackhole) {
+        for (int level : levelIds) {
+            blackhole.consume(table.baseAccumulation(level));
+        }
+    }
+}
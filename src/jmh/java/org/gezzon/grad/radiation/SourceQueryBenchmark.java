@@ -0,0 +1,53 @@
+package org.gezzon.grad.radiation;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.util.concurrent.TimeUnit;
+import java.util.function.IntConsumer;
+
+/**
+ * Поиск источников рядом с точкой (RadiationManager.getSourcesNear → WorldSourceStore.forEachWithin).
+ * Время — на один запрос.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+public class SourceQueryBenchmark {
+
+    private static final int QUERIES = 256;
+
+    @Param({"1000", "10000", "100000"})
+    public int sources;
+
+    @Param({"16", "64"})
+    public double distance;
+
+    private WorldSourceStore store;
+    private double[][] points;
+    private int found;
+    private final IntConsumer counter = id -> found++;
+
+    @Setup
+    public void setup() {
+        store = BenchmarkData.sources(sources, 5);
+        points = BenchmarkData.positions(QUERIES);
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(QUERIES)
+    public int sourcesNear() {
+        found = 0;
+        for (double[] point : points) {
+            store.forEachWithin(point[0], point[1], point[2], distance, counter);
+        }
+        return found;
+    }
+}
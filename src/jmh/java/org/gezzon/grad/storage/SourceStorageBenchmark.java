@@ -0,0 +1,92 @@
+package org.gezzon.grad.storage;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Logger;
+import java.util.stream.Stream;
+
+/**
+ * Загрузка и сохранение radiation-sources.yml (и для сравнения — бинарного снимка)
+ * на 1k/10k/100k синтетических источников. Файлы пишутся во временный каталог.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 2)
+@Measurement(iterations = 3)
+@Fork(1)
+public class SourceStorageBenchmark {
+
+    @Param({"1000", "10000", "100000"})
+    public int sources;
+
+    private File directory;
+    private List<SourceRecord> records;
+    private YamlSourceStorage yaml;
+    private BinarySourceStorage binary;
+
+    @Setup
+    public void setup() throws IOException {
+        directory = Files.createTempDirectory("grad-bench").toFile();
+        Random random = new Random(0x6752414444L);
+        records = new ArrayList<>(sources);
+        for (int id = 1; id <= sources; id++) {
+            records.add(new SourceRecord(id, 1 + random.nextInt(5), 5 + random.nextDouble() * 25,
+                    0.5 + random.nextDouble(), random.nextInt(3) == 0 ? "world_nether" : "world",
+                    random.nextDouble() * 4096, 40 + random.nextDouble() * 60, random.nextDouble() * 4096));
+        }
+
+        yaml = new YamlSourceStorage(new File(directory, "radiation-sources.yml"));
+        yaml.save(records);
+        binary = new BinarySourceStorage(new File(directory, "radiation-sources.bin"),
+                new File(directory, "radiation-sources.journal"), Integer.MAX_VALUE, Logger.getLogger("Grad"));
+        binary.save(new SourceChanges(records, List.of(), true));
+    }
+
+    @TearDown
+    public void tearDown() throws IOException {
+        try (Stream<Path> files = Files.walk(directory.toPath())) {
+            files.sorted(Comparator.reverseOrder()).forEach(path -> path.toFile().delete());
+        }
+    }
+
+    @Benchmark
+    public List<SourceRecord> yamlLoad() {
+        return yaml.load();
+    }
+
+    @Benchmark
+    public void yamlSave() throws IOException {
+        yaml.save(records);
+    }
+
+    @Benchmark
+    public List<SourceRecord> binaryLoad() throws IOException {
+        return binary.load();
+    }
+
+    @Benchmark
+    public void binarySave() throws IOException {
+        binary.save(new SourceChanges(records, List.of(), true));
+    }
+}
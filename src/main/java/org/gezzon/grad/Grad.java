@@ -1,5 +1,6 @@
 package org.gezzon.grad;
 
+import com.sk89q.worldedit.WorldEdit;
 import com.sk89q.worldguard.WorldGuard;
 import com.sk89q.worldguard.protection.flags.Flag;
 import com.sk89q.worldguard.protection.flags.IntegerFlag;
@@ -9,11 +10,29 @@ import org.bukkit.NamespacedKey;
 import org.bukkit.enchantments.Enchantment;
 import org.bukkit.plugin.java.JavaPlugin;
 import org.gezzon.grad.enchantment.RadiationProtectionEnchantment;
+import org.gezzon.grad.radiation.EntityExposureTask;
 import org.gezzon.grad.radiation.RadiationManager;
 import org.gezzon.grad.radiation.RadiationTask;
 import org.gezzon.grad.commands.RadiationCommand;
+import org.gezzon.grad.listener.ArmorCacheListener;
+import org.gezzon.grad.listener.BlockSourceListener;
+import org.gezzon.grad.listener.DirtyTrackingListener;
+import org.gezzon.grad.listener.EntityExposureListener;
+import org.gezzon.grad.listener.ParticleViewListener;
+import org.gezzon.grad.listener.PlayerDoseListener;
 import org.gezzon.grad.listener.PlayerListener;
-
+import org.gezzon.grad.listener.RadiationTaskListener;
+import org.gezzon.grad.listener.ShieldingListener;
+import org.gezzon.grad.listener.SourceActivationListener;
+import org.gezzon.grad.listener.WorldEditSourceListener;
+import org.gezzon.grad.metrics.MetricsCollector;
+import org.gezzon.grad.metrics.MetricsServer;
+import org.gezzon.grad.scheduler.PluginScheduler;
+import org.gezzon.grad.storage.SourceTransfer;
+import org.gezzon.grad.visual.HeatmapExporter;
+import org.gezzon.grad.visual.ParticleRenderer;
+
+import java.io.IOException;
 import java.lang.reflect.Field;
 
 
@@ -30,6 +49,12 @@ public class Grad extends JavaPlugin {
     private static Enchantment radiationProtection;
     private RadiationManager radiationManager;
     private RadiationTask radiationTask;
+    private EntityExposureTask entityExposureTask;
+    private MetricsServer metricsServer;
+    private ParticleRenderer particleRenderer;
+    private HeatmapExporter heatmapExporter;
+    private SourceTransfer sourceTransfer;
+    private WorldEditSourceListener worldEditListener;
     public static IntegerFlag RADIATION_FLAG;
 
 
@@ -49,12 +74,51 @@ public class Grad extends JavaPlugin {
         this.radiationManager = new RadiationManager(this);
         this.radiationManager.init();
 
-        // Запускаем периодическую задачу (каждую секунду)
-        radiationTask = new RadiationTask(radiationManager);
-        radiationTask.runTaskTimer(this, 20L, 20L); // старт через 1с, повтор каждые 20 тиков (1с)
+        // Запускаем расчёт радиации: каждый игрок обрабатывается раз в секунду
+        // (на Paper — общей задачей, на Folia — задачей в планировщике каждого игрока)
+        radiationTask = new RadiationTask(this, radiationManager);
+        radiationTask.start();
+
+        // Облучение мобов вокруг активных источников, с ограничением числа мобов за тик
+        if (getConfig().getBoolean("entities.enabled", false)) {
+            entityExposureTask = new EntityExposureTask(this, radiationManager);
+            entityExposureTask.start();
+        }
+
+        // Отрисовка источников частицами (/radiation view)
+        particleRenderer = new ParticleRenderer(this, radiationManager);
+        // Карты радиации (/radiation heatmap) строятся в отдельном пуле потоков
+        heatmapExporter = new HeatmapExporter(this, radiationManager);
+        // Импорт и экспорт источников (/radiation import|export) читают и пишут файлы в фоне
+        sourceTransfer = new SourceTransfer(this, radiationManager);
 
         // Регистрируем слушатели
+        getServer().getPluginManager().registerEvents(new ParticleViewListener(particleRenderer), this);
         getServer().getPluginManager().registerEvents(new PlayerListener(radiationManager), this);
+        getServer().getPluginManager().registerEvents(new SourceActivationListener(radiationManager), this);
+        getServer().getPluginManager().registerEvents(new BlockSourceListener(radiationManager), this);
+        if (radiationManager.isShieldingEnabled()) {
+            getServer().getPluginManager().registerEvents(new ShieldingListener(radiationManager), this);
+        }
+        // Правки WorldEdit приходят не событиями Bukkit, а через шину событий WorldEdit
+        worldEditListener = new WorldEditSourceListener(radiationManager, new PluginScheduler(this));
+        WorldEdit.getInstance().getEventBus().register(worldEditListener);
+        getServer().getPluginManager().registerEvents(new ArmorCacheListener(radiationManager.getArmorCache()), this);
+        if (PluginScheduler.isFolia()) {
+            getServer().getPluginManager().registerEvents(new RadiationTaskListener(radiationTask), this);
+        }
+        // Регистрируется и без хранилища: при выходе игрока его состояние освобождается в любом случае
+        PlayerDoseListener doseListener = new PlayerDoseListener(this, radiationManager, radiationManager.getPlayerDosePersister());
+        getServer().getPluginManager().registerEvents(doseListener, this);
+        doseListener.loadOnlinePlayers();
+        if (entityExposureTask != null) {
+            getServer().getPluginManager().registerEvents(new EntityExposureListener(entityExposureTask), this);
+        }
+        if (radiationManager.getDirtyTracker().isEnabled()) {
+            getServer().getPluginManager().registerEvents(new DirtyTrackingListener(radiationManager.getDirtyTracker()), this);
+        }
+
+        startMetricsServer();
 
         // Регистрируем единую команду /radiation
         getCommand("radiation").setExecutor(new RadiationCommand(this, radiationManager));
@@ -62,6 +126,23 @@ public class Grad extends JavaPlugin {
         getLogger().info("Grad плагин включён!");
     }
 
+    /**
+     * Запустить HTTP-сервер метрик Prometheus, если он включён в config.yml.
+     */
+    private void startMetricsServer() {
+        if (!getConfig().getBoolean("metrics.enabled", false)) return;
+        String host = getConfig().getString("metrics.host", "127.0.0.1");
+        int port = getConfig().getInt("metrics.port", 9464);
+        metricsServer = new MetricsServer(new MetricsCollector(radiationManager, radiationTask, entityExposureTask), getLogger());
+        try {
+            metricsServer.start(host, port);
+            getLogger().info("Метрики Prometheus доступны на http://" + host + ":" + port + "/metrics");
+        } catch (IOException e) {
+            getLogger().warning("Не удалось запустить сервер метрик на " + host + ":" + port + ": " + e.getMessage());
+            metricsServer = null;
+        }
+    }
+
     private void registerEnchantment(Enchantment enchantment) {
         try {
             Field field = Enchantment.class.getDeclaredField("acceptingNew");
@@ -108,10 +189,28 @@ public class Grad extends JavaPlugin {
 
     @Override
     public void onDisable() {
+        if (this.metricsServer != null) {
+            this.metricsServer.stop();
+        }
+        if (this.heatmapExporter != null) {
+            this.heatmapExporter.shutdown();
+        }
+        if (this.sourceTransfer != null) {
+            this.sourceTransfer.shutdown();
+        }
+        if (this.worldEditListener != null) {
+            WorldEdit.getInstance().getEventBus().unregister(this.worldEditListener);
+        }
+        // Останавливаем задачу радиации и её рабочие потоки
+        if (this.radiationTask != null) {
+            new PluginScheduler(this).cancelAll();
+            this.radiationTask.shutdown();
+        }
         // При выключении сервера/плагина сохраняем все источники радиации
         if (this.radiationManager != null) {
             try {
-                this.radiationManager.saveSourcesToFile(); // Сохранение данных
+                this.radiationManager.saveSourcesToFile(); // Синхронно дописываем отложенные изменения
+                this.radiationManager.savePlayerRadiation(); // И радиацию игроков онлайн
             } catch (Exception e) {
                 getLogger().severe("Error while saving radiation sources: " + e.getMessage());
                 e.printStackTrace();
@@ -127,6 +226,18 @@ public class Grad extends JavaPlugin {
     public RadiationManager getRadiationManager() {
         return radiationManager;
     }
+    public ParticleRenderer getParticleRenderer() {
+        return particleRenderer;
+    }
+
+    public HeatmapExporter getHeatmapExporter() {
+        return heatmapExporter;
+    }
+
+    public SourceTransfer getSourceTransfer() {
+        return sourceTransfer;
+    }
+
     public static Grad getInstance() {
         return instance;
     }
@@ -2,7 +2,6 @@ package org.gezzon.grad.commands;
 
 import org.bukkit.Bukkit;
 import org.bukkit.Location;
-import org.bukkit.Particle;
 import org.bukkit.World;
 import org.bukkit.command.Command;
 import org.bukkit.command.CommandExecutor;
@@ -10,9 +9,15 @@ import org.bukkit.command.CommandSender;
 import org.bukkit.command.TabCompleter;
 import org.bukkit.entity.Player;
 import org.gezzon.grad.Grad;
+import org.gezzon.grad.profiling.PhaseProfiler;
 import org.gezzon.grad.radiation.RadiationManager;
 import org.gezzon.grad.radiation.RadiationSource;
+import org.gezzon.grad.scheduler.PluginScheduler;
+import org.gezzon.grad.storage.SourceTransfer;
+import org.gezzon.grad.visual.HeatmapExporter;
+import org.gezzon.grad.visual.ParticleRenderer;
 
+import java.io.File;
 import java.util.ArrayList;
 import java.util.Collection;
 import java.util.Collections;
@@ -25,10 +30,12 @@ public class RadiationCommand implements CommandExecutor, TabCompleter {
 
     private final Grad plugin;
     private final RadiationManager radiationManager;
+    private final PluginScheduler scheduler;
 
     public RadiationCommand(Grad plugin, RadiationManager radiationManager) {
         this.plugin = plugin;
         this.radiationManager = radiationManager;
+        this.scheduler = new PluginScheduler(plugin);
     }
 
     @Override
@@ -73,6 +80,18 @@ public class RadiationCommand implements CommandExecutor, TabCompleter {
             case "clear":
                 handleClear(sender,args);
                 break;
+            case "stats":
+                handleStats(sender, args);
+                break;
+            case "heatmap":
+                handleHeatmap(sender, args);
+                break;
+            case "import":
+                handleImport(sender, args);
+                break;
+            case "export":
+                handleExport(sender, args);
+                break;
             case "help":
                 int page = 1;
                 if (args.length >= 2) {
@@ -100,9 +119,13 @@ public class RadiationCommand implements CommandExecutor, TabCompleter {
         sender.sendMessage("§7/radiation del <id> §f- Удалить источник.");
         sender.sendMessage("§7/radiation edit <id> <intensity|radius|power> <value> §f- Изменить источник.");
         sender.sendMessage("§7/radiation meter §f- Показать уровень радиации в текущей точке.");
-        sender.sendMessage("§7/radiation view <id|all> §f- Визуализировать радиационные зоны (частицы).");
+        sender.sendMessage("§7/radiation view <id|all|toggle|off> §f- Визуализировать радиационные зоны (частицы).");
         sender.sendMessage("§7/radiation near <radius> §f- Найти источники в заданном радиусе.");
         sender.sendMessage("§7/radiation god §f- Включить/выключить 'бог-режим' от радиации.");
+        sender.sendMessage("§7/radiation heatmap <world> <x1,z1> <x2,z2> [y] [step] §f- Карта радиации участка (PNG и CSV).");
+        sender.sendMessage("§7/radiation import <file> [replace] §f- Загрузить источники из transfers (CSV или JSONL).");
+        sender.sendMessage("§7/radiation export <file> §f- Выгрузить все источники в transfers (CSV или JSONL).");
+        sender.sendMessage("§7/radiation stats [reset] §f- Время фаз расчёта радиации (p50/p99/max).");
         sender.sendMessage("§7/radiation help [page] §f- Показать помощь.");
         sender.sendMessage("§7/radiation clear [player] $f- Очистить уровень радиации");
     }
@@ -242,8 +265,8 @@ public class RadiationCommand implements CommandExecutor, TabCompleter {
                     return;
             }
 
-            // Сохраняем изменения
-            radiationManager.saveSourcesToFile();
+            // Перестраиваем индекс и сохраняем изменения
+            radiationManager.updateSource(src);
             sender.sendMessage("§aИсточник " + id + " успешно изменён.");
 
         } catch (NumberFormatException e) {
@@ -266,8 +289,8 @@ public class RadiationCommand implements CommandExecutor, TabCompleter {
     }
 
     /**
-     * /radiation view <id|all>
-     * Визуализация сферических зон частицами
+     * /radiation view <id|all|toggle|off>
+     * Рисует сферы источников частицами (порциями, без заморозки сервера)
      */
     private void handleView(CommandSender sender, String[] args) {
         if (!(sender instanceof Player)) {
@@ -275,51 +298,42 @@ public class RadiationCommand implements CommandExecutor, TabCompleter {
             return;
         }
         Player player = (Player) sender;
+        ParticleRenderer renderer = plugin.getParticleRenderer();
 
         if (args.length < 2) {
-            sender.sendMessage("§cИспользование: /radiation view <id|all>");
+            sender.sendMessage("§cИспользование: /radiation view <id|all|toggle|off>");
             return;
         }
-        if (args[1].equalsIgnoreCase("all")) {
-            for (RadiationSource source : radiationManager.getAllSources()) {
-                visualizeSphere(player, source);
-            }
-            sender.sendMessage("§aВизуализация всех источников радиации запущена (частицы).");
-        } else {
-            try {
-                int id = Integer.parseInt(args[1]);
-                RadiationSource src = radiationManager.getSource(id);
-                if (src == null) {
-                    sender.sendMessage("§cИсточник с ID " + id + " не найден.");
-                    return;
+        switch (args[1].toLowerCase()) {
+            case "all":
+                renderer.show(player, radiationManager.getAllSources());
+                sender.sendMessage("§aВизуализация источников радиации поблизости запущена (частицы).");
+                return;
+            case "toggle":
+                if (renderer.toggle(player)) {
+                    sender.sendMessage("§aПостоянная визуализация источников поблизости включена.");
+                } else {
+                    sender.sendMessage("§cПостоянная визуализация источников выключена.");
                 }
-                visualizeSphere(player, src);
-                sender.sendMessage("§aВизуализация источника " + id + " запущена.");
-            } catch (NumberFormatException e) {
-                sender.sendMessage("§cНеверный формат ID!");
-            }
+                return;
+            case "off":
+                renderer.stop(player);
+                sender.sendMessage("§cВизуализация источников остановлена.");
+                return;
+            default:
+                break;
         }
-    }
-
-    /**
-     * Рисуем сферу частиц вокруг центра источника
-     */
-    private void visualizeSphere(Player player, RadiationSource source) {
-        double r = source.getRadius();
-        Location center = source.getCenter();
-        World world = center.getWorld();
-        if (world == null) return;
-
-        // Упрощённый способ: рисуем несколько окружностей по высоте
-        for (double y = -r; y <= r; y += (r / 4)) {
-            double circleRadius = Math.sqrt(r * r - y * y);
-            for (int angleDeg = 0; angleDeg < 360; angleDeg += 15) {
-                double radAngle = Math.toRadians(angleDeg);
-                double x = center.getX() + circleRadius * Math.cos(radAngle);
-                double z = center.getZ() + circleRadius * Math.sin(radAngle);
-                Location particleLoc = new Location(world, x, center.getY() + y, z);
-                player.spawnParticle(Particle.VILLAGER_HAPPY, particleLoc, 1, 0, 0, 0, 0);
+        try {
+            int id = Integer.parseInt(args[1]);
+            RadiationSource src = radiationManager.getSource(id);
+            if (src == null) {
+                sender.sendMessage("§cИсточник с ID " + id + " не найден.");
+                return;
             }
+            renderer.show(player, List.of(src));
+            sender.sendMessage("§aВизуализация источника " + id + " запущена.");
+        } catch (NumberFormatException e) {
+            sender.sendMessage("§cНеверный формат ID!");
         }
     }
 
@@ -340,7 +354,7 @@ public class RadiationCommand implements CommandExecutor, TabCompleter {
         Player player = (Player) sender;
         try {
             double radius = Double.parseDouble(args[1]);
-            List<RadiationSource> near = radiationManager.getSourcesNear(player.getLocation(), radius);
+            List<RadiationSource> near = radiationManager.findSourcesNear(player.getLocation(), radius);
             if (near.isEmpty()) {
                 sender.sendMessage("§aРядом нет источников радиации.");
             } else {
@@ -385,7 +399,8 @@ public class RadiationCommand implements CommandExecutor, TabCompleter {
                 sender.sendMessage("§cИгрок " + args[1] + " не найден.");
                 return;
             }
-            radiationManager.setPlayerRadiation(target.getUniqueId(), 0.0);
+            // Дозу игрока меняет поток, владеющий им (на Folia игрок может быть в другом регионе)
+            scheduler.runForEntity(target, () -> radiationManager.setPlayerRadiation(target.getUniqueId(), 0.0));
             sender.sendMessage("§aРадиация обнулена для " + target.getName());
             return;
         }
@@ -393,6 +408,140 @@ public class RadiationCommand implements CommandExecutor, TabCompleter {
         // Если аргументов больше, чем нужно
         sender.sendMessage("§cИспользование: /radiation clear [player]");
     }
+    /**
+     * /radiation heatmap <world> <x1,z1> <x2,z2> [y] [step]
+     * Строит карту скорости накопления радиации участка в фоне и пишет PNG и CSV в папку плагина
+     */
+    private void handleHeatmap(CommandSender sender, String[] args) {
+        if (args.length < 4) {
+            sender.sendMessage("§cИспользование: /radiation heatmap <world> <x1,z1> <x2,z2> [y] [step]");
+            return;
+        }
+        World world = Bukkit.getWorld(args[1]);
+        if (world == null) {
+            sender.sendMessage("§cМир " + args[1] + " не найден.");
+            return;
+        }
+
+        HeatmapExporter exporter = plugin.getHeatmapExporter();
+        try {
+            String[] first = args[2].split(",");
+            String[] second = args[3].split(",");
+            if (first.length != 2 || second.length != 2) {
+                sender.sendMessage("§cУглы задаются как x,z (например, -5000,-5000).");
+                return;
+            }
+            int x1 = Integer.parseInt(first[0]);
+            int z1 = Integer.parseInt(first[1]);
+            int x2 = Integer.parseInt(second[0]);
+            int z2 = Integer.parseInt(second[1]);
+            int minX = Math.min(x1, x2);
+            int minZ = Math.min(z1, z2);
+            int maxX = Math.max(x1, x2);
+            int maxZ = Math.max(z1, z2);
+
+            // По умолчанию высота игрока (если он в этом мире), иначе 64
+            int y = 64;
+            if (sender instanceof Player && ((Player) sender).getWorld() == world) {
+                y = ((Player) sender).getLocation().getBlockY();
+            }
+            if (args.length >= 5) {
+                y = Integer.parseInt(args[4]);
+            }
+
+            int minimumStep = exporter.minimumStep(minX, minZ, maxX, maxZ);
+            int step = minimumStep;
+            if (args.length >= 6) {
+                step = Integer.parseInt(args[5]);
+                if (step < 1) {
+                    sender.sendMessage("§cШаг должен быть не меньше 1.");
+                    return;
+                }
+                if (step < minimumStep) {
+                    sender.sendMessage("§cСлишком много точек (больше " + exporter.getMaxSamples()
+                            + "). Минимальный шаг для этого участка: " + minimumStep);
+                    return;
+                }
+            }
+
+            if (!exporter.export(sender, world, minX, minZ, maxX, maxZ, y, step)) {
+                sender.sendMessage("§cПредыдущая карта радиации ещё строится.");
+                return;
+            }
+            sender.sendMessage("§aСтроится карта радиации " + world.getName() + " (" + minX + "," + minZ + ") - ("
+                    + maxX + "," + maxZ + "), y=" + y + ", шаг " + step + "...");
+        } catch (NumberFormatException e) {
+            sender.sendMessage("§cНеверный формат числа!");
+        }
+    }
+
+    /**
+     * /radiation import <file> [replace]
+     * Загружает источники из файла папки transfers: разбор и проверка в фоне, применение одной транзакцией
+     */
+    private void handleImport(CommandSender sender, String[] args) {
+        if (args.length < 2 || (args.length >= 3 && !args[2].equalsIgnoreCase("replace"))) {
+            sender.sendMessage("§cИспользование: /radiation import <file> [replace]");
+            return;
+        }
+        if (!SourceTransfer.isValidName(args[1])) {
+            sender.sendMessage("§cИмя файла: латиница, цифры, . _ - и расширение .csv или .jsonl.");
+            return;
+        }
+        SourceTransfer transfer = plugin.getSourceTransfer();
+        if (!new File(transfer.getFolder(), args[1]).isFile()) {
+            sender.sendMessage("§cФайл transfers/" + args[1] + " не найден.");
+            return;
+        }
+        boolean replace = args.length >= 3;
+        if (!transfer.importFile(sender, args[1], replace)) {
+            sender.sendMessage("§cПредыдущий импорт или экспорт ещё выполняется.");
+            return;
+        }
+        sender.sendMessage("§aИмпорт источников из transfers/" + args[1]
+                + (replace ? " с заменой существующих" : "") + "...");
+    }
+
+    /**
+     * /radiation export <file>
+     * Выгружает все источники (и в незагруженных мирах) в файл папки transfers
+     */
+    private void handleExport(CommandSender sender, String[] args) {
+        if (args.length < 2) {
+            sender.sendMessage("§cИспользование: /radiation export <file>");
+            return;
+        }
+        if (!SourceTransfer.isValidName(args[1])) {
+            sender.sendMessage("§cИмя файла: латиница, цифры, . _ - и расширение .csv или .jsonl.");
+            return;
+        }
+        if (!plugin.getSourceTransfer().exportFile(sender, args[1])) {
+            sender.sendMessage("§cПредыдущий импорт или экспорт ещё выполняется.");
+            return;
+        }
+        sender.sendMessage("§aЭкспорт источников в transfers/" + args[1] + "...");
+    }
+
+    /**
+     * /radiation stats [reset]
+     * Показывает задержки фаз расчёта радиации с момента последнего сброса
+     */
+    private void handleStats(CommandSender sender, String[] args) {
+        PhaseProfiler profiler = radiationManager.getProfiler();
+        if (!profiler.isEnabled()) {
+            sender.sendMessage("§cПрофилировщик выключен (performance.profiler.enabled).");
+            return;
+        }
+        if (args.length >= 2 && args[1].equalsIgnoreCase("reset")) {
+            profiler.reset();
+            sender.sendMessage("§aСтатистика фаз радиации сброшена.");
+            return;
+        }
+        for (String line : profiler.report()) {
+            sender.sendMessage(line);
+        }
+    }
+
     /**
      * /radiation god
      * Включает/выключает "бог-режим" у игрока, чтобы не получать урон от радиации
@@ -426,7 +575,7 @@ public class RadiationCommand implements CommandExecutor, TabCompleter {
 
         // 1) /radiation <subcommand>
         if (args.length == 1) {
-            String[] subs = {"list", "add", "del", "edit", "meter", "view", "near", "god", "help"};
+            String[] subs = {"list", "add", "del", "edit", "meter", "view", "near", "god", "clear", "stats", "heatmap", "import", "export", "help"};
             for (String s : subs) {
                 if (s.startsWith(args[0].toLowerCase())) {
                     completions.add(s);
@@ -442,6 +591,38 @@ public class RadiationCommand implements CommandExecutor, TabCompleter {
                 }
             }
         }
+        else if (args.length == 2 && args[0].equalsIgnoreCase("view")) {
+            String[] modes = {"all", "toggle", "off"};
+            for (String m : modes) {
+                if (m.startsWith(args[1].toLowerCase())) {
+                    completions.add(m);
+                }
+            }
+        }
+        else if (args.length == 2 && args[0].equalsIgnoreCase("heatmap")) {
+            for (World world : Bukkit.getWorlds()) {
+                if (world.getName().toLowerCase().startsWith(args[1].toLowerCase())) {
+                    completions.add(world.getName());
+                }
+            }
+        }
+        else if (args.length == 2 && args[0].equalsIgnoreCase("import")) {
+            for (String name : plugin.getSourceTransfer().listFiles()) {
+                if (name.toLowerCase().startsWith(args[1].toLowerCase())) {
+                    completions.add(name);
+                }
+            }
+        }
+        else if (args.length == 3 && args[0].equalsIgnoreCase("import")) {
+            if ("replace".startsWith(args[2].toLowerCase())) {
+                completions.add("replace");
+            }
+        }
+        else if (args.length == 2 && args[0].equalsIgnoreCase("stats")) {
+            if ("reset".startsWith(args[1].toLowerCase())) {
+                completions.add("reset");
+            }
+        }
         else if (args.length == 2 && args[0].equalsIgnoreCase("clear")) {
             // Предлагаем список онлайн-игроков
             for (Player p : Bukkit.getOnlinePlayers()) {
@@ -0,0 +1,92 @@
+package org.gezzon.grad.listener;
+
+import org.bukkit.Location;
+import org.bukkit.Material;
+import org.bukkit.block.Block;
+import org.bukkit.block.BlockFace;
+import org.bukkit.event.EventHandler;
+import org.bukkit.event.EventPriority;
+import org.bukkit.event.Listener;
+import org.bukkit.event.block.BlockBurnEvent;
+import org.bukkit.event.block.BlockExplodeEvent;
+import org.bukkit.event.block.BlockPistonExtendEvent;
+import org.bukkit.event.block.BlockPistonRetractEvent;
+import org.bukkit.event.entity.EntityExplodeEvent;
+import org.gezzon.grad.radiation.RadiationManager;
+import org.gezzon.grad.radiation.RadiationSource;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Радиоактивные блоки, исчезающие не от руки игрока: взрывы, огонь и поршни.
+ * Блоки одного события обрабатываются одним пакетом, без отдельной блокировки на каждый блок.
+ */
+public class BlockSourceListener implements Listener {
+
+    private final RadiationManager radiationManager;
+    private final Material radioactiveBlockType;
+
+    public BlockSourceListener(RadiationManager radiationManager) {
+        this.radiationManager = radiationManager;
+        this.radioactiveBlockType = radiationManager.getRadioactiveBlockType();
+    }
+
+    @EventHandler(priority = EventPriority.MONITOR, ignoreCancelled = true)
+    public void onEntityExplode(EntityExplodeEvent event) {
+        removeSources(event.blockList());
+    }
+
+    @EventHandler(priority = EventPriority.MONITOR, ignoreCancelled = true)
+    public void onBlockExplode(BlockExplodeEvent event) {
+        removeSources(event.blockList());
+    }
+
+    @EventHandler(priority = EventPriority.MONITOR, ignoreCancelled = true)
+    public void onBlockBurn(BlockBurnEvent event) {
+        removeSources(List.of(event.getBlock()));
+    }
+
+    @EventHandler(priority = EventPriority.MONITOR, ignoreCancelled = true)
+    public void onPistonExtend(BlockPistonExtendEvent event) {
+        moveSources(event.getBlocks(), event.getDirection());
+    }
+
+    @EventHandler(priority = EventPriority.MONITOR, ignoreCancelled = true)
+    public void onPistonRetract(BlockPistonRetractEvent event) {
+        moveSources(event.getBlocks(), event.getDirection());
+    }
+
+    private void removeSources(List<Block> blocks) {
+        List<Integer> ids = new ArrayList<>();
+        for (Block block : blocks) {
+            if (block.getType() != radioactiveBlockType) continue;
+            RadiationSource source = radiationManager.getSourceAt(block);
+            if (source != null) {
+                ids.add(source.getId());
+            }
+        }
+        if (!ids.isEmpty()) {
+            radiationManager.removeSources(ids);
+        }
+    }
+
+    /**
+     * Источники сдвигаемых блоков переезжают вместе с блоком на одну клетку в направлении direction.
+     */
+    private void moveSources(List<Block> blocks, BlockFace direction) {
+        Map<Integer, Location> moves = new HashMap<>();
+        for (Block block : blocks) {
+            if (block.getType() != radioactiveBlockType) continue;
+            RadiationSource source = radiationManager.getSourceAt(block);
+            if (source != null) {
+                moves.put(source.getId(), block.getRelative(direction).getLocation());
+            }
+        }
+        if (!moves.isEmpty()) {
+            radiationManager.moveSources(moves);
+        }
+    }
+}
@@ -0,0 +1,24 @@
+package org.gezzon.grad.listener;
+
+import org.bukkit.event.EventHandler;
+import org.bukkit.event.EventPriority;
+import org.bukkit.event.Listener;
+import org.bukkit.event.entity.EntityDeathEvent;
+import org.gezzon.grad.radiation.EntityExposureTask;
+
+/**
+ * Забывает накопленную мобом радиацию после его смерти.
+ */
+public class EntityExposureListener implements Listener {
+
+    private final EntityExposureTask exposureTask;
+
+    public EntityExposureListener(EntityExposureTask exposureTask) {
+        this.exposureTask = exposureTask;
+    }
+
+    @EventHandler(priority = EventPriority.MONITOR)
+    public void onDeath(EntityDeathEvent event) {
+        exposureTask.forget(event.getEntity().getUniqueId());
+    }
+}
@@ -0,0 +1,24 @@
+package org.gezzon.grad.listener;
+
+import org.bukkit.event.EventHandler;
+import org.bukkit.event.EventPriority;
+import org.bukkit.event.Listener;
+import org.bukkit.event.player.PlayerQuitEvent;
+import org.gezzon.grad.visual.ParticleRenderer;
+
+/**
+ * Освобождение очереди отрисовки /radiation view при выходе игрока.
+ */
+public class ParticleViewListener implements Listener {
+
+    private final ParticleRenderer renderer;
+
+    public ParticleViewListener(ParticleRenderer renderer) {
+        this.renderer = renderer;
+    }
+
+    @EventHandler(priority = EventPriority.MONITOR)
+    public void onQuit(PlayerQuitEvent event) {
+        renderer.forget(event.getPlayer().getUniqueId());
+    }
+}
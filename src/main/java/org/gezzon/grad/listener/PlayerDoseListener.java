@@ -0,0 +1,124 @@
+package org.gezzon.grad.listener;
+
+import org.bukkit.Bukkit;
+import org.bukkit.entity.Player;
+import org.bukkit.event.EventHandler;
+import org.bukkit.event.EventPriority;
+import org.bukkit.event.Listener;
+import org.bukkit.event.player.AsyncPlayerPreLoginEvent;
+import org.bukkit.event.player.PlayerJoinEvent;
+import org.bukkit.event.player.PlayerQuitEvent;
+import org.bukkit.plugin.Plugin;
+import org.gezzon.grad.radiation.RadiationManager;
+import org.gezzon.grad.scheduler.PluginScheduler;
+import org.gezzon.grad.storage.PlayerDosePersister;
+
+import java.io.IOException;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.logging.Level;
+
+/**
+ * Загрузка накопленной радиации при входе и сохранение при выходе игрока.
+ * Регистрируется всегда: если хранилище радиации игроков не открылось (persister == null),
+ * слушатель только освобождает состояние вышедшего игрока, чтобы таблица игроков не росла.
+ */
+public class PlayerDoseListener implements Listener {
+
+    private final Plugin plugin;
+    private final RadiationManager radiationManager;
+    private final PlayerDosePersister persister;
+    private final PluginScheduler scheduler;
+
+    public PlayerDoseListener(Plugin plugin, RadiationManager radiationManager, PlayerDosePersister persister) {
+        this.plugin = plugin;
+        this.scheduler = new PluginScheduler(plugin);
+        this.radiationManager = radiationManager;
+        this.persister = persister;
+    }
+
+    /**
+     * Загружаем радиацию заранее, в потоке входа — основной поток не ждёт хранилище.
+     */
+    @EventHandler(priority = EventPriority.MONITOR)
+    public void onPreLogin(AsyncPlayerPreLoginEvent event) {
+        if (persister == null || event.getLoginResult() != AsyncPlayerPreLoginEvent.Result.ALLOWED) {
+            return;
+        }
+        try {
+            persister.preload(event.getUniqueId());
+        } catch (IOException e) {
+            plugin.getLogger().log(Level.WARNING, "Не удалось загрузить радиацию игрока " + event.getName(), e);
+        }
+    }
+
+    @EventHandler(priority = EventPriority.LOWEST)
+    public void onPlayerJoin(PlayerJoinEvent event) {
+        if (persister == null) return;
+        Player player = event.getPlayer();
+        UUID uuid = player.getUniqueId();
+        Double dose = persister.takePreloaded(uuid);
+        if (dose != null) {
+            radiationManager.setPlayerRadiation(uuid, dose);
+        } else {
+            // Предзагрузки не было (например, плагин включили при игроках онлайн) — грузим в фоне
+            loadLater(player);
+        }
+    }
+
+    @EventHandler(priority = EventPriority.MONITOR)
+    public void onPlayerQuit(PlayerQuitEvent event) {
+        UUID uuid = event.getPlayer().getUniqueId();
+        double dose = radiationManager.removePlayerRadiation(uuid);
+        if (persister == null) return;
+        persister.discardPreloaded(uuid);
+
+        CompletableFuture<Double> loading = persister.finishLoad(uuid);
+        if (loading == null) {
+            persister.saveAsync(Map.of(uuid, dose));
+            return;
+        }
+        // Игрок вышел раньше, чем загрузилась его радиация: сохраняем сумму после загрузки,
+        // иначе неполное значение из памяти затёрло бы сохранённое
+        loading.whenComplete((stored, error) -> {
+            if (error != null) {
+                plugin.getLogger().log(Level.WARNING, "Радиация игрока " + uuid
+                        + " не загрузилась, сохранённое значение оставлено без изменений", error);
+                return;
+            }
+            persister.saveAsync(Map.of(uuid, stored + dose));
+        });
+    }
+
+    /**
+     * Загрузить радиацию всех, кто уже онлайн (при включении плагина на работающем сервере).
+     */
+    public void loadOnlinePlayers() {
+        if (persister == null) return;
+        for (Player player : Bukkit.getOnlinePlayers()) {
+            loadLater(player);
+        }
+    }
+
+    private void loadLater(Player player) {
+        UUID uuid = player.getUniqueId();
+        CompletableFuture<Double> loading = persister.loadAsync(uuid);
+        loading.whenComplete((dose, error) -> {
+            if (error != null) {
+                // Игрок остаётся в списке загружаемых: его неполное значение не попадёт на диск
+                plugin.getLogger().log(Level.WARNING, "Не удалось загрузить радиацию игрока " + uuid, error);
+                return;
+            }
+            if (!plugin.isEnabled()) return;
+            // В потоке, владеющем игроком; если игрок уже вышел, задача не выполнится
+            scheduler.runForEntity(player, () -> {
+                // Загрузку забирает либо этот код, либо выход игрока — ровно один раз
+                if (player.isOnline() && persister.finishLoad(uuid) != null) {
+                    // Прибавляем к тому, что игрок успел набрать, пока шла загрузка
+                    radiationManager.setPlayerRadiation(uuid, radiationManager.getPlayerRadiation(uuid) + dose);
+                }
+            });
+        });
+    }
+}
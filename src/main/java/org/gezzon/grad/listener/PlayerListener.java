@@ -4,11 +4,11 @@ import org.bukkit.Location;
 import org.bukkit.Material;
 import org.bukkit.block.Block;
 import org.bukkit.event.EventHandler;
+import org.bukkit.event.EventPriority;
 import org.bukkit.event.Listener;
 import org.bukkit.event.block.BlockBreakEvent;
 import org.bukkit.event.block.BlockPlaceEvent;
 import org.bukkit.event.entity.PlayerDeathEvent;
-import org.bukkit.event.player.PlayerJoinEvent;
 import org.bukkit.entity.Player;
 import org.gezzon.grad.radiation.RadiationManager;
 import org.gezzon.grad.radiation.RadiationSource;
@@ -22,15 +22,7 @@ public class PlayerListener implements Listener {
         this.radioactiveBlockType = radiationManager.getRadioactiveBlockType();
     }
 
-    @EventHandler
-    public void onPlayerJoin(PlayerJoinEvent event) {
-        Player player = event.getPlayer();
-        if (radiationManager.getPlayerRadiation(player.getUniqueId()) > 0) {
-            radiationManager.setPlayerRadiation(player.getUniqueId(), 0.0);
-        }
-    }
-
-    @EventHandler
+    @EventHandler(priority = EventPriority.MONITOR, ignoreCancelled = true)
     public void onBlockPlace(BlockPlaceEvent event) {
         if (event.getBlock().getType() == radioactiveBlockType){
         Block block = event.getBlock();
@@ -38,7 +30,7 @@ public class PlayerListener implements Listener {
 
         if (block.getType() == radiationManager.getRadioactiveBlockType()) {
             Location loc = block.getLocation();
-            if (radiationManager.getSourceByLocation(loc) == null) { // Проверяем, есть ли уже источник
+            if (radiationManager.getSourceAt(block) == null) { // Проверяем, есть ли уже источник
                 RadiationSource source = radiationManager.addSource(
                         radiationManager.getBlockLevel(),
                         radiationManager.getBlockRadius(),
@@ -57,15 +49,14 @@ public class PlayerListener implements Listener {
         player.sendMessage("§a" + message);
     }
 
-    @EventHandler
+    @EventHandler(priority = EventPriority.MONITOR, ignoreCancelled = true)
     public void onBlockBreak(BlockBreakEvent event) {
         if (event.getBlock().getType() == radioactiveBlockType) {
             Block block = event.getBlock();
             Player player = event.getPlayer();
 
             if (block.getType() == radiationManager.getRadioactiveBlockType()) {
-                Location loc = block.getLocation();
-                RadiationSource source = radiationManager.getSourceByLocation(loc);
+                RadiationSource source = radiationManager.getSourceAt(block);
 
                 if (source != null) {
                     boolean removed = radiationManager.removeSource(source.getId());
@@ -0,0 +1,25 @@
+package org.gezzon.grad.listener;
+
+import org.bukkit.event.EventHandler;
+import org.bukkit.event.EventPriority;
+import org.bukkit.event.Listener;
+import org.bukkit.event.player.PlayerJoinEvent;
+import org.gezzon.grad.radiation.RadiationTask;
+
+/**
+ * Folia: запуск задачи расчёта радиации в планировщике игрока при входе.
+ * Задача останавливается сама, когда игрок выходит.
+ */
+public class RadiationTaskListener implements Listener {
+
+    private final RadiationTask radiationTask;
+
+    public RadiationTaskListener(RadiationTask radiationTask) {
+        this.radiationTask = radiationTask;
+    }
+
+    @EventHandler(priority = EventPriority.MONITOR)
+    public void onJoin(PlayerJoinEvent event) {
+        radiationTask.startFor(event.getPlayer());
+    }
+}
@@ -0,0 +1,124 @@
+package org.gezzon.grad.listener;
+
+import org.bukkit.block.Block;
+import org.bukkit.block.BlockFace;
+import org.bukkit.block.BlockState;
+import org.bukkit.event.EventHandler;
+import org.bukkit.event.EventPriority;
+import org.bukkit.event.Listener;
+import org.bukkit.event.block.BlockBreakEvent;
+import org.bukkit.event.block.BlockBurnEvent;
+import org.bukkit.event.block.BlockExplodeEvent;
+import org.bukkit.event.block.BlockFadeEvent;
+import org.bukkit.event.block.BlockFormEvent;
+import org.bukkit.event.block.BlockFromToEvent;
+import org.bukkit.event.block.BlockMultiPlaceEvent;
+import org.bukkit.event.block.BlockPistonExtendEvent;
+import org.bukkit.event.block.BlockPistonRetractEvent;
+import org.bukkit.event.block.BlockPlaceEvent;
+import org.bukkit.event.entity.EntityChangeBlockEvent;
+import org.bukkit.event.entity.EntityExplodeEvent;
+import org.gezzon.grad.radiation.RadiationManager;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+
+/**
+ * Изменения блоков, которые могут менять экранирование: установка, разрушение, взрывы,
+ * огонь, течение жидкостей, застывание и таяние, поршни, изменения сущностями
+ * (падающий песок и гравий, эндермены, иссушители).
+ * Каждый изменённый блок сбрасывает только лучи источников, проходящие через него.
+ * Регистрируется, только если экранирование включено.
+ */
+public class ShieldingListener implements Listener {
+
+    private final RadiationManager radiationManager;
+
+    public ShieldingListener(RadiationManager radiationManager) {
+        this.radiationManager = radiationManager;
+    }
+
+    @EventHandler(priority = EventPriority.MONITOR, ignoreCancelled = true)
+    public void onBlockPlace(BlockPlaceEvent event) {
+        if (event instanceof BlockMultiPlaceEvent multiPlace) {
+            List<Block> blocks = new ArrayList<>();
+            for (BlockState state : multiPlace.getReplacedBlockStates()) {
+                blocks.add(state.getBlock());
+            }
+            changed(blocks);
+            return;
+        }
+        changed(event.getBlock());
+    }
+
+    @EventHandler(priority = EventPriority.MONITOR, ignoreCancelled = true)
+    public void onBlockBreak(BlockBreakEvent event) {
+        changed(event.getBlock());
+    }
+
+    @EventHandler(priority = EventPriority.MONITOR, ignoreCancelled = true)
+    public void onEntityExplode(EntityExplodeEvent event) {
+        changed(event.blockList());
+    }
+
+    @EventHandler(priority = EventPriority.MONITOR, ignoreCancelled = true)
+    public void onBlockExplode(BlockExplodeEvent event) {
+        changed(event.blockList());
+    }
+
+    @EventHandler(priority = EventPriority.MONITOR, ignoreCancelled = true)
+    public void onEntityChangeBlock(EntityChangeBlockEvent event) {
+        changed(event.getBlock());
+    }
+
+    @EventHandler(priority = EventPriority.MONITOR, ignoreCancelled = true)
+    public void onBlockBurn(BlockBurnEvent event) {
+        changed(event.getBlock());
+    }
+
+    @EventHandler(priority = EventPriority.MONITOR, ignoreCancelled = true)
+    public void onFluidFlow(BlockFromToEvent event) {
+        changed(event.getToBlock());
+    }
+
+    @EventHandler(priority = EventPriority.MONITOR, ignoreCancelled = true)
+    public void onBlockForm(BlockFormEvent event) {
+        changed(event.getBlock());
+    }
+
+    @EventHandler(priority = EventPriority.MONITOR, ignoreCancelled = true)
+    public void onBlockFade(BlockFadeEvent event) {
+        changed(event.getBlock());
+    }
+
+    @EventHandler(priority = EventPriority.MONITOR, ignoreCancelled = true)
+    public void onPistonExtend(BlockPistonExtendEvent event) {
+        pistonMoved(event.getBlocks(), event.getDirection());
+    }
+
+    @EventHandler(priority = EventPriority.MONITOR, ignoreCancelled = true)
+    public void onPistonRetract(BlockPistonRetractEvent event) {
+        pistonMoved(event.getBlocks(), event.getDirection());
+    }
+
+    /**
+     * Сдвинутые поршнем блоки меняют и свою клетку, и клетку, куда они переезжают.
+     */
+    private void pistonMoved(List<Block> moved, BlockFace direction) {
+        List<Block> blocks = new ArrayList<>(moved.size() * 2);
+        for (Block block : moved) {
+            blocks.add(block);
+            blocks.add(block.getRelative(direction));
+        }
+        changed(blocks);
+    }
+
+    private void changed(Collection<Block> blocks) {
+        radiationManager.onBlocksChanged(blocks);
+    }
+
+    private void changed(Block block) {
+        radiationManager.onBlocksChanged(List.of(block));
+    }
+}
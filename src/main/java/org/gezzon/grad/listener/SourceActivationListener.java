@@ -0,0 +1,45 @@
+package org.gezzon.grad.listener;
+
+import org.bukkit.Chunk;
+import org.bukkit.event.EventHandler;
+import org.bukkit.event.EventPriority;
+import org.bukkit.event.Listener;
+import org.bukkit.event.world.ChunkLoadEvent;
+import org.bukkit.event.world.ChunkUnloadEvent;
+import org.bukkit.event.world.WorldLoadEvent;
+import org.bukkit.event.world.WorldUnloadEvent;
+import org.gezzon.grad.radiation.RadiationManager;
+
+/**
+ * Поддержание активного набора источников: загрузка и выгрузка чанков и миров.
+ */
+public class SourceActivationListener implements Listener {
+
+    private final RadiationManager radiationManager;
+
+    public SourceActivationListener(RadiationManager radiationManager) {
+        this.radiationManager = radiationManager;
+    }
+
+    @EventHandler(priority = EventPriority.MONITOR)
+    public void onChunkLoad(ChunkLoadEvent event) {
+        Chunk chunk = event.getChunk();
+        radiationManager.onChunkLoad(event.getWorld(), chunk.getX(), chunk.getZ());
+    }
+
+    @EventHandler(priority = EventPriority.MONITOR)
+    public void onChunkUnload(ChunkUnloadEvent event) {
+        Chunk chunk = event.getChunk();
+        radiationManager.onChunkUnload(event.getWorld(), chunk.getX(), chunk.getZ());
+    }
+
+    @EventHandler(priority = EventPriority.MONITOR)
+    public void onWorldLoad(WorldLoadEvent event) {
+        radiationManager.onWorldLoad(event.getWorld());
+    }
+
+    @EventHandler(priority = EventPriority.MONITOR, ignoreCancelled = true)
+    public void onWorldUnload(WorldUnloadEvent event) {
+        radiationManager.onWorldUnload(event.getWorld());
+    }
+}
@@ -0,0 +1,146 @@
+package org.gezzon.grad.listener;
+
+import com.sk89q.worldedit.EditSession;
+import com.sk89q.worldedit.WorldEditException;
+import com.sk89q.worldedit.bukkit.BukkitAdapter;
+import com.sk89q.worldedit.event.extent.EditSessionEvent;
+import com.sk89q.worldedit.extent.AbstractDelegateExtent;
+import com.sk89q.worldedit.extent.Extent;
+import com.sk89q.worldedit.math.BlockVector3;
+import com.sk89q.worldedit.util.eventbus.Subscribe;
+import com.sk89q.worldedit.world.block.BlockStateHolder;
+import com.sk89q.worldedit.world.block.BlockType;
+import org.bukkit.Material;
+import org.gezzon.grad.radiation.RadiationManager;
+import org.gezzon.grad.scheduler.PluginScheduler;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Удаление источников, чьи радиоактивные блоки заменила правка WorldEdit.
+ * Каждая правка оборачивается extent-ом, который на setBlock проверяет индекс блоков
+ * источников (одно обращение к хэш-таблице). Найденные ID копятся в очереди
+ * и удаляются одним пакетом в глобальном потоке: правка WorldEdit может идти
+ * в другом потоке и менять тысячи блоков.
+ *
+ * При включённом экранировании extent также собирает границы изменённой области
+ * по мирам; лучи источников, чья сфера задевает область, сбрасываются в том же пакете.
+ *
+ * Регистрируется в шине событий WorldEdit (не Bukkit).
+ */
+public class WorldEditSourceListener {
+
+    private final RadiationManager radiationManager;
+    private final PluginScheduler scheduler;
+    private final BlockType radioactiveBlockType; // null, если тип блока не задан в конфиге
+    private final boolean trackShielding;
+
+    private final Queue<Integer> pendingRemovals = new ConcurrentLinkedQueue<>();
+    private final AtomicBoolean flushScheduled = new AtomicBoolean();
+
+    // Мир -> {minX, minY, minZ, maxX, maxY, maxZ} блоков, изменённых с прошлого пакета (под блокировкой)
+    private final Map<String, int[]> changedAreas = new HashMap<>();
+
+    public WorldEditSourceListener(RadiationManager radiationManager, PluginScheduler scheduler) {
+        this.radiationManager = radiationManager;
+        this.scheduler = scheduler;
+        Material type = radiationManager.getRadioactiveBlockType();
+        this.radioactiveBlockType = type != null ? BukkitAdapter.asBlockType(type) : null;
+        this.trackShielding = radiationManager.isShieldingEnabled();
+    }
+
+    @Subscribe
+    public void onEditSession(EditSessionEvent event) {
+        if (event.getStage() != EditSession.Stage.BEFORE_CHANGE || event.getWorld() == null) return;
+        event.setExtent(new SourceTrackingExtent(event.getExtent(), event.getWorld().getName()));
+    }
+
+    private void queueRemoval(int id) {
+        pendingRemovals.add(id);
+        scheduleFlush();
+    }
+
+    /**
+     * Расширить изменённую область мира worldName блоком (x, y, z).
+     */
+    private void queueChange(String worldName, int x, int y, int z) {
+        synchronized (changedAreas) {
+            int[] area = changedAreas.get(worldName);
+            if (area == null) {
+                changedAreas.put(worldName, new int[]{x, y, z, x, y, z});
+            } else {
+                area[0] = Math.min(area[0], x);
+                area[1] = Math.min(area[1], y);
+                area[2] = Math.min(area[2], z);
+                area[3] = Math.max(area[3], x);
+                area[4] = Math.max(area[4], y);
+                area[5] = Math.max(area[5], z);
+            }
+        }
+        scheduleFlush();
+    }
+
+    private void scheduleFlush() {
+        if (flushScheduled.compareAndSet(false, true)) {
+            scheduler.runGlobal(this::flush);
+        }
+    }
+
+    private void flush() {
+        flushScheduled.set(false);
+        List<Integer> ids = new ArrayList<>();
+        Integer id;
+        while ((id = pendingRemovals.poll()) != null) {
+            ids.add(id);
+        }
+        if (!ids.isEmpty()) {
+            radiationManager.removeSources(ids);
+        }
+
+        Map<String, int[]> areas;
+        synchronized (changedAreas) {
+            areas = new HashMap<>(changedAreas);
+            changedAreas.clear();
+        }
+        for (Map.Entry<String, int[]> entry : areas.entrySet()) {
+            int[] area = entry.getValue();
+            radiationManager.onAreaChanged(entry.getKey(), area[0], area[1], area[2], area[3], area[4], area[5]);
+        }
+    }
+
+    /**
+     * Extent правки: замечает замену блока с источником на блок другого типа.
+     */
+    private final class SourceTrackingExtent extends AbstractDelegateExtent {
+        private final String worldName;
+
+        SourceTrackingExtent(Extent extent, String worldName) {
+            super(extent);
+            this.worldName = worldName;
+        }
+
+        @Override
+        public <T extends BlockStateHolder<T>> boolean setBlock(BlockVector3 position, T block) throws WorldEditException {
+            int x = position.getBlockX();
+            int y = position.getBlockY();
+            int z = position.getBlockZ();
+            // Без заданного типа любой поставленный блок считается заменой источника
+            if (radioactiveBlockType == null || block.getBlockType() != radioactiveBlockType) {
+                int id = radiationManager.getSourceIdAt(worldName, x, y, z);
+                if (id >= 0) {
+                    queueRemoval(id);
+                }
+            }
+            if (trackShielding) {
+                queueChange(worldName, x, y, z);
+            }
+            return super.setBlock(position, block);
+        }
+    }
+}
@@ -0,0 +1,212 @@
+package org.gezzon.grad.metrics;
+
+import org.gezzon.grad.profiling.LatencyHistogram;
+import org.gezzon.grad.profiling.PhaseProfiler;
+import org.gezzon.grad.profiling.PhaseProfiler.Phase;
+import org.gezzon.grad.radiation.DoseFieldCache;
+import org.gezzon.grad.radiation.EntityExposureTask;
+import org.gezzon.grad.radiation.PlayerRadiationState;
+import org.gezzon.grad.radiation.RadiationManager;
+import org.gezzon.grad.radiation.RadiationTask;
+import org.gezzon.grad.radiation.RegionLevelCache;
+import org.gezzon.grad.radiation.ShieldingCache;
+import org.gezzon.grad.storage.PlayerDosePersister;
+import org.gezzon.grad.storage.WriteBehindPersister;
+
+import java.util.Arrays;
+import java.util.Locale;
+import java.util.Map;
+
+/**
+ * Сборка метрик плагина в текстовом формате Prometheus (версия 0.0.4).
+ * Все значения читаются из потокобезопасных структур (атомарные счётчики,
+ * LongAdder, конкурентные карты, volatile-поля), поэтому сбор идёт в потоке
+ * HTTP-сервера и никогда не ждёт основной поток или потоки регионов.
+ */
+public class MetricsCollector {
+
+    // Границы корзин длительностей, в секундах: от 10 мкс до 250 мс
+    private static final double[] DURATION_BUCKETS = {
+            0.00001, 0.000025, 0.00005, 0.0001, 0.00025, 0.0005,
+            0.001, 0.0025, 0.005, 0.01, 0.025, 0.05, 0.1, 0.25
+    };
+
+    private final RadiationManager manager;
+    private final RadiationTask radiationTask;
+    private final EntityExposureTask entityExposure; // null — облучение мобов выключено
+
+    public MetricsCollector(RadiationManager manager, RadiationTask radiationTask, EntityExposureTask entityExposure) {
+        this.manager = manager;
+        this.radiationTask = radiationTask;
+        this.entityExposure = entityExposure;
+    }
+
+    /**
+     * Текущие значения всех метрик.
+     */
+    public String collect() {
+        StringBuilder out = new StringBuilder(4096);
+        writeProfiler(out, manager.getProfiler());
+        writeSources(out);
+        writeScheduling(out);
+        writeCaches(out);
+        writePersistence(out);
+        writeDoses(out);
+        writeEntities(out);
+        return out.toString();
+    }
+
+    private static void writeProfiler(StringBuilder out, PhaseProfiler profiler) {
+        if (!profiler.isEnabled()) return;
+
+        header(out, "grad_run_duration_seconds", "histogram", "Полная длительность запуска расчёта радиации");
+        histogram(out, "grad_run_duration_seconds", "", profiler.getRunHistogram());
+
+        header(out, "grad_phase_duration_seconds", "histogram", "Суммарное время фазы за один запуск расчёта");
+        for (Phase phase : Phase.values()) {
+            if (phase == Phase.PERSISTENCE) continue;
+            histogram(out, "grad_phase_duration_seconds", "phase=\"" + phase.name().toLowerCase(Locale.ROOT) + "\"",
+                    profiler.getHistogram(phase));
+        }
+
+        header(out, "grad_worker_phase_cpu_seconds", "histogram",
+                "Процессорное время фазы в рабочих потоках за один запуск (сумма по потокам)");
+        for (Phase phase : Phase.values()) {
+            if (profiler.getWorkerHistogram(phase).getCount() == 0) continue;
+            histogram(out, "grad_worker_phase_cpu_seconds", "phase=\"" + phase.name().toLowerCase(Locale.ROOT) + "\"",
+                    profiler.getWorkerHistogram(phase));
+        }
+
+        header(out, "grad_persistence_duration_seconds", "histogram", "Длительность одного сохранения на диск");
+        histogram(out, "grad_persistence_duration_seconds", "", profiler.getHistogram(Phase.PERSISTENCE));
+
+        header(out, "grad_evaluated_players_total", "counter", "Оценок игроков с последнего сброса статистики");
+        sample(out, "grad_evaluated_players_total", "", profiler.getEvaluatedPlayers());
+    }
+
+    private void writeSources(StringBuilder out) {
+        header(out, "grad_sources", "gauge", "Количество источников радиации по мирам");
+        for (Map.Entry<String, Integer> entry : manager.countSourcesByWorld().entrySet()) {
+            sample(out, "grad_sources", "world=\"" + escape(entry.getKey()) + "\"", entry.getValue());
+        }
+
+        header(out, "grad_active_sources", "gauge", "Источники над загруженными чанками (участвуют в расчёте)");
+        sample(out, "grad_active_sources", "", manager.getActiveSourceCount());
+    }
+
+    private void writeScheduling(StringBuilder out) {
+        header(out, "grad_players_carried_over", "gauge",
+                "Игроков, не уложившихся в бюджет тика последнего запуска и перенесённых на следующий тик");
+        sample(out, "grad_players_carried_over", "", radiationTask.getCarriedOver());
+    }
+
+    private void writeCaches(StringBuilder out) {
+        header(out, "grad_cache_hits_total", "counter", "Попадания в кэши расчёта");
+        DoseFieldCache doseField = manager.getDoseFieldCache();
+        RegionLevelCache regions = manager.getRegionLevelCache();
+        ShieldingCache shielding = manager.getShieldingCache();
+        if (doseField != null) {
+            sample(out, "grad_cache_hits_total", "cache=\"dose_field\"", doseField.getHits());
+        }
+        sample(out, "grad_cache_hits_total", "cache=\"region_level\"", regions.getHits());
+        if (shielding != null) {
+            sample(out, "grad_cache_hits_total", "cache=\"shielding\"", shielding.getHits());
+        }
+
+        header(out, "grad_cache_misses_total", "counter", "Промахи кэшей расчёта");
+        if (doseField != null) {
+            sample(out, "grad_cache_misses_total", "cache=\"dose_field\"", doseField.getMisses());
+        }
+        sample(out, "grad_cache_misses_total", "cache=\"region_level\"", regions.getMisses());
+        if (shielding != null) {
+            sample(out, "grad_cache_misses_total", "cache=\"shielding\"", shielding.getMisses());
+        }
+    }
+
+    private void writePersistence(StringBuilder out) {
+        header(out, "grad_persistence_queue_depth", "gauge", "Снимков в очереди на запись на диск");
+        WriteBehindPersister sources = manager.getSourcePersister();
+        PlayerDosePersister doses = manager.getPlayerDosePersister();
+        if (sources != null) {
+            sample(out, "grad_persistence_queue_depth", "store=\"sources\"", sources.getPendingWrites());
+        }
+        if (doses != null) {
+            sample(out, "grad_persistence_queue_depth", "store=\"player_dose\"", doses.getPendingWrites());
+        }
+    }
+
+    /**
+     * Распределение накопленной радиации игроков; границы корзин — пороги damage_start уровней.
+     */
+    private void writeDoses(StringBuilder out) {
+        double[] bounds = Arrays.stream(manager.getLevelTable().getDamageThresholds()).distinct().toArray();
+        long[] counts = new long[bounds.length];
+        long total = 0;
+        double sum = 0.0;
+        for (PlayerRadiationState state : manager.getPlayerStates().values()) {
+            if (state.isGod()) continue;
+            double dose = state.getDose();
+            for (int i = 0; i < bounds.length; i++) {
+                if (dose <= bounds[i]) counts[i]++;
+            }
+            total++;
+            sum += dose;
+        }
+
+        header(out, "grad_player_dose", "histogram", "Накопленная радиация игроков по порогам урона");
+        for (int i = 0; i < bounds.length; i++) {
+            sample(out, "grad_player_dose_bucket", "le=\"" + bounds[i] + "\"", counts[i]);
+        }
+        sample(out, "grad_player_dose_bucket", "le=\"+Inf\"", total);
+        sample(out, "grad_player_dose_sum", "", sum);
+        sample(out, "grad_player_dose_count", "", total);
+    }
+
+    private void writeEntities(StringBuilder out) {
+        if (entityExposure == null) return;
+        header(out, "grad_exposed_entities", "gauge", "Мобы с накопленной радиацией");
+        sample(out, "grad_exposed_entities", "", entityExposure.getTrackedCount());
+        header(out, "grad_entity_evaluations_total", "counter", "Обработок мобов рядом с источниками");
+        sample(out, "grad_entity_evaluations_total", "", entityExposure.getEvaluations());
+    }
+
+    /**
+     * Гистограмма длительностей в секундах. Корзины Prometheus приближаются по корзинам
+     * LatencyHistogram, поэтому значения у самой границы могут попасть в следующую корзину.
+     */
+    private static void histogram(StringBuilder out, String name, String labels, LatencyHistogram histogram) {
+        String prefix = labels.isEmpty() ? "" : labels + ",";
+        long count = histogram.getCount();
+        for (double bound : DURATION_BUCKETS) {
+            // Счётчики читаются не одномоментно — не даём корзине превысить общее число
+            long inBucket = Math.min(count, histogram.countAtMost((long) (bound * 1_000_000_000L)));
+            sample(out, name + "_bucket", prefix + "le=\"" + bound + "\"", inBucket);
+        }
+        sample(out, name + "_bucket", prefix + "le=\"+Inf\"", count);
+        sample(out, name + "_sum", labels, histogram.getSum() / 1_000_000_000.0);
+        sample(out, name + "_count", labels, count);
+    }
+
+    private static void header(StringBuilder out, String name, String type, String help) {
+        out.append("# HELP ").append(name).append(' ').append(help).append('\n');
+        out.append("# TYPE ").append(name).append(' ').append(type).append('\n');
+    }
+
+    private static void sample(StringBuilder out, String name, String labels, double value) {
+        out.append(name);
+        if (!labels.isEmpty()) {
+            out.append('{').append(labels).append('}');
+        }
+        out.append(' ');
+        if (value == Math.rint(value) && Math.abs(value) < 1e15) {
+            out.append((long) value);
+        } else {
+            out.append(value);
+        }
+        out.append('\n');
+    }
+
+    private static String escape(String value) {
+        return value.replace("\\", "\\\\").replace("\"", "\\\"").replace("\n", "\\n");
+    }
+}
@@ -0,0 +1,288 @@
+package org.gezzon.grad.profiling;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Профилировщик фаз расчёта радиации.
+ * Время фаз копится в накопителе запуска (Run), который передаётся во все замеры этого запуска.
+ * Накопители переиспользуются и ничего не выделяют на запуск: пакетный запуск Paper (beginRun)
+ * одновременно идёт только один, а запуски Folia (beginThreadRun) выполняются целиком в одном
+ * потоке региона и берут накопитель этого потока, поэтому регионы не смешивают время друг друга.
+ * По окончании запуска суммы попадают в гистограммы "за запуск" и в JFR-событие
+ * RadiationTickEvent, а накопитель обнуляется. Сохранения записываются отдельно,
+ * по одному значению на сохранение.
+ *
+ * Время, замеренное в рабочих потоках (recordWorker), — это процессорное время, сложенное
+ * по всем потокам, а не задержка потока-владельца. Оно копится в отдельных гистограммах
+ * и не входит в полную длительность запуска.
+ *
+ * Стоимость замера — два вызова System.nanoTime(); выключенный профилировщик не делает ничего.
+ */
+public class PhaseProfiler {
+
+    /**
+     * Фазы расчёта.
+     */
+    public enum Phase {
+        SNAPSHOT("Снимок"),
+        SOURCES("Источники"),
+        REGIONS("Регионы WorldGuard"),
+        ARMOR("Броня"),
+        APPLY("Урон и применение"),
+        PERSISTENCE("Сохранение");
+
+        private final String title;
+
+        Phase(String title) {
+            this.title = title;
+        }
+
+        public String getTitle() {
+            return title;
+        }
+    }
+
+    private static final Phase[] PHASES = Phase.values();
+    private static final long TICK_NANOS = 50_000_000L;
+
+    private static final Run DISABLED_RUN = new Run(false);
+
+    private final boolean enabled;
+    private final Run batchRun = new Run(true); // Пакетный запуск Paper: одновременно только один
+    private final ThreadLocal<Run> threadRuns = ThreadLocal.withInitial(() -> new Run(false));
+    private final LatencyHistogram[] perRun = new LatencyHistogram[PHASES.length]; // Суммы фаз за запуск (для сохранения — за одно сохранение)
+    private final LatencyHistogram[] workerPerRun = new LatencyHistogram[PHASES.length]; // Процессорное время рабочих потоков за запуск
+    private final LatencyHistogram runTotal = new LatencyHistogram();
+    private final LongAdder players = new LongAdder();
+    private volatile long resetAt = System.nanoTime();
+
+    public PhaseProfiler(boolean enabled) {
+        this.enabled = enabled;
+        for (int i = 0; i < PHASES.length; i++) {
+            perRun[i] = new LatencyHistogram();
+            workerPerRun[i] = new LatencyHistogram();
+        }
+    }
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    /**
+     * Гистограмма сумм фазы за запуск (для PERSISTENCE — длительностей отдельных сохранений).
+     */
+    public LatencyHistogram getHistogram(Phase phase) {
+        return perRun[phase.ordinal()];
+    }
+
+    /**
+     * Гистограмма процессорного времени фазы в рабочих потоках за запуск (пустая без пула потоков).
+     */
+    public LatencyHistogram getWorkerHistogram(Phase phase) {
+        return workerPerRun[phase.ordinal()];
+    }
+
+    /**
+     * Гистограмма полной длительности запусков.
+     */
+    public LatencyHistogram getRunHistogram() {
+        return runTotal;
+    }
+
+    /**
+     * Сколько оценок игроков сделано с последнего сброса.
+     */
+    public long getEvaluatedPlayers() {
+        return players.sum();
+    }
+
+    /**
+     * Начало замера: значение для передачи в record (0, если профилировщик выключен).
+     */
+    public long start() {
+        return enabled ? System.nanoTime() : 0L;
+    }
+
+    /**
+     * Начать пакетный запуск (Paper): общий накопитель с учётом времени рабочих потоков.
+     * Следующий пакетный запуск можно начинать только после endRun предыдущего.
+     */
+    public Run beginRun() {
+        return enabled ? batchRun : DISABLED_RUN;
+    }
+
+    /**
+     * Начать запуск, который целиком выполняется в текущем потоке (Folia): накопитель потока.
+     */
+    public Run beginThreadRun() {
+        return enabled ? threadRuns.get() : DISABLED_RUN;
+    }
+
+    /**
+     * Добавить время с момента startNanos к фазе запуска run (в потоке, владеющем запуском).
+     */
+    public void record(Run run, Phase phase, long startNanos) {
+        if (enabled) {
+            run.nanos[phase.ordinal()] += System.nanoTime() - startNanos;
+        }
+    }
+
+    /**
+     * Добавить время с момента startNanos к фазе пакетного запуска run, замеренное в рабочем потоке.
+     */
+    public void recordWorker(Run run, Phase phase, long startNanos) {
+        if (enabled && run.workerNanos != null) {
+            run.workerNanos[phase.ordinal()].add(System.nanoTime() - startNanos);
+        }
+    }
+
+    /**
+     * Завершить запуск run: перенести суммы фаз в гистограммы, отправить JFR-событие и обнулить накопитель.
+     */
+    public void endRun(Run run, int playerCount) {
+        if (!enabled) return;
+        long total = 0;
+        for (Phase phase : PHASES) {
+            if (phase == Phase.PERSISTENCE) continue;
+            long nanos = run.nanos[phase.ordinal()];
+            perRun[phase.ordinal()].record(nanos);
+            total += nanos;
+            long workerNanos = run.workerNanos(phase);
+            if (workerNanos > 0) {
+                workerPerRun[phase.ordinal()].record(workerNanos);
+            }
+        }
+        runTotal.record(total);
+        players.add(playerCount);
+
+        RadiationTickEvent event = new RadiationTickEvent();
+        if (event.shouldCommit()) {
+            event.players = playerCount;
+            event.snapshotNanos = run.phaseNanos(Phase.SNAPSHOT);
+            event.sourcesNanos = run.phaseNanos(Phase.SOURCES);
+            event.regionsNanos = run.phaseNanos(Phase.REGIONS);
+            event.armorNanos = run.phaseNanos(Phase.ARMOR);
+            event.applyNanos = run.phaseNanos(Phase.APPLY);
+            event.totalNanos = total;
+            event.commit();
+        }
+        run.reset();
+    }
+
+    /**
+     * Начать замер сохранения. Возвращаемое событие передаётся в endPersistence.
+     */
+    public RadiationPersistenceEvent beginPersistence() {
+        RadiationPersistenceEvent event = new RadiationPersistenceEvent();
+        event.begin();
+        return event;
+    }
+
+    /**
+     * Завершить замер сохранения kind из records записей, начатый в startNanos.
+     */
+    public void endPersistence(RadiationPersistenceEvent event, long startNanos, String kind, int records) {
+        if (enabled) {
+            perRun[Phase.PERSISTENCE.ordinal()].record(System.nanoTime() - startNanos);
+        }
+        event.end();
+        if (event.shouldCommit()) {
+            event.kind = kind;
+            event.records = records;
+            event.commit();
+        }
+    }
+
+    /**
+     * Сбросить всю накопленную статистику.
+     */
+    public void reset() {
+        for (int i = 0; i < PHASES.length; i++) {
+            perRun[i].reset();
+            workerPerRun[i].reset();
+        }
+        runTotal.reset();
+        players.reset();
+        resetAt = System.nanoTime();
+    }
+
+    /**
+     * Строки отчёта для /radiation stats: p50/p99/max за запуск и среднее за тик сервера по каждой фазе.
+     * Время рабочих потоков выводится отдельными строками как процессорное время.
+     */
+    public List<String> report() {
+        List<String> lines = new ArrayList<>();
+        long runs = runTotal.getCount();
+        double seconds = (System.nanoTime() - resetAt) / 1_000_000_000.0;
+        double ticks = Math.max(1.0, (System.nanoTime() - resetAt) / (double) TICK_NANOS);
+        lines.add(String.format("§aПрофиль расчёта радиации за %.0f с: запусков %d, игроков за запуск в среднем %.1f",
+                seconds, runs, runs > 0 ? players.sum() / (double) runs : 0.0));
+        for (Phase phase : PHASES) {
+            lines.add(formatLine(phase.getTitle(), perRun[phase.ordinal()], ticks));
+        }
+        lines.add(formatLine("Всего", runTotal, ticks));
+        for (Phase phase : PHASES) {
+            LatencyHistogram worker = workerPerRun[phase.ordinal()];
+            if (worker.getCount() > 0) {
+                lines.add(formatLine(phase.getTitle() + " (CPU рабочих потоков)", worker, ticks));
+            }
+        }
+        return lines;
+    }
+
+    private static String formatLine(String title, LatencyHistogram histogram, double ticks) {
+        return String.format("§7%s: §fp50 %s, p99 %s, max %s, в среднем за тик %s",
+                title,
+                formatNanos(histogram.percentile(50)),
+                formatNanos(histogram.percentile(99)),
+                formatNanos(histogram.getMax()),
+                formatNanos((long) (histogram.getSum() / ticks)));
+    }
+
+    private static String formatNanos(long nanos) {
+        if (nanos >= 1_000_000L) {
+            return String.format("%.2f мс", nanos / 1_000_000.0);
+        }
+        return String.format("%.1f мкс", nanos / 1_000.0);
+    }
+
+    /**
+     * Переиспользуемый накопитель времени фаз запуска. Время потока-владельца — обычные long
+     * (пишет только он), время рабочих потоков — LongAdder, только у пакетного накопителя.
+     */
+    public static final class Run {
+        private final long[] nanos = new long[PHASES.length];
+        private final LongAdder[] workerNanos;
+
+        private Run(boolean withWorkers) {
+            if (withWorkers) {
+                workerNanos = new LongAdder[PHASES.length];
+                for (int i = 0; i < PHASES.length; i++) {
+                    workerNanos[i] = new LongAdder();
+                }
+            } else {
+                workerNanos = null;
+            }
+        }
+
+        private long workerNanos(Phase phase) {
+            return workerNanos != null ? workerNanos[phase.ordinal()].sum() : 0L;
+        }
+
+        private long phaseNanos(Phase phase) {
+            return nanos[phase.ordinal()] + workerNanos(phase);
+        }
+
+        private void reset() {
+            Arrays.fill(nanos, 0L);
+            if (workerNanos != null) {
+                for (LongAdder adder : workerNanos) {
+                    adder.reset();
+                }
+            }
+        }
+    }
+}
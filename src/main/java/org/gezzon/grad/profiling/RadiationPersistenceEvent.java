@@ -0,0 +1,26 @@
+package org.gezzon.grad.profiling;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+
+/**
+ * JFR-событие одного сохранения (источники или радиация игроков).
+ * Длительность события — время записи.
+ */
+@Name("org.gezzon.grad.RadiationPersistence")
+@Label("Radiation Persistence")
+@Category({"Grad", "Radiation"})
+@Description("Сохранение источников радиации или накопленной радиации игроков")
+@StackTrace(false)
+public class RadiationPersistenceEvent extends Event {
+
+    @Label("Kind")
+    public String kind;
+
+    @Label("Records")
+    public int records;
+}
@@ -0,0 +1,49 @@
+package org.gezzon.grad.profiling;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+import jdk.jfr.Timespan;
+
+/**
+ * JFR-событие одного запуска расчёта радиации: время по фазам и число игроков.
+ * Фазы источников, регионов и брони — сумма по всем игрокам (в том числе в рабочих потоках).
+ * Total — только время потока-владельца запуска, без процессорного времени рабочих потоков.
+ */
+@Name("org.gezzon.grad.RadiationTick")
+@Label("Radiation Tick")
+@Category({"Grad", "Radiation"})
+@Description("Один запуск расчёта радиации Grad с разбивкой по фазам")
+@StackTrace(false)
+public class RadiationTickEvent extends Event {
+
+    @Label("Players")
+    public int players;
+
+    @Label("Snapshot")
+    @Timespan(Timespan.NANOSECONDS)
+    public long snapshotNanos;
+
+    @Label("Source Evaluation")
+    @Timespan(Timespan.NANOSECONDS)
+    public long sourcesNanos;
+
+    @Label("WorldGuard Lookup")
+    @Timespan(Timespan.NANOSECONDS)
+    public long regionsNanos;
+
+    @Label("Armor Check")
+    @Timespan(Timespan.NANOSECONDS)
+    public long armorNanos;
+
+    @Label("Damage Application")
+    @Timespan(Timespan.NANOSECONDS)
+    public long applyNanos;
+
+    @Label("Total")
+    @Timespan(Timespan.NANOSECONDS)
+    public long totalNanos;
+}
@@ -0,0 +1,98 @@
+package org.gezzon.grad.radiation;
+
+import org.bukkit.enchantments.Enchantment;
+import org.bukkit.entity.Player;
+import org.bukkit.inventory.EntityEquipment;
+import org.bukkit.inventory.ItemStack;
+import org.gezzon.grad.Grad;
+
+import java.util.UUID;
+
+/**
+ * Кэш уровней зачарования Radiation Protection на броне игроков.
+ * getArmorContents() копирует ItemStack'и, поэтому броня читается не каждый тик,
+ * а только после событий, которые могли её изменить (смена брони, клик в инвентаре,
+ * поломка предмета, вход). Массив уровней никогда не меняется на месте —
+ * при пересчёте создаётся новый, поэтому его можно отдавать в рабочие потоки.
+ *
+ * Уровни хранятся в PlayerRadiationState.
+ * Все методы, кроме calculateProtection, вызываются из основного потока.
+ */
+public class ArmorProtectionCache {
+
+    private static final int[] NO_ARMOR = new int[0];
+
+    private final PlayerStateTable states;
+
+    public ArmorProtectionCache(PlayerStateTable states) {
+        this.states = states;
+    }
+
+    /**
+     * Уровни зачарования на броне игрока; при необходимости перечитывает броню.
+     */
+    public int[] get(PlayerRadiationState state, Player player) {
+        if (state.armorLevels == null || state.armorStale) {
+            state.armorLevels = readArmor(player);
+            state.armorStale = false;
+        }
+        return state.armorLevels;
+    }
+
+    /**
+     * Пометить броню игрока для перечитывания.
+     */
+    public void invalidate(UUID uuid) {
+        PlayerRadiationState state = states.get(uuid);
+        if (state != null) {
+            state.armorStale = true;
+        }
+    }
+
+    /**
+     * Забыть броню игрока (при выходе с сервера).
+     */
+    public void forget(UUID uuid) {
+        PlayerRadiationState state = states.get(uuid);
+        if (state != null) {
+            state.armorLevels = null;
+        }
+    }
+
+    private static int[] readArmor(Player player) {
+        Enchantment protection = Grad.getRadiationProtectionEnchantment();
+        EntityEquipment equipment = player.getEquipment();
+        if (protection == null || equipment == null) {
+            return NO_ARMOR;
+        }
+        ItemStack[] armor = equipment.getArmorContents();
+        int[] levels = new int[armor.length];
+        for (int i = 0; i < armor.length; i++) {
+            ItemStack piece = armor[i];
+            if (piece != null && piece.containsEnchantment(protection)) {
+                levels[i] = piece.getEnchantmentLevel(protection);
+            }
+        }
+        return levels;
+    }
+
+    /**
+     * Рассчитывает защиту от радиации по уровням зачарования брони.
+     */
+    public static double calculateProtection(int[] armorLevels, int radiationLevel) {
+        double protection = 0.0;
+
+        for (int level : armorLevels) {
+            if (level <= 0) continue; // На этой части брони нет зачарования Radiation Protection
+
+            protection += level * 0.25; // Каждое зачарование добавляет 25% защиты за уровень
+
+            // Если уровень зачарования выше или равен текущему уровню радиации, игрок игнорирует эффект
+            if (level >= radiationLevel) {
+                return 1.0; // Полная защита от радиации данного уровня
+            }
+        }
+
+        return Math.min(protection, 1.0); // Ограничиваем защиту максимум 100%
+    }
+}
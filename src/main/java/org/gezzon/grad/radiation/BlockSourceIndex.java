@@ -0,0 +1,93 @@
+package org.gezzon.grad.radiation;
+
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Индекс источников, стоящих в блоках: мир -> упакованные координаты блока -> ID источника.
+ * Координаты упаковываются в один long (X и Z по 26 бит, Y 12 бит), таблица —
+ * открытая адресация на примитивных массивах, поэтому проверка при установке
+ * и разрушении блока — один хэш без создания Location и упаковки в Long.
+ *
+ * В индекс попадают источники с центром ровно в координатах блока (поставленные блоком
+ * или командой с целыми координатами) — как и раньше при сравнении Location.
+ * Методы синхронизированы: на Folia блоки ломаются в потоках разных регионов.
+ */
+public class BlockSourceIndex {
+
+    private final Map<String, LongIntTable> worlds = new HashMap<>();
+
+    /**
+     * Проверить, стоит ли источник с центром (x, y, z) ровно в блоке.
+     */
+    public static boolean isBlockAligned(double x, double y, double z) {
+        return x == Math.floor(x) && y == Math.floor(y) && z == Math.floor(z);
+    }
+
+    /**
+     * Упаковка координат блока: X и Z по 26 бит, Y 12 бит.
+     */
+    public static long blockKey(int x, int y, int z) {
+        return ((long) (x & 0x3FFFFFF) << 38) | ((long) (z & 0x3FFFFFF) << 12) | (y & 0xFFF);
+    }
+
+    /**
+     * Координаты блока из ключа blockKey (со знаком).
+     */
+    public static int keyX(long key) {
+        return (int) (key >> 38);
+    }
+
+    public static int keyY(long key) {
+        return (int) ((key << 52) >> 52);
+    }
+
+    public static int keyZ(long key) {
+        return (int) ((key << 26) >> 38);
+    }
+
+    /**
+     * Запомнить источник id в блоке (x, y, z) мира world.
+     */
+    public synchronized void put(String world, int x, int y, int z, int id) {
+        worlds.computeIfAbsent(world, name -> new LongIntTable()).put(blockKey(x, y, z), id);
+    }
+
+    /**
+     * ID источника в блоке или -1, если его нет.
+     */
+    public synchronized int get(String world, int x, int y, int z) {
+        LongIntTable table = worlds.get(world);
+        return table != null ? table.get(blockKey(x, y, z)) : -1;
+    }
+
+    /**
+     * Убрать блок из индекса, если в нём записан именно источник id.
+     */
+    public synchronized void remove(String world, int x, int y, int z, int id) {
+        LongIntTable table = worlds.get(world);
+        if (table == null) return;
+        long key = blockKey(x, y, z);
+        if (table.get(key) == id) {
+            table.remove(key);
+            if (table.size == 0) {
+                worlds.remove(world);
+            }
+        }
+    }
+
+    /**
+     * Забыть все блоки мира (при выгрузке мира).
+     */
+    public synchronized void clearWorld(String world) {
+        worlds.remove(world);
+    }
+
+    public synchronized int size() {
+        int size = 0;
+        for (LongIntTable table : worlds.values()) {
+            size += table.size;
+        }
+        return size;
+    }
+}
@@ -0,0 +1,196 @@
+package org.gezzon.grad.radiation;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Кэш поля скорости накопления радиации от источников по секциям чанков (16x16x16).
+ * Вклад статичных источников в точке детерминирован, поэтому значение для блока
+ * считается один раз (лениво, при первом запросе) и дальше читается из массива.
+ *
+ * Секции хранятся в LRU-карте ограниченного размера. При добавлении, изменении
+ * или удалении источника сбрасываются только секции, которые пересекает его сфера.
+ *
+ * Методы get/invalidate потокобезопасны: get вызывается из рабочих потоков расчёта.
+ */
+public class DoseFieldCache {
+
+    private static final int SECTION_VOLUME = 16 * 16 * 16;
+
+    /**
+     * Точный расчёт суммарной скорости накопления от источников в точке.
+     * Если значение нельзя кэшировать (луч экранирования через нечитаемый чанк),
+     * в complete[0] пишется false.
+     */
+    public interface Sampler {
+        double sample(String worldName, double x, double y, double z, boolean[] complete);
+    }
+
+    private final Sampler sampler;
+    private final Map<String, Integer> worldIds = new HashMap<>();
+    private final LinkedHashMap<Long, Section> sections;
+
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+
+    public DoseFieldCache(Sampler sampler, int maxSections) {
+        this.sampler = sampler;
+        int limit = Math.max(1, maxSections);
+        this.sections = new LinkedHashMap<>(Math.min(limit, 1024), 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<Long, Section> eldest) {
+                return size() > limit;
+            }
+        };
+    }
+
+    /**
+     * Скорость накопления от источников в блоке (bx, by, bz) мира worldName.
+     * Значение берётся в центре блока.
+     */
+    public double get(String worldName, int bx, int by, int bz) {
+        int cx = bx >> 4;
+        int sy = by >> 4;
+        int cz = bz >> 4;
+        int index = ((by & 15) << 8) | ((bz & 15) << 4) | (bx & 15);
+
+        Section section;
+        synchronized (this) {
+            long key = sectionKey(worldId(worldName), cx, sy, cz);
+            section = sections.get(key);
+            if (section == null) {
+                section = new Section(worldName, cx, sy, cz);
+                sections.put(key, section);
+            }
+        }
+
+        float value = section.values[index];
+        if (Float.isNaN(value)) {
+            // Считаем вне блокировки: одинаковое значение может записать несколько потоков, это безопасно
+            boolean[] complete = {true};
+            value = (float) sampler.sample(worldName, bx + 0.5, by + 0.5, bz + 0.5, complete);
+            if (complete[0]) {
+                section.values[index] = value;
+            }
+            misses.increment();
+        } else {
+            hits.increment();
+        }
+        return value;
+    }
+
+    /**
+     * Сбросить все секции мира worldName, которые пересекает сфера (x, y, z, radius).
+     * Вызывать после того, как источник уже изменён в индексе.
+     * Перебираются ключи секций под кубом сферы; полный обход кэша — только если таких ключей
+     * больше, чем секций в кэше (огромный радиус).
+     */
+    public synchronized void invalidate(String worldName, double x, double y, double z, double radius) {
+        Integer worldId = worldIds.get(worldName);
+        if (worldId == null || sections.isEmpty()) return;
+
+        double radiusSquared = radius * radius;
+        int minCX = (int) Math.floor((x - radius) / 16.0);
+        int maxCX = (int) Math.floor((x + radius) / 16.0);
+        int minSY = (int) Math.floor((y - radius) / 16.0);
+        int maxSY = (int) Math.floor((y + radius) / 16.0);
+        int minCZ = (int) Math.floor((z - radius) / 16.0);
+        int maxCZ = (int) Math.floor((z + radius) / 16.0);
+        long covered = (long) (maxCX - minCX + 1) * (maxSY - minSY + 1) * (maxCZ - minCZ + 1);
+
+        if (covered > sections.size()) {
+            Iterator<Section> iterator = sections.values().iterator();
+            while (iterator.hasNext()) {
+                Section section = iterator.next();
+                if (!section.worldName.equals(worldName)) continue;
+                if (distanceSquared(section.minX, section.minY, section.minZ, x, y, z) <= radiusSquared) {
+                    iterator.remove();
+                }
+            }
+            return;
+        }
+
+        for (int cx = minCX; cx <= maxCX; cx++) {
+            for (int sy = minSY; sy <= maxSY; sy++) {
+                for (int cz = minCZ; cz <= maxCZ; cz++) {
+                    // Расстояние считаем по координатам ключа: get в LRU-карте сдвинул бы секцию в конец
+                    if (distanceSquared(cx << 4, sy << 4, cz << 4, x, y, z) <= radiusSquared) {
+                        sections.remove(sectionKey(worldId, cx, sy, cz));
+                    }
+                }
+            }
+        }
+    }
+
+    /**
+     * Полностью очистить кэш (например, после перезагрузки уровней).
+     */
+    public synchronized void clear() {
+        sections.clear();
+    }
+
+    public synchronized int size() {
+        return sections.size();
+    }
+
+    public long getHits() {
+        return hits.sum();
+    }
+
+    public long getMisses() {
+        return misses.sum();
+    }
+
+    private int worldId(String worldName) {
+        Integer id = worldIds.get(worldName);
+        if (id == null) {
+            id = worldIds.size();
+            worldIds.put(worldName, id);
+        }
+        return id;
+    }
+
+    /**
+     * Упаковка мира (10 бит), X чанка (22 бита), номера секции по Y (10 бит) и Z чанка (22 бита).
+     */
+    private static long sectionKey(int worldId, int cx, int sy, int cz) {
+        return ((long) (worldId & 0x3FF) << 54)
+                | ((long) (cx & 0x3FFFFF) << 32)
+                | ((long) (sy & 0x3FF) << 22)
+                | (cz & 0x3FFFFF);
+    }
+
+    /**
+     * Одна секция 16x16x16: значения по блокам, NaN — ещё не посчитано.
+     */
+    private static final class Section {
+        final String worldName;
+        final int minX;
+        final int minY;
+        final int minZ;
+        final float[] values = new float[SECTION_VOLUME];
+
+        Section(String worldName, int cx, int sy, int cz) {
+            this.worldName = worldName;
+            this.minX = cx << 4;
+            this.minY = sy << 4;
+            this.minZ = cz << 4;
+            Arrays.fill(values, Float.NaN);
+        }
+
+    }
+
+    /**
+     * Квадрат расстояния от точки до куба секции с углом (minX, minY, minZ) (0, если точка внутри).
+     */
+    private static double distanceSquared(int minX, int minY, int minZ, double x, double y, double z) {
+        double dx = x - Math.max(minX, Math.min(x, minX + 16));
+        double dy = y - Math.max(minY, Math.min(y, minY + 16));
+        double dz = z - Math.max(minZ, Math.min(z, minZ + 16));
+        return dx * dx + dy * dy + dz * dz;
+    }
+}
@@ -0,0 +1,482 @@
+package org.gezzon.grad.radiation;
+
+import org.bukkit.Bukkit;
+import org.bukkit.Location;
+import org.bukkit.NamespacedKey;
+import org.bukkit.World;
+import org.bukkit.configuration.file.FileConfiguration;
+import org.bukkit.entity.EntityType;
+import org.bukkit.entity.LivingEntity;
+import org.bukkit.entity.Mob;
+import org.bukkit.potion.PotionEffect;
+import org.bukkit.potion.PotionEffectType;
+import org.gezzon.grad.Grad;
+import org.gezzon.grad.scheduler.PluginScheduler;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.EnumSet;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Queue;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Облучение мобов рядом с источниками радиации.
+ * Мобы ищутся не обходом всех сущностей мира, а запросом к пространственному индексу
+ * сущностей сервера (getNearbyLivingEntities по кубу). Источники, чьи кубы сфер пересекаются
+ * (реактор из сотен радиоактивных блоков), объединяются в одну область с одним запросом.
+ *
+ * Раз в entities.interval-ticks начинается новый круг: области активных источников ставятся
+ * в очередь, каждая область превращается в пакет найденных мобов, и за тик тратится не больше
+ * entities.per-tick единиц бюджета (запрос области или моб) — остальное дообрабатывается
+ * в следующих тиках. Моб, попавший в несколько областей, обрабатывается за круг один раз:
+ * скорость накопления в его блоке уже учитывает все источники (и экранирование).
+ *
+ * Накопленная мобами радиация хранится только в памяти и забывается после смерти моба
+ * или долгого отсутствия облучения. Урон считается по тем же порогам damage_start, что и у игроков.
+ *
+ * На Folia области группируются по секциям регионизатора (REGION_SECTION_SHIFT): у каждой секции
+ * своя очередь и свой бюджет per-tick, которые расходуются в потоке её региона. Пока очередь
+ * секции не пройдена, новый круг не ставит ей вторую. Мобы соседних регионов передаются
+ * в потоки, владеющие ими.
+ */
+public class EntityExposureTask implements Runnable {
+
+    // Секция регионизатора Folia — 2^4 x 2^4 чанков (значение по умолчанию); секция целиком принадлежит одному региону
+    private static final int REGION_SECTION_SHIFT = 4 + 4;
+
+    private final RadiationManager manager;
+    private final PluginScheduler scheduler;
+
+    private final int intervalTicks;
+    private final int perTick;
+    private final double doseMultiplier;
+    private final Set<EntityType> types; // Пусто — все мобы
+    private final long forgetAfterNanos;
+    private final List<EffectRule> effects;
+    private final double maxElapsedSeconds;
+
+    // UUID моба -> его облучение (на Folia пишется из потоков разных регионов)
+    private final Map<UUID, EntityDose> doses = new ConcurrentHashMap<>();
+    private final LongAdder evaluations = new LongAdder();
+
+    // Folia: секция -> её очередь, которая ещё обрабатывается в потоке региона
+    private final Map<SectionKey, RoundWork> regionWork = new ConcurrentHashMap<>();
+
+    private RoundWork current;     // Очередь текущего круга (Paper)
+    private long ticks;
+    private long roundStartTick = Long.MIN_VALUE / 2;
+    private volatile long round;   // Номер круга: моб обрабатывается за круг один раз
+
+    public EntityExposureTask(Grad plugin, RadiationManager manager) {
+        this.manager = manager;
+        this.scheduler = new PluginScheduler(plugin);
+
+        FileConfiguration config = plugin.getConfig();
+        this.intervalTicks = Math.max(1, config.getInt("entities.interval-ticks", 20));
+        this.perTick = Math.max(1, config.getInt("entities.per-tick", 200));
+        this.doseMultiplier = Math.max(0.0, config.getDouble("entities.dose-multiplier", 1.0));
+        this.forgetAfterNanos = Math.max(1, config.getLong("entities.forget-after-seconds", 300)) * 1_000_000_000L;
+        // Круг может растянуться, если мобов больше, чем per-tick * interval-ticks
+        this.maxElapsedSeconds = Math.max(5.0, intervalTicks / 20.0 * 4);
+
+        this.types = EnumSet.noneOf(EntityType.class);
+        for (String name : config.getStringList("entities.types")) {
+            try {
+                types.add(EntityType.valueOf(name.toUpperCase(Locale.ROOT)));
+            } catch (IllegalArgumentException e) {
+                plugin.getLogger().warning("Неизвестный тип моба в entities.types: " + name);
+            }
+        }
+
+        this.effects = new ArrayList<>();
+        for (Map<?, ?> effectMap : config.getMapList("entities.effects")) {
+            Object type = effectMap.get("type");
+            PotionEffectType effectType = type != null
+                    ? PotionEffectType.getByKey(NamespacedKey.minecraft(type.toString().toLowerCase(Locale.ROOT)))
+                    : null;
+            if (effectType == null || !(effectMap.get("min-dose") instanceof Number minDose)) {
+                plugin.getLogger().warning("Неполное или неверное описание эффекта в entities.effects: " + effectMap);
+                continue;
+            }
+            int amplifier = effectMap.get("amplifier") instanceof Number number ? number.intValue() : 0;
+            effects.add(new EffectRule(effectType, minDose.doubleValue(), amplifier));
+        }
+    }
+
+    /**
+     * Запустить облучение мобов: задача в глобальном контексте каждый тик.
+     */
+    public void start() {
+        scheduler.runGlobalTimer(this, 20L, 1L);
+    }
+
+    @Override
+    public void run() {
+        ticks++;
+        if (PluginScheduler.isFolia()) {
+            if (ticks - roundStartTick >= intervalTicks) {
+                Map<SectionKey, List<Area>> sections = startRound();
+                for (Map.Entry<SectionKey, List<Area>> entry : sections.entrySet()) {
+                    RoundWork work = new RoundWork(entry.getKey(), entry.getValue(), round);
+                    // Секция, чья прошлая очередь ещё не пройдена, новую не получает
+                    if (regionWork.putIfAbsent(entry.getKey(), work) != null) continue;
+                    scheduler.runAtLocation(work.anchor, () -> runInRegion(work));
+                }
+            }
+            return;
+        }
+
+        if (current == null || current.isDone()) {
+            if (ticks - roundStartTick < intervalTicks) return;
+            List<Area> areas = new ArrayList<>();
+            for (List<Area> section : startRound().values()) {
+                areas.addAll(section);
+            }
+            current = new RoundWork(null, areas, round);
+        }
+        current.process(perTick);
+    }
+
+    /**
+     * Folia: потратить бюджет тика на очередь секции в потоке её региона; остаток — в следующем тике.
+     */
+    private void runInRegion(RoundWork work) {
+        work.process(perTick);
+        if (!work.isDone()) {
+            scheduler.runAtLocation(work.anchor, () -> runInRegion(work));
+        } else if (work.key != null) {
+            regionWork.remove(work.key, work);
+        }
+    }
+
+    /**
+     * Начать новый круг: собрать области активных источников по секциям и забыть давно не облучавшихся мобов.
+     */
+    private Map<SectionKey, List<Area>> startRound() {
+        roundStartTick = ticks;
+        round++;
+
+        long now = System.nanoTime();
+        Iterator<EntityDose> iterator = doses.values().iterator();
+        while (iterator.hasNext()) {
+            if (now - iterator.next().lastNanos > forgetAfterNanos) {
+                iterator.remove();
+            }
+        }
+        return buildAreas(manager.getActiveSources());
+    }
+
+    /**
+     * Разложить источники по секциям и внутри секции объединить источники с пересекающимися кубами сфер.
+     */
+    private static Map<SectionKey, List<Area>> buildAreas(List<RadiationSource> sources) {
+        Map<SectionKey, List<Area>> sections = new HashMap<>();
+        for (RadiationSource source : sources) {
+            Location center = source.getCenter();
+            World world = center.getWorld();
+            if (world == null) continue;
+            SectionKey key = new SectionKey(world.getName(),
+                    center.getBlockX() >> REGION_SECTION_SHIFT, center.getBlockZ() >> REGION_SECTION_SHIFT);
+            List<Area> areas = sections.computeIfAbsent(key, k -> new ArrayList<>());
+
+            double x = center.getX();
+            double y = center.getY();
+            double z = center.getZ();
+            double radius = source.getRadius();
+            Area target = null;
+            for (Area area : areas) {
+                if (area.touches(x - radius, y - radius, z - radius, x + radius, y + radius, z + radius)) {
+                    target = area;
+                    break;
+                }
+            }
+            if (target == null) {
+                areas.add(new Area(center.clone(), x, y, z, radius));
+                continue;
+            }
+            target.add(x, y, z, radius);
+            mergeTouching(areas, target);
+        }
+        return sections;
+    }
+
+    /**
+     * Область выросла: поглотить другие области секции, которых она теперь касается.
+     */
+    private static void mergeTouching(List<Area> areas, Area grown) {
+        boolean merged = true;
+        while (merged) {
+            merged = false;
+            Iterator<Area> iterator = areas.iterator();
+            while (iterator.hasNext()) {
+                Area other = iterator.next();
+                if (other == grown || !grown.touches(other.minX, other.minY, other.minZ, other.maxX, other.maxY, other.maxZ)) {
+                    continue;
+                }
+                grown.absorb(other);
+                iterator.remove();
+                merged = true;
+            }
+        }
+    }
+
+    /**
+     * Найти мобов области (в потоке, владеющем её опорной точкой).
+     */
+    private Batch collect(Area area, long roundNumber) {
+        World world = area.anchor.getWorld();
+        List<LivingEntity> found = new ArrayList<>();
+        if (world != null) {
+            Location center = new Location(world, (area.minX + area.maxX) / 2, (area.minY + area.maxY) / 2,
+                    (area.minZ + area.maxZ) / 2);
+            for (LivingEntity entity : world.getNearbyLivingEntities(center,
+                    (area.maxX - area.minX) / 2, (area.maxY - area.minY) / 2, (area.maxZ - area.minZ) / 2)) {
+                if (!(entity instanceof Mob)) continue;
+                if (!types.isEmpty() && !types.contains(entity.getType())) continue;
+                if (!area.contains(entity.getLocation())) continue;
+                found.add(entity);
+            }
+        }
+        return new Batch(found, roundNumber);
+    }
+
+    /**
+     * Облучение одного моба (в потоке, владеющем мобом).
+     */
+    private void expose(LivingEntity entity, long roundNumber, long now) {
+        EntityDose dose = doses.computeIfAbsent(entity.getUniqueId(), uuid -> new EntityDose());
+        if (dose.round == roundNumber) return; // Уже обработан от другого источника
+        dose.round = roundNumber;
+        evaluations.increment();
+
+        double elapsedSeconds = dose.lastNanos != 0L
+                ? Math.min(maxElapsedSeconds, (now - dose.lastNanos) / 1_000_000_000.0)
+                : intervalTicks / 20.0;
+        dose.lastNanos = now;
+
+        double rate = manager.getSourceDoseRate(entity.getLocation()) * doseMultiplier;
+        if (rate <= 0.0) return;
+        dose.value += rate * elapsedSeconds;
+
+        LevelProfile damageLevel = manager.getLevelTable().resolveDamage(dose.value);
+        if (damageLevel != null && damageLevel.damageAmount() > 0) {
+            if (dose.damageTimer <= 0) {
+                entity.damage(damageLevel.damageAmount());
+                dose.damageTimer = damageLevel.damageInterval();
+            } else {
+                dose.damageTimer -= elapsedSeconds;
+            }
+        }
+
+        // Эффекты держатся чуть дольше круга, чтобы не мигать между обработками
+        int duration = intervalTicks + 20;
+        for (EffectRule effect : effects) {
+            if (dose.value >= effect.minDose()) {
+                entity.addPotionEffect(new PotionEffect(effect.type(), duration, effect.amplifier(), true, false));
+            }
+        }
+    }
+
+    /**
+     * Забыть облучение моба (после смерти).
+     */
+    public void forget(UUID uuid) {
+        doses.remove(uuid);
+    }
+
+    /**
+     * Сколько мобов сейчас накопили радиацию.
+     */
+    public int getTrackedCount() {
+        return doses.size();
+    }
+
+    /**
+     * Сколько обработок мобов выполнено с запуска.
+     */
+    public long getEvaluations() {
+        return evaluations.sum();
+    }
+
+    /**
+     * Очередь областей круга и пакет, который обрабатывается сейчас. На Paper одна на круг,
+     * на Folia — по одной на секцию регионизатора.
+     */
+    private final class RoundWork {
+        final SectionKey key; // null — очередь Paper или область, переданная другому региону
+        final Queue<Area> areas;
+        final long roundNumber;
+        Location anchor; // Опорная точка текущей области: в её регионе продолжается обработка
+        Batch batch;
+
+        RoundWork(SectionKey key, List<Area> areas, long roundNumber) {
+            this.key = key;
+            this.areas = new ArrayDeque<>(areas);
+            this.roundNumber = roundNumber;
+            this.anchor = areas.isEmpty() ? null : areas.get(0).anchor;
+        }
+
+        boolean isDone() {
+            return (batch == null || batch.isDone()) && areas.isEmpty();
+        }
+
+        /**
+         * Потратить не больше budget: запрос области к индексу сущностей — единица, моб — единица.
+         */
+        void process(int budget) {
+            while (budget > 0) {
+                if (batch == null || batch.isDone()) {
+                    Area area = areas.poll();
+                    if (area == null) {
+                        batch = null;
+                        return;
+                    }
+                    if (PluginScheduler.isFolia() && !Bukkit.isOwnedByCurrentRegion(area.anchor)) {
+                        // Секция плагина шире региона (другой region-shift сервера) — область уходит своему региону
+                        RoundWork own = new RoundWork(null, List.of(area), roundNumber);
+                        scheduler.runAtLocation(area.anchor, () -> runInRegion(own));
+                        continue;
+                    }
+                    anchor = area.anchor;
+                    batch = collect(area, roundNumber);
+                    budget--; // Запрос к индексу сущностей тоже занимает бюджет — областей без мобов может быть много
+                    continue;
+                }
+                budget -= batch.process(budget);
+            }
+        }
+    }
+
+    /**
+     * Источники с пересекающимися кубами сфер: общий куб для запроса и сферы для отбора мобов.
+     */
+    private static final class Area {
+        final Location anchor; // Центр первого источника: запрос выполняется в потоке, владеющем им
+        double[] spheres = new double[4]; // x, y, z, radius подряд
+        int count;
+        double minX, minY, minZ, maxX, maxY, maxZ;
+
+        Area(Location anchor, double x, double y, double z, double radius) {
+            this.anchor = anchor;
+            minX = x - radius;
+            minY = y - radius;
+            minZ = z - radius;
+            maxX = x + radius;
+            maxY = y + radius;
+            maxZ = z + radius;
+            add(x, y, z, radius);
+        }
+
+        void add(double x, double y, double z, double radius) {
+            if (count * 4 == spheres.length) {
+                spheres = Arrays.copyOf(spheres, spheres.length * 2);
+            }
+            int i = count++ * 4;
+            spheres[i] = x;
+            spheres[i + 1] = y;
+            spheres[i + 2] = z;
+            spheres[i + 3] = radius;
+            minX = Math.min(minX, x - radius);
+            minY = Math.min(minY, y - radius);
+            minZ = Math.min(minZ, z - radius);
+            maxX = Math.max(maxX, x + radius);
+            maxY = Math.max(maxY, y + radius);
+            maxZ = Math.max(maxZ, z + radius);
+        }
+
+        void absorb(Area other) {
+            for (int i = 0; i < other.count * 4; i += 4) {
+                add(other.spheres[i], other.spheres[i + 1], other.spheres[i + 2], other.spheres[i + 3]);
+            }
+        }
+
+        boolean touches(double minX, double minY, double minZ, double maxX, double maxY, double maxZ) {
+            return minX <= this.maxX && maxX >= this.minX
+                    && minY <= this.maxY && maxY >= this.minY
+                    && minZ <= this.maxZ && maxZ >= this.minZ;
+        }
+
+        /**
+         * Лежит ли точка хотя бы в одной сфере области.
+         */
+        boolean contains(Location location) {
+            double x = location.getX();
+            double y = location.getY();
+            double z = location.getZ();
+            for (int i = 0; i < count * 4; i += 4) {
+                double dx = spheres[i] - x;
+                double dy = spheres[i + 1] - y;
+                double dz = spheres[i + 2] - z;
+                double radius = spheres[i + 3];
+                if (dx * dx + dy * dy + dz * dz <= radius * radius) return true;
+            }
+            return false;
+        }
+    }
+
+    private record SectionKey(String world, int x, int z) {
+    }
+
+    /**
+     * Мобы одной области и позиция, до которой они обработаны.
+     */
+    private final class Batch {
+        final List<LivingEntity> entities;
+        final long roundNumber;
+        int cursor;
+
+        Batch(List<LivingEntity> entities, long roundNumber) {
+            this.entities = entities;
+            this.roundNumber = roundNumber;
+        }
+
+        boolean isDone() {
+            return cursor >= entities.size();
+        }
+
+        /**
+         * Обработать не больше limit мобов. Возвращает, сколько позиций пакета пройдено.
+         */
+        int process(int limit) {
+            long now = System.nanoTime();
+            int end = Math.min(entities.size(), cursor + limit);
+            int from = cursor;
+            for (; cursor < end; cursor++) {
+                LivingEntity entity = entities.get(cursor);
+                if (!Bukkit.isOwnedByCurrentRegion(entity)) {
+                    // Folia: моб в соседнем регионе (сфера пересекает границу) или ушёл туда с прошлого тика —
+                    // обрабатываем в потоке, владеющем мобом
+                    scheduler.runForEntity(entity, () -> {
+                        if (entity.isValid()) expose(entity, roundNumber, System.nanoTime());
+                    });
+                    continue;
+                }
+                if (!entity.isValid()) continue; // Моб мог погибнуть с прошлого тика
+                expose(entity, roundNumber, now);
+            }
+            return cursor - from;
+        }
+    }
+
+    /**
+     * Накопленная мобом радиация.
+     */
+    private static final class EntityDose {
+        volatile long round;
+        double value;
+        double damageTimer;
+        volatile long lastNanos; // Читается при очистке в начале круга
+    }
+
+    private record EffectRule(PotionEffectType type, double minDose, int amplifier) {
+    }
+}
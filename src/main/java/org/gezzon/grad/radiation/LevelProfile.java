@@ -0,0 +1,14 @@
+package org.gezzon.grad.radiation;
+
+/**
+ * Параметры одного уровня радиации из config.yml (radiation.levels).
+ *
+ * @param level            номер уровня
+ * @param baseAccumulation прирост радиации в секунду в зоне этого уровня
+ * @param damageStart      накопленная радиация, с которой начинается урон
+ * @param damageInterval   интервал между ударами урона (в секундах)
+ * @param damageAmount     урон за один удар
+ */
+public record LevelProfile(int level, double baseAccumulation, double damageStart,
+                           double damageInterval, double damageAmount) {
+}
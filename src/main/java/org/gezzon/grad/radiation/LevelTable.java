@@ -0,0 +1,110 @@
+package org.gezzon.grad.radiation;
+
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Comparator;
+
+/**
+ * Неизменяемая скомпилированная таблица уровней радиации.
+ *  - профили лежат в массиве, индекс = номер уровня (без хэш-поиска по строкам и упаковки);
+ *  - пороги damage_start отсортированы, уровень урона для накопленной радиации
+ *    находится бинарным поиском, поэтому число уровней в config.yml не влияет на цену тика.
+ */
+public final class LevelTable {
+
+    private static final LevelTable EMPTY = new LevelTable(new LevelProfile[0], new double[0], new LevelProfile[0]);
+
+    private final LevelProfile[] byLevel;        // Индекс = номер уровня, null — уровня нет
+    private final double[] thresholds;           // damage_start по возрастанию
+    private final LevelProfile[] damageProfiles; // Для порога i — уровень с наибольшим номером среди порогов 0..i
+
+    private LevelTable(LevelProfile[] byLevel, double[] thresholds, LevelProfile[] damageProfiles) {
+        this.byLevel = byLevel;
+        this.thresholds = thresholds;
+        this.damageProfiles = damageProfiles;
+    }
+
+    public static LevelTable empty() {
+        return EMPTY;
+    }
+
+    /**
+     * Собрать таблицу из профилей. Профили с номером меньше 1 пропускаются,
+     * при повторе номера побеждает последний.
+     */
+    public static LevelTable compile(Collection<LevelProfile> profiles) {
+        int maxLevel = 0;
+        for (LevelProfile profile : profiles) {
+            maxLevel = Math.max(maxLevel, profile.level());
+        }
+        LevelProfile[] byLevel = new LevelProfile[maxLevel + 1];
+        for (LevelProfile profile : profiles) {
+            if (profile.level() >= 1) {
+                byLevel[profile.level()] = profile;
+            }
+        }
+
+        LevelProfile[] sorted = Arrays.stream(byLevel)
+                .filter(p -> p != null)
+                .sorted(Comparator.comparingDouble(LevelProfile::damageStart))
+                .toArray(LevelProfile[]::new);
+        double[] thresholds = new double[sorted.length];
+        LevelProfile[] damageProfiles = new LevelProfile[sorted.length];
+        LevelProfile best = null;
+        for (int i = 0; i < sorted.length; i++) {
+            thresholds[i] = sorted[i].damageStart();
+            // Как и раньше, при нескольких подходящих порогах урон берётся от старшего уровня
+            if (best == null || sorted[i].level() > best.level()) {
+                best = sorted[i];
+            }
+            damageProfiles[i] = best;
+        }
+        return new LevelTable(byLevel, thresholds, damageProfiles);
+    }
+
+    /**
+     * Профиль уровня или null, если такого уровня нет.
+     */
+    public LevelProfile get(int level) {
+        return level >= 0 && level < byLevel.length ? byLevel[level] : null;
+    }
+
+    /**
+     * base_accumulation уровня или 0, если такого уровня нет.
+     */
+    public double baseAccumulation(int level) {
+        LevelProfile profile = get(level);
+        return profile != null ? profile.baseAccumulation() : 0.0;
+    }
+
+    /**
+     * Уровень, параметры урона которого действуют при накопленной радиации dose,
+     * или null, если dose ниже всех порогов damage_start.
+     */
+    public LevelProfile resolveDamage(double dose) {
+        int index = Arrays.binarySearch(thresholds, dose);
+        if (index < 0) {
+            index = -index - 2; // Последний порог меньше dose
+        } else {
+            // Среди равных порогов берём последний
+            while (index + 1 < thresholds.length && thresholds[index + 1] == dose) {
+                index++;
+            }
+        }
+        return index >= 0 ? damageProfiles[index] : null;
+    }
+
+    /**
+     * Пороги damage_start по возрастанию (копия).
+     */
+    public double[] getDamageThresholds() {
+        return thresholds.clone();
+    }
+
+    /**
+     * Количество уровней в таблице.
+     */
+    public int size() {
+        return thresholds.length;
+    }
+}
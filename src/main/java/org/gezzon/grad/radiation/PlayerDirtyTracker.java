@@ -0,0 +1,101 @@
+package org.gezzon.grad.radiation;
+
+import org.bukkit.Location;
+import org.bukkit.World;
+
+import java.util.UUID;
+
+/**
+ * Отслеживание "грязных" игроков, для которых нужно заново рассчитать радиацию.
+ * Игрок становится грязным при переходе в другой блок, смене мира, смене брони,
+ * переключении god-mode или изменении источника рядом с ним.
+ * Для чистых игроков задача использует последнюю рассчитанную скорость накопления.
+ *
+ * Флаг и последняя скорость хранятся в PlayerRadiationState.
+ * Методы вызываются из потока, владеющего игроком; markDirtyAround и markAllDirty
+ * на Folia могут вызываться из других потоков и только выставляют volatile-флаг.
+ */
+public class PlayerDirtyTracker {
+
+    private final boolean enabled;
+    private final PlayerStateTable states;
+
+    public PlayerDirtyTracker(boolean enabled, PlayerStateTable states) {
+        this.enabled = enabled;
+        this.states = states;
+    }
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    /**
+     * Пометить игрока для пересчёта.
+     */
+    public void markDirty(UUID uuid) {
+        PlayerRadiationState state = states.get(uuid);
+        if (state != null) {
+            state.dirty = true; // Новые состояния и так создаются грязными
+        }
+    }
+
+    /**
+     * Пометить для пересчёта всех игроков, которые на последнем снимке находились
+     * в том же мире не дальше radius от точки center. Игроки, ушедшие с тех пор
+     * в другой блок, уже помечены событием движения. На Folia позиция может читаться
+     * одновременно с записью снимка — в худшем случае пересчёт будет лишним.
+     */
+    public void markDirtyAround(Location center, double radius) {
+        if (!enabled) return;
+        World world = center.getWorld();
+        if (world == null) return;
+
+        double radiusSquared = radius * radius;
+        for (PlayerRadiationState state : states.values()) {
+            if (!state.hasLocation || state.location.getWorld() != world) continue;
+            if (state.location.distanceSquared(center) <= radiusSquared) {
+                state.dirty = true;
+            }
+        }
+    }
+
+    /**
+     * Пометить для пересчёта всех игроков (например, для периодического полного обновления).
+     */
+    public void markAllDirty() {
+        if (!enabled) return;
+        for (PlayerRadiationState state : states.values()) {
+            state.dirty = true;
+        }
+    }
+
+    /**
+     * Можно ли переиспользовать последнюю скорость накопления игрока (state.lastRate).
+     * Снимает с игрока отметку "грязный".
+     */
+    public boolean takeClean(PlayerRadiationState state) {
+        if (!enabled) return false;
+        boolean clean = !state.dirty && state.hasRate;
+        state.dirty = false;
+        return clean;
+    }
+
+    /**
+     * Запомнить рассчитанную скорость накопления игрока.
+     */
+    public void storeRate(PlayerRadiationState state, double rate) {
+        state.lastRate = rate;
+        state.hasRate = enabled;
+    }
+
+    /**
+     * Забыть последнюю скорость игрока (при выходе с сервера).
+     */
+    public void forget(UUID uuid) {
+        PlayerRadiationState state = states.get(uuid);
+        if (state != null) {
+            state.hasRate = false;
+            state.dirty = true;
+        }
+    }
+}
@@ -0,0 +1,75 @@
+package org.gezzon.grad.radiation;
+
+import org.bukkit.Location;
+import org.bukkit.World;
+import org.bukkit.entity.Player;
+
+import java.util.UUID;
+
+/**
+ * Всё состояние радиации одного игрока в примитивных полях.
+ * Объект создаётся один раз (при первом обращении) и переиспользуется каждый тик,
+ * поэтому в установившемся режиме задача не выделяет память на игрока:
+ * нет упаковки Double в карты, копий Location и объектов-снимков.
+ *
+ * Поля меняются потоком, владеющим игроком (основной поток на Paper, поток региона на Folia);
+ * поля "расчёта" пишет рабочий поток между снимком и применением, пока задача помечена
+ * как выполняющаяся. Флаги, которые могут выставлять другие потоки, объявлены volatile.
+ */
+public final class PlayerRadiationState {
+
+    final UUID uuid;
+
+    // Накопление и урон
+    volatile double dose; // Накопленная радиация (читается при сохранении и командами)
+    volatile boolean god; // "Бог-режим"
+    double damageTimer;   // Запусков до следующего нанесения урона
+
+    // Броня: уровни Radiation Protection в порядке getArmorContents() (массив не меняется на месте)
+    int[] armorLevels;    // null — ещё не прочитаны
+    volatile boolean armorStale; // Броню нужно перечитать
+
+    // Отслеживание изменений
+    volatile boolean dirty = true; // Нужен пересчёт скорости накопления (ставится и из других потоков)
+    boolean hasRate;      // lastRate посчитан и актуален
+    double lastRate;      // Последняя рассчитанная скорость накопления
+
+    // Кэш уровня региона по последнему блоку
+    int regionBlockX;
+    int regionBlockY;
+    int regionBlockZ;
+    World regionWorld;    // Мир, для которого посчитан regionLevel
+    long regionGeneration = -1;
+    int regionLevel;
+
+    // Планирование
+    boolean pending;          // Корзина подошла, но игрок ещё не обработан (перенос из-за бюджета)
+    boolean evaluated;        // Игрок хотя бы раз оценён
+    long lastEvaluatedNanos;  // System.nanoTime() прошлой оценки
+    long snapshotNanos;       // System.nanoTime() снимка текущего запуска
+
+    // Снимок текущего запуска задачи
+    Player player;
+    final Location location = new Location(null, 0, 0, 0); // Заполняется через getLocation(Location)
+    boolean hasLocation;  // location хотя бы раз заполнялась
+    boolean cached;       // Прирост взят из прошлого расчёта
+    double radiation;     // Прирост радиации за этот запуск
+    boolean sourcesSampled; // sourceRate посчитан при снимке (экранирование читает блоки в потоке игрока)
+    double sourceRate;    // Скорость накопления от источников, посчитанная при снимке
+
+    PlayerRadiationState(UUID uuid) {
+        this.uuid = uuid;
+    }
+
+    public UUID getUuid() {
+        return uuid;
+    }
+
+    public double getDose() {
+        return dose;
+    }
+
+    public boolean isGod() {
+        return god;
+    }
+}
@@ -0,0 +1,61 @@
+package org.gezzon.grad.radiation;
+
+import java.util.Collection;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Таблица состояний игроков: UUID -> переиспользуемый PlayerRadiationState.
+ * Заменяет отдельные карты накопленной радиации, god-mode, таймеров урона,
+ * кэшей брони, регионов и последних скоростей накопления.
+ *
+ * Таблица конкурентная: на Folia игроки обрабатываются в потоках своих регионов.
+ * Состояние конкретного игрока меняет поток, владеющий этим игроком.
+ */
+public class PlayerStateTable {
+
+    private final Map<UUID, PlayerRadiationState> states = new ConcurrentHashMap<>();
+
+    /**
+     * Состояние игрока или null, если его ещё нет.
+     */
+    public PlayerRadiationState get(UUID uuid) {
+        return states.get(uuid);
+    }
+
+    /**
+     * Состояние игрока; создаётся при первом обращении.
+     */
+    public PlayerRadiationState getOrCreate(UUID uuid) {
+        PlayerRadiationState state = states.get(uuid);
+        return state != null ? state : states.computeIfAbsent(uuid, PlayerRadiationState::new);
+    }
+
+    /**
+     * Освободить состояние игрока при выходе. Возвращает его накопленную радиацию.
+     * Игроки в god-mode остаются в таблице, чтобы режим сохранился до следующего входа.
+     */
+    public double release(UUID uuid) {
+        PlayerRadiationState state = states.get(uuid);
+        if (state == null) return 0.0;
+        double dose = state.dose;
+        if (state.god) {
+            state.dose = 0.0;
+            state.damageTimer = 0.0;
+            state.armorLevels = null;
+            state.hasRate = false;
+            state.dirty = true;
+            state.pending = false;
+            state.evaluated = false;
+            state.player = null;
+        } else {
+            states.remove(uuid);
+        }
+        return dose;
+    }
+
+    public Collection<PlayerRadiationState> values() {
+        return states.values();
+    }
+}
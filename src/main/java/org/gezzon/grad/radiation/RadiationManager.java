@@ -4,21 +4,35 @@ import org.bukkit.Bukkit;
 import org.bukkit.Location;
 import org.bukkit.Material;
 import org.bukkit.World;
+import org.bukkit.block.Block;
+import org.bukkit.configuration.ConfigurationSection;
 import org.bukkit.configuration.file.FileConfiguration;
-import org.bukkit.configuration.file.YamlConfiguration;
 import org.gezzon.grad.Grad;
+import org.gezzon.grad.profiling.PhaseProfiler;
+import org.gezzon.grad.scheduler.PluginScheduler;
+import org.gezzon.grad.storage.BinarySourceStorage;
+import org.gezzon.grad.storage.FilePlayerDoseStore;
+import org.gezzon.grad.storage.PlayerDosePersister;
+import org.gezzon.grad.storage.PlayerDoseStore;
+import org.gezzon.grad.storage.SourceRecord;
+import org.gezzon.grad.storage.SourceStorage;
+import org.gezzon.grad.storage.SqlitePlayerDoseStore;
+import org.gezzon.grad.storage.WriteBehindPersister;
+import org.gezzon.grad.storage.YamlSourceStorage;
 
 import java.io.File;
 import java.io.IOException;
 import java.util.*;
-import java.util.stream.Collectors;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.IntToDoubleFunction;
+import java.util.logging.Level;
 
 /**
  * Менеджер радиации:
  *  - хранение, загрузка, сохранение и поиск источников радиации;
  *  - хранение уровней радиации и их параметров (base_accumulation, damage_start, damage_interval, damage_amount);
  *  - отслеживание "бог-режима" для игроков;
- *  - хранение накопленных значений радиации игроков.
+ *  - хранение накопленных значений радиации игроков (в памяти и в хранилище на диске).
  */
 public class RadiationManager {
 
@@ -28,30 +42,62 @@ public class RadiationManager {
     private double blockPower;             // Множитель радиации от блока
 
     private final Grad plugin;
+    private final PluginScheduler scheduler;
 
-    // Список источников радиации: ID -> объект
-    private final Map<Integer, RadiationSource> sources = new HashMap<>();
-    private int nextId = 1; // Автоинкремент для нового источника
+    // Список источников радиации: ID -> объект.
+    // Конкурентные карты: на Folia источники меняются и читаются из потоков разных регионов,
+    // а изменения (add/remove/update) сериализуются блокировкой менеджера
+    private final Map<Integer, RadiationSource> sources = new ConcurrentHashMap<>();
+    private int nextId = 1; // Автоинкремент для нового источника (под блокировкой менеджера)
 
-    // Map для быстрого доступа по Location
-    private final Map<Location, RadiationSource> locationSourceMap = new HashMap<>();
+    // Источники в блоках: мир -> упакованные координаты блока -> ID (проверки при установке и разрушении блоков)
+    private final BlockSourceIndex blockIndex = new BlockSourceIndex();
 
-    // Данные по уровням радиации (1..5):
-    // уровень -> Map{ "base_accumulation", "damage_start", "damage_interval", "damage_amount" }
-    private final Map<Integer, Map<String, Double>> levelData = new HashMap<>();
+    // Пространственный индекс активных источников: мир -> компактное хранилище с сеткой по чанкам
+    private final SourceIndex sourceIndex = new SourceIndex();
 
-    // Хранение радиации игроков: UUID -> накопленное значение
-    private final Map<UUID, Double> playerRadiation = new HashMap<>();
+    // Учёт загруженных чанков под источниками: в индекс попадают только источники над загруженными чанками
+    private final SourceActivation activation = new SourceActivation();
 
-    // Состояние "бог-режима" для игроков: множество UUID, у кого включен god-mode
-    private final Set<UUID> godModePlayers = new HashSet<>();
+    // Источники миров, которые ещё не загружены: мир -> записи (переносятся в sources при загрузке мира)
+    private final Map<String, List<SourceRecord>> parkedSources = new ConcurrentHashMap<>();
 
-    // Файл и конфигурация, в которых хранятся источники
-    private File sourcesFile;
-    private YamlConfiguration sourcesConfig;
+    // Скомпилированная таблица уровней радиации из config.yml (массив по номеру уровня + пороги урона)
+    private volatile LevelTable levelTable = LevelTable.empty();
+
+    // Уровень источника -> base_accumulation (0, если уровня нет в config.yml)
+    private final IntToDoubleFunction baseAccumulationLookup = level -> levelTable.baseAccumulation(level);
+
+    // Состояние игроков: накопленная радиация, god-mode, таймер урона, кэши брони и региона
+    private final PlayerStateTable playerStates = new PlayerStateTable();
+
+    // Кэш поля радиации от источников по секциям чанков (null — кэш выключен)
+    private DoseFieldCache doseFieldCache;
+
+    // Кэш лучей экранирования блоками: источник -> блок игрока -> доля радиации (null — экранирование выключено)
+    private ShieldingCache shieldingCache;
+
+    // Общий кэш уровней радиации регионов WorldGuard по блокам
+    private RegionLevelCache regionLevelCache = new RegionLevelCache(16384);
+
+    // Кэш уровней зачарования брони игроков
+    private final ArmorProtectionCache armorCache = new ArmorProtectionCache(playerStates);
+
+    // Профилировщик фаз расчёта и сохранений (/radiation stats, JFR)
+    private PhaseProfiler profiler = new PhaseProfiler(false);
+
+    // Отслеживание игроков, которым нужен пересчёт радиации
+    private PlayerDirtyTracker dirtyTracker = new PlayerDirtyTracker(false, playerStates);
+
+    // Отложенное фоновое сохранение источников (YAML или бинарный журнал)
+    private WriteBehindPersister persister;
+
+    // Асинхронное хранение накопленной радиации игроков (null — хранилище не открылось)
+    private PlayerDosePersister playerDosePersister;
 
     public RadiationManager(Grad plugin) {
         this.plugin = plugin;
+        this.scheduler = new PluginScheduler(plugin);
     }
 
     /**
@@ -60,13 +106,37 @@ public class RadiationManager {
      *  - загрузка источников из radiation-sources.yml
      */
     public void init() {
+        FileConfiguration config = plugin.getConfig();
+        profiler = new PhaseProfiler(config.getBoolean("performance.profiler.enabled", true));
+        dirtyTracker = new PlayerDirtyTracker(config.getBoolean("performance.dirty-tracking.enabled", true), playerStates);
+        loadShielding(config);
+        if (config.getBoolean("performance.dose-field-cache.enabled", true)) {
+            doseFieldCache = new DoseFieldCache(this::sampleSources,
+                    config.getInt("performance.dose-field-cache.max-sections", 4096));
+        }
+        regionLevelCache = new RegionLevelCache(config.getInt("performance.region-cache.max-blocks", 16384));
+        startRegionCacheRefresh(config.getInt("performance.region-cache.refresh-seconds", 5));
         loadLevelData();
         loadSourcesFromFile();
+        openPlayerDoseStorage();
         loadRadioactiveBlockConfig();
     }
 
 
 
+    /**
+     * Периодическая проверка регионов WorldGuard в фоне: если регионы с флагом radiation
+     * создали, удалили или переопределили, кэш мира сбрасывается, а игроки пересчитываются.
+     */
+    private void startRegionCacheRefresh(int refreshSeconds) {
+        long period = Math.max(1, refreshSeconds) * 20L;
+        scheduler.runAsyncTimer(() -> {
+            if (regionLevelCache.refresh()) {
+                scheduler.runGlobal(() -> dirtyTracker.markAllDirty());
+            }
+        }, period, period);
+    }
+
     public void loadRadioactiveBlockConfig() {
         FileConfiguration config = plugin.getConfig();
         String blockTypeStr = config.getString("blocks.radioactive_block.type");
@@ -89,124 +159,551 @@ public class RadiationManager {
     }
 
     /**
-     * Загрузка данных об уровнях радиации (1..5) из config.yml
+     * Загрузка модели экранирования из config.yml (shielding.*) и создание кэша лучей.
      */
-    private void loadLevelData() {
-        List<Map<?, ?>> levels = plugin.getConfig().getMapList("radiation.levels");
-        for (Map<?, ?> levelMap : levels) {
-            int level = ((Number) levelMap.get("level")).intValue();
-            double baseAcc = ((Number) levelMap.get("base_accumulation")).doubleValue();
-            double damageStart = ((Number) levelMap.get("damage_start")).doubleValue();
-            double damageInterval = ((Number) levelMap.get("damage_interval")).doubleValue();
-            double damageAmount = ((Number) levelMap.get("damage_amount")).doubleValue();
-
-            Map<String, Double> data = new HashMap<>();
-            data.put("base_accumulation", baseAcc);
-            data.put("damage_start", damageStart);
-            data.put("damage_interval", damageInterval);
-            data.put("damage_amount", damageAmount);
+    private void loadShielding(FileConfiguration config) {
+        if (!config.getBoolean("shielding.enabled", false)) {
+            shieldingCache = null;
+            return;
+        }
+        Map<String, Double> materials = new HashMap<>();
+        ConfigurationSection section = config.getConfigurationSection("shielding.materials");
+        if (section != null) {
+            for (String key : section.getKeys(false)) {
+                String name = key.toUpperCase(Locale.ROOT);
+                if (name.indexOf('*') < 0 && Material.getMaterial(name) == null) {
+                    plugin.getLogger().warning("Неизвестный материал в shielding.materials: " + key);
+                    continue;
+                }
+                materials.put(name, section.getDouble(key));
+            }
+        }
+        ShieldingModel model = ShieldingModel.compile(materials, config.getDouble("shielding.solid-default", 0.3));
+        shieldingCache = new ShieldingCache(model, config.getInt("shielding.max-rays-per-source", 8192));
+    }
 
-            levelData.put(level, data);
+    /**
+     * Загрузка уровней радиации из config.yml и компиляция их в LevelTable.
+     * Количество уровней не ограничено.
+     */
+    private void loadLevelData() {
+        List<LevelProfile> profiles = new ArrayList<>();
+        for (Map<?, ?> levelMap : plugin.getConfig().getMapList("radiation.levels")) {
+            try {
+                profiles.add(new LevelProfile(
+                        ((Number) levelMap.get("level")).intValue(),
+                        ((Number) levelMap.get("base_accumulation")).doubleValue(),
+                        ((Number) levelMap.get("damage_start")).doubleValue(),
+                        ((Number) levelMap.get("damage_interval")).doubleValue(),
+                        ((Number) levelMap.get("damage_amount")).doubleValue()
+                ));
+            } catch (NullPointerException | ClassCastException e) {
+                plugin.getLogger().warning("Неполное или неверное описание уровня радиации в config.yml: " + levelMap);
+            }
         }
+        levelTable = LevelTable.compile(profiles);
     }
 
     /**
-     * Загрузка списка источников из файла radiation-sources.yml
+     * Загрузка списка источников из хранилища, выбранного в config.yml (storage.engine):
+     *  - yaml: radiation-sources.yml;
+     *  - binary: radiation-sources.bin + radiation-sources.journal (при первом запуске переносит данные из YAML).
      */
     private void loadSourcesFromFile() {
-        sourcesFile = new File(plugin.getDataFolder(), "radiation-sources.yml");
-        if (!sourcesFile.exists()) {
+        FileConfiguration config = plugin.getConfig();
+        YamlSourceStorage yamlStorage = new YamlSourceStorage(new File(plugin.getDataFolder(), "radiation-sources.yml"));
+        SourceStorage storage = yamlStorage;
+
+        BinarySourceStorage binaryStorage = new BinarySourceStorage(
+                new File(plugin.getDataFolder(), "radiation-sources.bin"),
+                new File(plugin.getDataFolder(), "radiation-sources.journal"),
+                config.getInt("storage.journal-compact-threshold", 10000),
+                plugin.getLogger());
+
+        String engine = config.getString("storage.engine", "yaml");
+        if ("binary".equalsIgnoreCase(engine)) {
             try {
-                // Создаём файл, если его нет
-                sourcesFile.createNewFile();
+                int migrated = binaryStorage.migrateFrom(yamlStorage);
+                if (migrated >= 0) {
+                    plugin.getLogger().info("Источники радиации перенесены из radiation-sources.yml в бинарное хранилище: " + migrated);
+                }
             } catch (IOException e) {
-                plugin.getLogger().warning("Не удалось создать файл radiation-sources.yml!");
-                return;
+                plugin.getLogger().log(Level.SEVERE, "Не удалось перенести radiation-sources.yml в бинарное хранилище!", e);
+            }
+            storage = binaryStorage;
+        } else {
+            if (!"yaml".equalsIgnoreCase(engine)) {
+                plugin.getLogger().warning("Неизвестный storage.engine в config.yml: " + engine + ". Используется yaml.");
+            }
+            // Возврат с binary на yaml: переносим источники обратно, а не стартуем с пустым списком
+            try {
+                int restored = binaryStorage.migrateTo(yamlStorage);
+                if (restored >= 0) {
+                    plugin.getLogger().info("Источники радиации перенесены из бинарного хранилища в radiation-sources.yml: " + restored);
+                }
+            } catch (IOException e) {
+                plugin.getLogger().log(Level.SEVERE, "Не удалось перенести бинарное хранилище в radiation-sources.yml!", e);
+            }
+            if (!yamlStorage.getFile().exists()
+                    && new File(plugin.getDataFolder(), "radiation-sources.yml.migrated").exists()) {
+                plugin.getLogger().warning("radiation-sources.yml не найден, но есть radiation-sources.yml.migrated: "
+                        + "источники были перенесены в storage.engine: binary. Верните binary или переименуйте файл обратно.");
             }
-        }
-        sourcesConfig = YamlConfiguration.loadConfiguration(sourcesFile);
-        if (sourcesConfig == null) {
-            sourcesConfig = new YamlConfiguration();
         }
 
-        if (sourcesConfig.contains("sources")) {
-            List<Map<?, ?>> list = sourcesConfig.getMapList("sources");
-            for (Map<?, ?> entry : list) {
-                int id = ((Number) entry.get("id")).intValue();
-                int intensity = ((Number) entry.get("intensity")).intValue();
-                double radius = ((Number) entry.get("radius")).doubleValue();
-                double power = ((Number) entry.get("power")).doubleValue();
-                String worldName = (String) entry.get("world");
-                double x = ((Number) entry.get("x")).doubleValue();
-                double y = ((Number) entry.get("y")).doubleValue();
-                double z = ((Number) entry.get("z")).doubleValue();
+        persister = new WriteBehindPersister(plugin, storage, this::snapshotSources, this::snapshotSource,
+                config.getLong("storage.save-delay-ticks", 40L), profiler);
 
-                World world = Bukkit.getWorld(worldName);
+        List<SourceRecord> records;
+        try {
+            records = storage.load();
+        } catch (IOException e) {
+            plugin.getLogger().log(Level.SEVERE, "Не удалось загрузить источники радиации!", e);
+            return;
+        }
+        synchronized (this) {
+            for (SourceRecord record : records) {
+                World world = Bukkit.getWorld(record.world());
                 if (world != null) {
-                    Location center = new Location(world, x, y, z);
-                    RadiationSource source = new RadiationSource(id, intensity, radius, power, center);
-                    sources.put(id, source);
-                    nextId = Math.max(nextId, id + 1);
+                    materialise(record, world);
+                } else {
+                    // Мир ещё не загружен — источник ждёт WorldLoadEvent и не теряется при сохранении
+                    parkedSources.computeIfAbsent(record.world(), name -> new ArrayList<>()).add(record);
                 }
+                nextId = Math.max(nextId, record.id() + 1);
             }
         }
+        int parked = parkedSources.values().stream().mapToInt(List::size).sum();
+        if (parked > 0) {
+            plugin.getLogger().info("Источников радиации в незагруженных мирах: " + parked + " (будут загружены вместе с мирами).");
+        }
     }
 
     /**
-     * Сохранение текущих источников радиации в файл radiation-sources.yml
+     * Создать источник из записи в загруженном мире world (под блокировкой менеджера).
      */
-    public void saveSourcesToFile() {
-        if (sourcesConfig == null) {
-            plugin.getLogger().warning("sourcesConfig не инициализирован. Пропускаем сохранение источников.");
+    private void materialise(SourceRecord record, World world) {
+        Location center = new Location(world, record.x(), record.y(), record.z());
+        RadiationSource source = new RadiationSource(record.id(), record.intensity(), record.radius(), record.power(), center);
+        sources.put(record.id(), source);
+        indexBlock(source);
+        activate(source);
+    }
+
+    /**
+     * Зарегистрировать источник в учёте чанков и добавить в индекс, если под ним есть загруженные чанки.
+     */
+    private void activate(RadiationSource source) {
+        Location center = source.getCenter();
+        if (center.getWorld() == null) return;
+        if (activation.register(source.getId(), center.getWorld(), center.getX(), center.getZ(), source.getRadius())) {
+            sourceIndex.add(source);
+        } else {
+            sourceIndex.remove(source);
+        }
+    }
+
+    /**
+     * Мир загружен: перенести его отложенные источники в рабочий набор.
+     */
+    public synchronized void onWorldLoad(World world) {
+        List<SourceRecord> parked = parkedSources.remove(world.getName());
+        if (parked == null) return;
+        for (SourceRecord record : parked) {
+            materialise(record, world);
+        }
+        plugin.getLogger().info("Загружены источники радиации мира " + world.getName() + ": " + parked.size());
+    }
+
+    /**
+     * Мир выгружен: убрать его источники из рабочего набора и отложить до повторной загрузки.
+     */
+    public synchronized void onWorldUnload(World world) {
+        List<SourceRecord> parked = new ArrayList<>();
+        Iterator<RadiationSource> iterator = sources.values().iterator();
+        while (iterator.hasNext()) {
+            RadiationSource source = iterator.next();
+            if (source.getCenter().getWorld() != world) continue;
+            parked.add(toRecord(source));
+            sourceIndex.remove(source);
+            invalidateShielding(source.getId());
+            iterator.remove();
+        }
+        activation.clearWorld(world.getName());
+        blockIndex.clearWorld(world.getName());
+        if (doseFieldCache != null) {
+            doseFieldCache.clear();
+        }
+        if (!parked.isEmpty()) {
+            parkedSources.computeIfAbsent(world.getName(), name -> new ArrayList<>()).addAll(parked);
+        }
+    }
+
+    /**
+     * Чанк загружен: источники, под которыми появился первый загруженный чанк, становятся активными.
+     */
+    public synchronized void onChunkLoad(World world, int cx, int cz) {
+        if (shieldingCache != null) {
+            // Пока чанк был выгружен, лучи через него считались идущими по воздуху:
+            // сбрасываем только лучи, пересекающие столб чанка, и поле — только если такие были
+            int minX = cx << 4;
+            int minZ = cz << 4;
+            for (int id : activation.sourcesInChunk(world.getName(), cx, cz)) {
+                RadiationSource source = sources.get(id);
+                if (source == null) continue;
+                Location center = source.getCenter();
+                int dropped = shieldingCache.invalidateBox(id, center.getX(), center.getY(), center.getZ(),
+                        minX, world.getMinHeight(), minZ, minX + 15, world.getMaxHeight() - 1, minZ + 15);
+                if (dropped > 0) {
+                    invalidateDoseField(center, source.getRadius());
+                }
+            }
+        }
+        for (int id : activation.chunkLoaded(world.getName(), cx, cz)) {
+            RadiationSource source = sources.get(id);
+            if (source == null) continue;
+            sourceIndex.add(source);
+            invalidateDoseField(source.getCenter(), source.getRadius());
+            dirtyTracker.markDirtyAround(source.getCenter(), source.getRadius());
+        }
+    }
+
+    /**
+     * Чанк выгружен: источники без загруженных чанков под сферой уходят из индекса.
+     */
+    public synchronized void onChunkUnload(World world, int cx, int cz) {
+        for (int id : activation.chunkUnloaded(world.getName(), cx, cz)) {
+            RadiationSource source = sources.get(id);
+            if (source == null) continue;
+            sourceIndex.remove(source);
+            invalidateDoseField(source.getCenter(), source.getRadius());
+        }
+    }
+
+    /**
+     * Активные источники (над загруженными чанками).
+     */
+    public List<RadiationSource> getActiveSources() {
+        List<RadiationSource> result = new ArrayList<>();
+        for (int id : activation.getActiveIds()) {
+            RadiationSource source = sources.get(id);
+            if (source != null) {
+                result.add(source);
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Количество активных источников (над загруженными чанками).
+     */
+    public int getActiveSourceCount() {
+        return activation.getActiveCount();
+    }
+
+    /**
+     * Открыть хранилище радиации игроков, выбранное в config.yml (storage.player-dose.backend):
+     *  - file: папка playerdata, файл на игрока;
+     *  - sqlite: база player-dose.db.
+     */
+    private void openPlayerDoseStorage() {
+        FileConfiguration config = plugin.getConfig();
+        String backend = config.getString("storage.player-dose.backend", "file");
+        PlayerDoseStore store;
+        try {
+            if ("sqlite".equalsIgnoreCase(backend)) {
+                store = new SqlitePlayerDoseStore(new File(plugin.getDataFolder(), "player-dose.db"));
+            } else {
+                if (!"file".equalsIgnoreCase(backend)) {
+                    plugin.getLogger().warning("Неизвестный storage.player-dose.backend в config.yml: " + backend + ". Используется file.");
+                }
+                store = new FilePlayerDoseStore(new File(plugin.getDataFolder(), "playerdata"));
+            }
+        } catch (IOException e) {
+            plugin.getLogger().log(Level.SEVERE, "Не удалось открыть хранилище радиации игроков!", e);
             return;
         }
-        List<Map<String, Object>> list = new ArrayList<>();
+        playerDosePersister = new PlayerDosePersister(plugin, store, profiler);
+        playerDosePersister.startAutoSave(this::snapshotPlayerRadiation,
+                config.getLong("storage.player-dose.save-interval-seconds", 60L) * 20L);
+    }
+
+    public PlayerDosePersister getPlayerDosePersister() {
+        return playerDosePersister;
+    }
+
+    public WriteBehindPersister getSourcePersister() {
+        return persister;
+    }
+
+    /**
+     * Синхронно сохранить радиацию игроков онлайн и закрыть хранилище (при выключении плагина)
+     */
+    public void savePlayerRadiation() {
+        if (playerDosePersister == null) return;
+        try {
+            playerDosePersister.shutdown(snapshotPlayerRadiation());
+        } catch (IOException e) {
+            plugin.getLogger().log(Level.WARNING, "Не удалось сохранить радиацию игроков!", e);
+        }
+    }
+
+    /**
+     * Снимок всех источников для сохранения (вызывается в основном потоке)
+     */
+    private List<SourceRecord> snapshotSources() {
+        List<SourceRecord> list = new ArrayList<>(sources.size());
         for (RadiationSource source : sources.values()) {
-            Map<String, Object> entry = new HashMap<>();
-            entry.put("id", source.getId());
-            entry.put("intensity", source.getIntensity());
-            entry.put("radius", source.getRadius());
-            entry.put("power", source.getPower());
-            entry.put("world", source.getCenter().getWorld().getName());
-            entry.put("x", source.getCenter().getX());
-            entry.put("y", source.getCenter().getY());
-            entry.put("z", source.getCenter().getZ());
-            list.add(entry);
-        }
-        sourcesConfig.set("sources", list);
+            list.add(toRecord(source));
+        }
+        // Источники незагруженных миров сохраняются как есть
+        for (List<SourceRecord> parked : parkedSources.values()) {
+            list.addAll(parked);
+        }
+        return list;
+    }
+
+    /**
+     * Снимок одного источника по ID или null, если его больше нет
+     */
+    private SourceRecord snapshotSource(int id) {
+        RadiationSource source = sources.get(id);
+        if (source != null) {
+            return toRecord(source);
+        }
+        // Импортированный источник мог сразу попасть в незагруженный мир
+        for (List<SourceRecord> parked : parkedSources.values()) {
+            for (SourceRecord record : parked) {
+                if (record.id() == id) {
+                    return record;
+                }
+            }
+        }
+        return null;
+    }
+
+    private static SourceRecord toRecord(RadiationSource source) {
+        Location center = source.getCenter();
+        return new SourceRecord(source.getId(), source.getIntensity(), source.getRadius(), source.getPower(),
+                center.getWorld().getName(), center.getX(), center.getY(), center.getZ());
+    }
+
+    /**
+     * Запланировать фоновое сохранение изменённого источника: изменения за несколько тиков
+     * объединяются в одну запись вне основного потока
+     */
+    private void markSourceChanged(int id) {
+        if (persister != null) {
+            persister.markChanged(id);
+        }
+    }
+
+    /**
+     * Синхронно сохранить источники и остановить фоновую запись (при выключении плагина)
+     */
+    public void saveSourcesToFile() {
+        if (persister == null) {
+            plugin.getLogger().warning("Хранилище источников не инициализировано. Пропускаем сохранение источников.");
+            return;
+        }
         try {
-            sourcesConfig.save(sourcesFile);
+            persister.flush();
         } catch (IOException e) {
-            plugin.getLogger().warning("Не удалось сохранить файл radiation-sources.yml!");
+            plugin.getLogger().log(Level.WARNING, "Не удалось сохранить источники радиации!", e);
         }
     }
 
     /**
-     * Создать новый источник радиации и сохранить в файл
+     * Создать новый источник радиации и запланировать сохранение
      */
-    public RadiationSource addSource(int intensity, double radius, double power, Location center) {
+    public synchronized RadiationSource addSource(int intensity, double radius, double power, Location center) {
         RadiationSource source = new RadiationSource(nextId, intensity, radius, power, center);
         sources.put(nextId, source);
-        locationSourceMap.put(center, source); // Кэшируем по Location
+        indexBlock(source);
+        activate(source);
+        invalidateDoseField(center, radius);
+        dirtyTracker.markDirtyAround(center, radius);
         nextId++;
-        saveSourcesToFile();
+        markSourceChanged(source.getId());
         return source;
     }
 
-    public RadiationSource getSourceByLocation(Location location) {
-        return locationSourceMap.get(location);
+    /**
+     * Массовый импорт одной транзакцией под блокировкой менеджера (вызывается в основном потоке).
+     * Записи получают новые ID, их собственные ID не используются. replace — сначала удалить
+     * все источники, в том числе в незагруженных мирах. Источники загруженных миров добавляются
+     * в индекс за одну блокировку записи, кэш поля и лучи сбрасываются один раз, а сохранение
+     * всей пачки объединяется в одну запись. Возвращает число добавленных источников.
+     */
+    public synchronized int importSources(List<SourceRecord> records, boolean replace) {
+        List<Integer> changed = new ArrayList<>(records.size());
+        if (replace) {
+            for (RadiationSource source : sources.values()) {
+                unindexBlock(source);
+                activation.unregister(source.getId());
+                changed.add(source.getId());
+            }
+            sources.clear();
+            sourceIndex.clear();
+            for (List<SourceRecord> parked : parkedSources.values()) {
+                for (SourceRecord record : parked) {
+                    changed.add(record.id());
+                }
+            }
+            parkedSources.clear();
+            if (shieldingCache != null) {
+                shieldingCache.clear();
+            }
+        }
+
+        List<RadiationSource> active = new ArrayList<>(records.size());
+        for (SourceRecord record : records) {
+            int id = nextId++;
+            World world = Bukkit.getWorld(record.world());
+            if (world == null) {
+                parkedSources.computeIfAbsent(record.world(), name -> new ArrayList<>())
+                        .add(new SourceRecord(id, record.intensity(), record.radius(), record.power(),
+                                record.world(), record.x(), record.y(), record.z()));
+            } else {
+                Location center = new Location(world, record.x(), record.y(), record.z());
+                RadiationSource source = new RadiationSource(id, record.intensity(), record.radius(), record.power(), center);
+                sources.put(id, source);
+                indexBlock(source);
+                if (activation.register(id, world, center.getX(), center.getZ(), source.getRadius())) {
+                    active.add(source);
+                }
+            }
+            changed.add(id);
+        }
+        sourceIndex.addAll(active);
+
+        if (doseFieldCache != null) {
+            doseFieldCache.clear();
+        }
+        dirtyTracker.markAllDirty();
+        if (persister != null) {
+            persister.markChanged(changed);
+        }
+        return records.size();
     }
+
+    /**
+     * Снимок всех источников для экспорта, по возрастанию ID.
+     */
+    public synchronized List<SourceRecord> exportSources() {
+        List<SourceRecord> records = snapshotSources();
+        records.sort(Comparator.comparingInt(SourceRecord::id));
+        return records;
+    }
+
+    /**
+     * Источник, стоящий в блоке block, или null.
+     */
+    public RadiationSource getSourceAt(Block block) {
+        int id = blockIndex.get(block.getWorld().getName(), block.getX(), block.getY(), block.getZ());
+        return id >= 0 ? sources.get(id) : null;
+    }
+
+    /**
+     * ID источника в блоке (x, y, z) мира worldName или -1.
+     */
+    public int getSourceIdAt(String worldName, int x, int y, int z) {
+        return blockIndex.get(worldName, x, y, z);
+    }
+
     /**
      * Удалить источник радиации по ID
      */
-    public boolean removeSource(int id) {
+    public synchronized boolean removeSource(int id) {
+        return removeLocked(id);
+    }
+
+    /**
+     * Удалить несколько источников за одну блокировку (взрывы, правки WorldEdit).
+     * Возвращает число удалённых.
+     */
+    public synchronized int removeSources(Collection<Integer> ids) {
+        int removed = 0;
+        for (int id : ids) {
+            if (removeLocked(id)) {
+                removed++;
+            }
+        }
+        return removed;
+    }
+
+    /**
+     * Перенести источники в новые блоки (сдвиг поршнем): ID -> новый центр.
+     * Сначала снимаются все старые позиции, потом ставятся новые, чтобы сдвинутые
+     * друг за другом блоки не затёрли друг друга в индексе блоков.
+     */
+    public synchronized void moveSources(Map<Integer, Location> moves) {
+        List<RadiationSource> moved = new ArrayList<>(moves.size());
+        for (Map.Entry<Integer, Location> entry : moves.entrySet()) {
+            RadiationSource source = sources.get(entry.getKey());
+            if (source == null) continue;
+            unindexBlock(source);
+            activation.unregister(source.getId());
+            sourceIndex.remove(source);
+            invalidateShielding(source.getId());
+            invalidateDoseField(source.getCenter(), source.getRadius());
+            dirtyTracker.markDirtyAround(source.getCenter(), source.getRadius());
+            source.setCenter(entry.getValue());
+            moved.add(source);
+        }
+        for (RadiationSource source : moved) {
+            indexBlock(source);
+            activate(source);
+            invalidateDoseField(source.getCenter(), source.getRadius());
+            dirtyTracker.markDirtyAround(source.getCenter(), source.getRadius());
+            markSourceChanged(source.getId());
+        }
+    }
+
+    private boolean removeLocked(int id) {
         RadiationSource source = sources.remove(id);
-        if (source != null) {
-            locationSourceMap.remove(source.getCenter()); // Удаляем из кэша
-            saveSourcesToFile();
-            return true;
+        if (source == null) {
+            return false;
         }
-        return false;
+        unindexBlock(source);
+        activation.unregister(id);
+        sourceIndex.remove(source);
+        invalidateShielding(id);
+        invalidateDoseField(source.getCenter(), source.getRadius());
+        dirtyTracker.markDirtyAround(source.getCenter(), source.getRadius());
+        markSourceChanged(id);
+        return true;
+    }
+
+    /**
+     * Записать источник в индекс блоков, если его центр стоит ровно в блоке.
+     */
+    private void indexBlock(RadiationSource source) {
+        Location center = source.getCenter();
+        if (center.getWorld() != null && BlockSourceIndex.isBlockAligned(center.getX(), center.getY(), center.getZ())) {
+            blockIndex.put(center.getWorld().getName(), center.getBlockX(), center.getBlockY(), center.getBlockZ(), source.getId());
+        }
+    }
+
+    private void unindexBlock(RadiationSource source) {
+        Location center = source.getCenter();
+        if (center.getWorld() != null) {
+            blockIndex.remove(center.getWorld().getName(), center.getBlockX(), center.getBlockY(), center.getBlockZ(), source.getId());
+        }
+    }
+
+    /**
+     * Применить изменения источника (интенсивность, радиус, power):
+     * перестроить его ячейки в индексе и запланировать сохранение
+     */
+    public synchronized void updateSource(RadiationSource source) {
+        // Пересчитываем игроков и в старой, и в новой сфере (радиус мог уменьшиться)
+        double oldRadius = activation.getRadius(source.getId());
+        activate(source); // Радиус мог измениться — пересчитываем чанки под сферой и обновляем индекс
+        double affectedRadius = Math.max(oldRadius, source.getRadius());
+        invalidateDoseField(source.getCenter(), affectedRadius);
+        dirtyTracker.markDirtyAround(source.getCenter(), affectedRadius);
+        markSourceChanged(source.getId());
     }
 
     /**
@@ -227,46 +724,248 @@ public class RadiationManager {
     }
 
     /**
-     * Найти все источники в заданном радиусе distance от локации loc
+     * Неизменяемый снимок источников мира worldName для фоновых расчётов.
+     */
+    public WorldSourceStore snapshotWorldSources(String worldName) {
+        // Все источники мира, а не только активные: карта строится и по незагруженным областям
+        WorldSourceStore store = new WorldSourceStore(worldName);
+        for (RadiationSource source : sources.values()) {
+            Location center = source.getCenter();
+            if (center.getWorld() != null && center.getWorld().getName().equals(worldName)) {
+                store.add(source.getId(), center.getX(), center.getY(), center.getZ(),
+                        source.getRadius(), source.getIntensity(), source.getPower());
+            }
+        }
+        return store;
+    }
+
+    /**
+     * Количество источников по мирам. Читает только конкурентную карту источников,
+     * поэтому безопасно вызывается из любого потока.
+     */
+    public Map<String, Integer> countSourcesByWorld() {
+        Map<String, Integer> counts = new TreeMap<>();
+        for (RadiationSource source : sources.values()) {
+            World world = source.getCenter().getWorld();
+            if (world != null) {
+                counts.merge(world.getName(), 1, Integer::sum);
+            }
+        }
+        for (Map.Entry<String, List<SourceRecord>> entry : parkedSources.entrySet()) {
+            counts.merge(entry.getKey(), entry.getValue().size(), Integer::sum);
+        }
+        return counts;
+    }
+
+    /**
+     * Найти активные источники (над загруженными чанками) в заданном радиусе distance от локации loc.
+     * Для расчёта и отрисовки; список для администратора — findSourcesNear.
      */
     public List<RadiationSource> getSourcesNear(Location loc, double distance) {
-        return sources.values().stream()
-                .filter(s -> s.getCenter().getWorld().equals(loc.getWorld()))
-                .filter(s -> s.getCenter().distance(loc) <= distance)
-                .collect(Collectors.toList());
+        List<RadiationSource> result = new ArrayList<>();
+        for (int id : sourceIndex.getWithin(loc, distance)) {
+            RadiationSource source = sources.get(id);
+            if (source != null) {
+                result.add(source);
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Найти все источники загруженных миров, центр которых не дальше distance от loc,
+     * в том числе над выгруженными чанками (/radiation near). Полный обход, по возрастанию ID.
+     */
+    public List<RadiationSource> findSourcesNear(Location loc, double distance) {
+        List<RadiationSource> result = new ArrayList<>();
+        if (loc.getWorld() == null) return result;
+        double distanceSquared = distance * distance;
+        for (RadiationSource source : sources.values()) {
+            Location center = source.getCenter();
+            if (center.getWorld() == loc.getWorld() && center.distanceSquared(loc) <= distanceSquared) {
+                result.add(source);
+            }
+        }
+        result.sort(Comparator.comparingInt(RadiationSource::getId));
+        return result;
     }
 
     /**
-     * Получить Map с данными выбранного уровня (1..5),
-     * где можно взять base_accumulation, damage_start и т.д.
+     * Суммарная скорость накопления радиации от источников в точке loc.
+     * Обходит только источники мира точки, чья сфера может достать до её чанка.
      */
-    public Map<String, Double> getLevelData(int level) {
-        return levelData.get(level);
+    public double getSourceDoseRate(Location loc) {
+        if (loc.getWorld() == null) return 0.0;
+        if (doseFieldCache != null) {
+            // Значение по блоку из кэша секций; считается один раз до изменения источников или блоков рядом
+            return doseFieldCache.get(loc.getWorld().getName(), loc.getBlockX(), loc.getBlockY(), loc.getBlockZ());
+        }
+        return sampleSources(loc.getWorld().getName(), loc.getX(), loc.getY(), loc.getZ(), new boolean[]{true});
+    }
+
+    /**
+     * Точный расчёт скорости накопления от источников в точке. С экранированием вклад каждого
+     * источника ослабляется блоками на луче до блока точки, поэтому вызывать только из потока,
+     * владеющего этим блоком. Неполный луч (через нечитаемый чанк) сбрасывает complete[0].
+     */
+    private double sampleSources(String worldName, double x, double y, double z, boolean[] complete) {
+        ShieldingCache shielding = shieldingCache;
+        World world = shielding != null ? Bukkit.getWorld(worldName) : null;
+        if (world == null) {
+            return sourceIndex.sumDoseRate(worldName, x, y, z, baseAccumulationLookup);
+        }
+        int bx = (int) Math.floor(x);
+        int by = (int) Math.floor(y);
+        int bz = (int) Math.floor(z);
+        return sourceIndex.sumDoseRate(worldName, x, y, z, baseAccumulationLookup,
+                (id, sx, sy, sz) -> shielding.transmission(world, id, sx, sy, sz, bx, by, bz, complete));
+    }
+
+    /**
+     * Блоки изменились: сбросить лучи экранирования, проходящие через них, поле радиации
+     * в сферах источников, которые их накрывают, и пересчитать игроков в этих сферах.
+     * Поле и игроки обновляются один раз на источник, сколько бы блоков ни изменилось (взрывы).
+     */
+    public void onBlocksChanged(Collection<Block> blocks) {
+        if (shieldingCache == null || blocks.isEmpty()) return;
+        Set<Integer> affected = new HashSet<>();
+        for (Block block : blocks) {
+            int x = block.getX();
+            int y = block.getY();
+            int z = block.getZ();
+            for (int id : sourceIndex.getCovering(block.getWorld().getName(), x + 0.5, y + 0.5, z + 0.5)) {
+                RadiationSource source = sources.get(id);
+                if (source == null) continue;
+                Location center = source.getCenter();
+                shieldingCache.invalidateBlock(id, center.getX(), center.getY(), center.getZ(), x, y, z);
+                affected.add(id);
+            }
+        }
+        for (int id : affected) {
+            RadiationSource source = sources.get(id);
+            if (source == null) continue;
+            invalidateDoseField(source.getCenter(), source.getRadius());
+            dirtyTracker.markDirtyAround(source.getCenter(), source.getRadius());
+        }
+    }
+
+    /**
+     * Изменилась область блоков (правка WorldEdit): сбросить все лучи источников,
+     * чья сфера задевает параллелепипед [min, max] мира worldName.
+     */
+    public void onAreaChanged(String worldName, int minX, int minY, int minZ, int maxX, int maxY, int maxZ) {
+        if (shieldingCache == null) return;
+        for (RadiationSource source : sources.values()) {
+            Location center = source.getCenter();
+            if (center.getWorld() == null || !center.getWorld().getName().equals(worldName)) continue;
+            double dx = center.getX() - Math.max(minX, Math.min(center.getX(), maxX + 1));
+            double dy = center.getY() - Math.max(minY, Math.min(center.getY(), maxY + 1));
+            double dz = center.getZ() - Math.max(minZ, Math.min(center.getZ(), maxZ + 1));
+            double radius = source.getRadius();
+            if (dx * dx + dy * dy + dz * dz > radius * radius) continue;
+            shieldingCache.invalidateSource(source.getId());
+            invalidateDoseField(center, radius);
+            dirtyTracker.markDirtyAround(center, radius);
+        }
+    }
+
+    private void invalidateShielding(int id) {
+        if (shieldingCache != null) {
+            shieldingCache.invalidateSource(id);
+        }
+    }
+
+    /**
+     * Включено ли экранирование блоками: тогда радиация от источников считается
+     * в потоке, владеющем игроком, а не в рабочих потоках.
+     */
+    public boolean isShieldingEnabled() {
+        return shieldingCache != null;
+    }
+
+    public ShieldingCache getShieldingCache() {
+        return shieldingCache;
+    }
+
+    /**
+     * Сбросить кэш поля радиации в секциях, которые пересекает сфера источника.
+     */
+    private void invalidateDoseField(Location center, double radius) {
+        if (doseFieldCache != null && center.getWorld() != null) {
+            doseFieldCache.invalidate(center.getWorld().getName(), center.getX(), center.getY(), center.getZ(), radius);
+        }
+    }
+
+    public DoseFieldCache getDoseFieldCache() {
+        return doseFieldCache;
+    }
+
+    /**
+     * Скомпилированная таблица уровней радиации
+     */
+    public LevelTable getLevelTable() {
+        return levelTable;
     }
 
     /**
      * Установить накопленный уровень радиации для игрока
      */
     public void setPlayerRadiation(UUID uuid, double value) {
-        playerRadiation.put(uuid, value);
+        playerStates.getOrCreate(uuid).dose = value;
+    }
+
+    /**
+     * Убрать игрока из памяти (при выходе). Возвращает его накопленную радиацию.
+     */
+    public double removePlayerRadiation(UUID uuid) {
+        return playerStates.release(uuid);
+    }
+
+    /**
+     * Копия накопленной радиации всех игроков в памяти (для сохранения)
+     */
+    public Map<UUID, Double> snapshotPlayerRadiation() {
+        Map<UUID, Double> doses = new HashMap<>();
+        for (PlayerRadiationState state : playerStates.values()) {
+            doses.put(state.uuid, state.dose);
+        }
+        return doses;
     }
 
     /**
      * Получить накопленный уровень радиации игрока
      */
     public double getPlayerRadiation(UUID uuid) {
-        return playerRadiation.getOrDefault(uuid, 0.0);
+        PlayerRadiationState state = playerStates.get(uuid);
+        return state != null ? state.dose : 0.0;
     }
 
     /**
      * Включить/выключить "бог-режим" (god-mode) для указанного игрока
      */
     public void setGodMode(UUID uuid, boolean god) {
-        if (god) {
-            godModePlayers.add(uuid);
-        } else {
-            godModePlayers.remove(uuid);
-        }
+        playerStates.getOrCreate(uuid).god = god;
+        dirtyTracker.markDirty(uuid);
+    }
+
+    public PhaseProfiler getProfiler() {
+        return profiler;
+    }
+
+    public PlayerStateTable getPlayerStates() {
+        return playerStates;
+    }
+
+    public RegionLevelCache getRegionLevelCache() {
+        return regionLevelCache;
+    }
+
+    public ArmorProtectionCache getArmorCache() {
+        return armorCache;
+    }
+
+    public PlayerDirtyTracker getDirtyTracker() {
+        return dirtyTracker;
     }
 
     public Material getRadioactiveBlockType() {
@@ -288,6 +987,7 @@ public class RadiationManager {
      * Узнать, включён ли "бог-режим" у игрока
      */
     public boolean isGodMode(UUID uuid) {
-        return godModePlayers.contains(uuid);
+        PlayerRadiationState state = playerStates.get(uuid);
+        return state != null && state.god;
     }
 }
\ No newline at end of file
@@ -9,7 +9,7 @@ import org.bukkit.Location;
 public class RadiationSource {
 
     private final int id;           // Уникальный идентификатор источника
-    private int intensity;    // Уровень радиации (1..5)
+    private int intensity;    // Уровень радиации (номер уровня из config.yml)
     private double radius;    // Радиус сферы
     private double power;     // Множитель радиации
     private Location center;  // Центр зоны (x,y,z + мир)
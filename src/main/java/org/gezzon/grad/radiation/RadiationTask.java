@@ -1,211 +1,488 @@
 package org.gezzon.grad.radiation;
 
-import com.sk89q.worldedit.bukkit.BukkitAdapter;
-import com.sk89q.worldguard.WorldGuard;
-import com.sk89q.worldguard.protection.ApplicableRegionSet;
-import com.sk89q.worldguard.protection.managers.RegionManager;
-import com.sk89q.worldguard.protection.regions.ProtectedRegion;
-import com.sk89q.worldguard.protection.regions.RegionContainer;
 import org.bukkit.Bukkit;
 import org.bukkit.Location;
+import org.bukkit.World;
+import org.bukkit.configuration.file.FileConfiguration;
 import org.bukkit.entity.Player;
-import org.bukkit.scheduler.BukkitRunnable;
-import org.bukkit.NamespacedKey;
-import org.bukkit.inventory.ItemStack;
-import org.bukkit.inventory.meta.ItemMeta;
-import org.bukkit.persistence.PersistentDataType;
 import org.gezzon.grad.Grad;
-
-import java.util.HashMap;
-import java.util.Map;
+import org.gezzon.grad.profiling.PhaseProfiler;
+import org.gezzon.grad.profiling.PhaseProfiler.Phase;
+import org.gezzon.grad.scheduler.PluginScheduler;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
 import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.logging.Level;
 
 /**
  * Задача для регулярного расчета радиации и её влияния на игроков.
+ * Каждый запуск разбит на три фазы:
+ *  1) снимок (основной поток): позиции игроков, уровни зачарования брони (из кэша), god-mode;
+ *  2) расчёт (пул рабочих потоков, по шардам игроков): источники, регионы WorldGuard, защита брони;
+ *     при включённом экранировании радиация от источников считается ещё в снимке —
+ *     лучи читают блоки мира, а это допустимо только в потоке, владеющем игроком;
+ *  3) применение (основной поток): запись накопленной радиации и нанесение урона.
+ *
+ * Режимы планирования (performance.scheduler):
+ *  - batch: запуск раз в 20 тиков, все игроки обрабатываются в одном тике;
+ *  - spread: запуск каждый тик, игроки по хэшу UUID разложены на 20 корзин,
+ *    за тик обрабатывается одна корзина. Каждый игрок по-прежнему считается
+ *    ровно раз в секунду, а нагрузка равномерно распределяется по тикам.
+ *
+ * Бюджет времени (performance.tick-budget-nanos): если работа основного потока за тик
+ * превысила бюджет, оставшиеся игроки переносятся на следующий тик, самые "давние" — первыми.
+ * Радиация начисляется за реально прошедшее с прошлой оценки игрока время,
+ * поэтому отложенная оценка не теряет и не удваивает дозу.
+ *
+ * На Folia общего основного потока нет: каждый игрок оценивается раз в секунду
+ * задачей в планировщике своей сущности (в потоке своего региона), снимок, расчёт
+ * и применение выполняются там же; корзины, бюджет и пул потоков не используются.
  */
-public class RadiationTask extends BukkitRunnable {
+public class RadiationTask implements Runnable {
 
+    private final Grad plugin;
+    private final PluginScheduler scheduler;
     private final RadiationManager manager; // Менеджер радиации для управления источниками и уровнями
-    private final Map<UUID, CachedRegionData> playerRegionCache = new HashMap<>(); // Кэш данных по регионам
-    private static final long REGION_CACHE_LIFETIME = 1000L; // Время жизни кэша (1 секунда)
-
-    public RadiationTask(RadiationManager manager) {
+    private final List<PlayerRadiationState> batch = new ArrayList<>(); // Игроки текущего запуска (переиспользуется)
+
+    public static final int BUCKETS = 20; // Корзин в режиме spread — по одной на тик секунды
+    private final boolean spread;
+    private final boolean[] dueBuckets = new boolean[BUCKETS]; // Корзины, обрабатываемые в текущем запуске
+    private long ticks;          // Сколько раз вызывался run()
+    private long processedTicks; // До какого вызова run() корзины уже обработаны
+
+    private static final double MAX_ELAPSED_SECONDS = 5.0; // Больше этого за одну оценку не начисляем (после зависания сервера)
+    private static final Comparator<PlayerRadiationState> BY_STALENESS =
+            Comparator.comparingLong(state -> state.evaluated ? state.lastEvaluatedNanos : Long.MIN_VALUE);
+    private final long tickBudgetNanos; // Бюджет основного потока на тик (0 — без ограничения)
+    private final List<PlayerRadiationState> candidates = new ArrayList<>(); // Ожидающие оценки (переиспользуется)
+    private volatile int carriedOver; // Сколько игроков перенесено на следующий тик в последнем запуске (читается метриками)
+
+    private final ExecutorService workers; // null — расчёт выполняется прямо в основном потоке
+    private final int shardCount;
+    private final AtomicBoolean inFlight = new AtomicBoolean(); // Предыдущий запуск ещё не применён
+
+    private final int fullRefreshRuns; // Раз в сколько запусков пересчитывать всех игроков (0 — никогда)
+    private int runsSinceFullRefresh;
+
+    public RadiationTask(Grad plugin, RadiationManager manager) {
+        this.plugin = plugin;
         this.manager = manager;
+        this.scheduler = new PluginScheduler(plugin);
+
+        FileConfiguration config = plugin.getConfig();
+        int threads = config.getInt("performance.worker-threads", 0);
+        if (threads <= 0) {
+            threads = Math.max(1, Math.min(4, Runtime.getRuntime().availableProcessors() / 2));
+        }
+        if (config.getBoolean("performance.async-compute", true) && !PluginScheduler.isFolia()) {
+            AtomicInteger counter = new AtomicInteger();
+            this.workers = Executors.newFixedThreadPool(threads, runnable -> {
+                Thread thread = new Thread(runnable, "Grad-Radiation-" + counter.incrementAndGet());
+                thread.setDaemon(true);
+                return thread;
+            });
+            this.shardCount = threads;
+        } else {
+            this.workers = null;
+            this.shardCount = 1;
+        }
+        this.spread = "spread".equalsIgnoreCase(config.getString("performance.scheduler", "spread"));
+        this.tickBudgetNanos = Math.max(0L, config.getLong("performance.tick-budget-nanos", 2_000_000L));
+        // Полный пересчёт — страховка на случай изменений, которые не отслеживаются событиями
+        this.fullRefreshRuns = Math.max(0, config.getInt("performance.dirty-tracking.full-refresh-seconds", 30))
+                * (int) (20L / getPeriodTicks());
     }
 
-    @Override
-    public void run() {
+    /**
+     * Запустить расчёт радиации. На Paper — общая задача с периодом getPeriodTicks(),
+     * на Folia — отдельная задача для каждого игрока онлайн (новых игроков добавляет startFor).
+     */
+    public void start() {
+        if (!PluginScheduler.isFolia()) {
+            scheduler.runGlobalTimer(this, 20L, getPeriodTicks()); // старт через 1с
+            return;
+        }
         for (Player player : Bukkit.getOnlinePlayers()) {
-            UUID uuid = player.getUniqueId();
+            startFor(player);
+        }
+        PlayerDirtyTracker tracker = manager.getDirtyTracker();
+        long refreshTicks = fullRefreshRuns * getPeriodTicks();
+        if (tracker.isEnabled() && refreshTicks > 0) {
+            scheduler.runGlobalTimer(tracker::markAllDirty, refreshTicks, refreshTicks);
+        }
+    }
 
-            // Пропускаем игроков с включённым "бог-режимом"
-            if (manager.isGodMode(uuid)) {
-                manager.setPlayerRadiation(uuid, 0.0); // Сбрасываем радиацию
-                continue;
-            }
+    /**
+     * Folia: запустить оценку игрока раз в секунду в потоке его региона.
+     * Задача завершается сама, когда игрок выходит с сервера.
+     */
+    public void startFor(Player player) {
+        if (!PluginScheduler.isFolia()) return;
+        scheduler.runForEntityTimer(player, () -> evaluate(player), 20L, 20L);
+    }
 
-            // Рассчитываем новый уровень радиации
-            double newRadiation = calculateRadiationForPlayer(player);
-            double currentRad = manager.getPlayerRadiation(uuid);
-            double updatedRad = currentRad + newRadiation;
-            manager.setPlayerRadiation(uuid, updatedRad); // Обновляем радиацию игрока
-
-            double damage = 0.0;
-            double damageInterval = Double.MAX_VALUE;
-
-            // Определяем, вызывает ли радиация урон
-            for (int level = 5; level >= 1; level--) {
-                Map<String, Double> data = manager.getLevelData(level);
-                if (data == null) continue;
-
-                double ds = data.get("damage_start");
-                if (updatedRad >= ds) {
-                    damage = data.get("damage_amount");
-                    damageInterval = data.get("damage_interval");
-                    break;
-                }
-            }
+    /**
+     * Folia: снимок, расчёт и применение для одного игрока в потоке его региона.
+     */
+    private void evaluate(Player player) {
+        PlayerRadiationState state = manager.getPlayerStates().getOrCreate(player.getUniqueId());
+        state.player = player;
+        PlayerDirtyTracker tracker = manager.getDirtyTracker();
+        PhaseProfiler profiler = manager.getProfiler();
+        // На Folia каждый игрок оценивается отдельно в потоке региона — запуск с накопителем этого потока
+        PhaseProfiler.Run run = profiler.beginThreadRun();
+        snapshot(state, tracker, System.nanoTime(), true, run);
+        long start = profiler.start();
+        applyOne(state, tracker, manager.getLevelTable());
+        profiler.record(run, Phase.APPLY, start);
+        profiler.endRun(run, 1);
+    }
 
-            // Если радиация наносит урон
-            if (damage > 0) {
-                CachedRegionData cachedData = playerRegionCache.getOrDefault(uuid, new CachedRegionData(0, 0, player.getLocation(), 0));
-                double timeLeft = cachedData.damageTimer;
-                if (timeLeft <= 0) {
-                    player.damage(damage); // Наносим урон игроку
-                    playerRegionCache.put(uuid, new CachedRegionData(damageInterval, System.currentTimeMillis(), player.getLocation(), cachedData.radiationLevel));
-                } else {
-                    cachedData.damageTimer -= 1; // Уменьшаем таймер до следующего урона
-                    playerRegionCache.put(uuid, cachedData); // Обновляем кэш
-                }
-            }
+    /**
+     * Период запуска задачи в тиках: 1 в режиме spread или при включённом бюджете
+     * (перенесённые игроки дообрабатываются в следующем тике), иначе 20.
+     */
+    public long getPeriodTicks() {
+        return spread || tickBudgetNanos > 0 ? 1L : 20L;
+    }
 
-        }
+    /**
+     * Сколько игроков не уложились в бюджет последнего запуска и ждут следующего тика
+     * (метрика grad_players_carried_over; на Folia бюджета нет — всегда 0).
+     */
+    public int getCarriedOver() {
+        return carriedOver;
     }
 
     /**
-     * Рассчитывает общий уровень радиации для игрока.
+     * Корзина игрока в режиме spread (постоянна для UUID).
      */
-    private double calculateRadiationForPlayer(Player player) {
-        UUID uuid = player.getUniqueId();
-        Location loc = player.getLocation();
-        double totalRadiation = 0.0;
+    public static int bucketOf(UUID uuid) {
+        return Math.floorMod(uuid.hashCode(), BUCKETS);
+    }
 
-        // Проверка радиации от всех источников
-        for (RadiationSource source : manager.getAllSources()) {
-            if (!source.getCenter().getWorld().equals(loc.getWorld())) {
-                continue; // Пропускаем источники из другого мира
+    @Override
+    public void run() {
+        ticks++;
+        // Если расчёт прошлого запуска ещё не закончился, не накладываем запуски друг на друга.
+        // Пропущенные корзины будут обработаны следующим запуском, так что ни один игрок не теряет оценку
+        if (!inFlight.compareAndSet(false, true)) {
+            return;
+        }
+        selectDueBuckets();
+        PhaseProfiler.Run run = manager.getProfiler().beginRun();
+
+        // Без пула расчёт идёт прямо в цикле снимка, чтобы бюджет учитывал и его
+        List<PlayerRadiationState> snapshots = takeSnapshots(workers == null, run);
+        if (workers == null || snapshots.isEmpty()) {
+            try {
+                apply(snapshots, run);
+            } finally {
+                inFlight.set(false);
             }
+            return;
+        }
 
-            double distanceSquared = source.getCenter().distanceSquared(loc);
-            double radiusSquared = Math.pow(source.getRadius(), 2);
-            if (distanceSquared <= radiusSquared) {
-                Map<String, Double> data = manager.getLevelData(source.getIntensity());
-                if (data != null) {
-                    double baseAcc = data.get("base_accumulation");
-                    totalRadiation += baseAcc * calculateDistanceFactor(distanceSquared, radiusSquared);
-                }
-            }
+        // Делим игроков на непрерывные шарды — по одному на рабочий поток
+        int shards = Math.min(shardCount, snapshots.size());
+        int shardSize = (snapshots.size() + shards - 1) / shards;
+        List<CompletableFuture<Void>> futures = new ArrayList<>(shards);
+        for (int from = 0; from < snapshots.size(); from += shardSize) {
+            int start = from;
+            int end = Math.min(snapshots.size(), from + shardSize);
+            futures.add(CompletableFuture.runAsync(() -> compute(snapshots, start, end, run), workers));
         }
 
-        // Проверка радиационного уровня в регионе
-        int radiationLevel = getRadiationLevel(player);
-        if (radiationLevel > 0) {
-            Map<String, Double> data = manager.getLevelData(radiationLevel);
-            if (data != null) {
-                totalRadiation += data.get("base_accumulation");
+        CompletableFuture.allOf(futures.toArray(new CompletableFuture[0])).whenComplete((ignored, error) -> {
+            if (error != null) {
+                plugin.getLogger().log(Level.SEVERE, "Ошибка при расчёте радиации в рабочем потоке", error);
+            }
+            if (!plugin.isEnabled()) {
+                inFlight.set(false);
+                return;
+            }
+            scheduler.runGlobal(() -> {
+                try {
+                    apply(snapshots, run);
+                } finally {
+                    inFlight.set(false);
+                }
+            });
+        });
+    }
+
+    /**
+     * Отметить корзины, которые нужно обработать: в режиме batch — все раз в секунду,
+     * в режиме spread — корзины всех тиков с прошлой обработки (не больше одного круга).
+     */
+    private void selectDueBuckets() {
+        if (!spread) {
+            boolean due = ticks - processedTicks >= 20L / getPeriodTicks();
+            Arrays.fill(dueBuckets, due);
+            if (due) {
+                processedTicks = ticks;
             }
+            return;
         }
+        Arrays.fill(dueBuckets, false);
+        for (long tick = Math.max(processedTicks + 1, ticks - BUCKETS + 1); tick <= ticks; tick++) {
+            dueBuckets[(int) (tick % BUCKETS)] = true;
+        }
+        processedTicks = ticks;
+    }
 
-        // Учитываем защиту от брони
-        totalRadiation *= (1.0 - calculateArmorProtection(player, getRadiationLevel(player)));
-        return totalRadiation;
+    /**
+     * Бюджет на текущий тик. Если сервер уже не успевает (средний тик дольше 50 мс),
+     * бюджет уменьшается пропорционально, но не меньше четверти от настроенного.
+     */
+    private long effectiveBudget() {
+        if (tickBudgetNanos <= 0) return 0L;
+        double mspt = Bukkit.getAverageTickTime();
+        if (mspt <= 50.0) return tickBudgetNanos;
+        return (long) Math.max(tickBudgetNanos / 4.0, tickBudgetNanos * 50.0 / mspt);
     }
 
     /**
-     * Рассчитывает влияние расстояния на радиацию.
+     * Остановить пул рабочих потоков (при выключении плагина).
      */
-    private double calculateDistanceFactor(double distanceSquared, double radiusSquared) {
-        double normalizedDistance = Math.sqrt(distanceSquared) / Math.sqrt(radiusSquared);
-        return Math.max(0, 1 - normalizedDistance);
+    public void shutdown() {
+        if (workers == null) return;
+        workers.shutdown();
+        try {
+            if (!workers.awaitTermination(5, TimeUnit.SECONDS)) {
+                workers.shutdownNow();
+            }
+        } catch (InterruptedException e) {
+            workers.shutdownNow();
+            Thread.currentThread().interrupt();
+        }
     }
 
     /**
-     * Получает радиационный уровень региона, в котором находится игрок.
+     * Фаза 1 (основной поток): снимок всего, что требует обращения к Bukkit API.
+     * Снимок пишется в переиспользуемые PlayerRadiationState, локация копируется в готовый объект.
+     * Игроки, чья корзина подошла, становятся ожидающими; ожидающие обрабатываются
+     * от самых давних, пока не исчерпан бюджет тика. computeInline — сразу считать радиацию.
      */
-    public int getRadiationLevel(Player player) {
-        UUID playerId = player.getUniqueId();
-        Location loc = player.getLocation();
-        CachedRegionData cache = playerRegionCache.get(playerId);
+    private List<PlayerRadiationState> takeSnapshots(boolean computeInline, PhaseProfiler.Run run) {
+        long start = System.nanoTime();
+        long budget = effectiveBudget();
+
+        PlayerDirtyTracker tracker = manager.getDirtyTracker();
+        if (tracker.isEnabled() && fullRefreshRuns > 0 && ++runsSinceFullRefresh >= fullRefreshRuns) {
+            runsSinceFullRefresh = 0;
+            tracker.markAllDirty();
+        }
 
-        // Если кэш устарел или позиция изменилась
-        if (cache == null || cache.timestamp + REGION_CACHE_LIFETIME < System.currentTimeMillis() || !cache.lastLocation.equals(loc)) {
-            int level = calculateRadiationLevel(player);
-            playerRegionCache.put(playerId, new CachedRegionData(0, System.currentTimeMillis(), loc, level));
-            return level;
+        PlayerStateTable states = manager.getPlayerStates();
+        candidates.clear();
+        for (Player player : Bukkit.getOnlinePlayers()) {
+            UUID uuid = player.getUniqueId();
+            PlayerRadiationState state;
+            if (dueBuckets[bucketOf(uuid)]) {
+                state = states.getOrCreate(uuid);
+                state.pending = true;
+            } else {
+                state = states.get(uuid);
+                if (state == null || !state.pending) continue; // Очередь игрока в другом тике
+            }
+            state.player = player;
+            candidates.add(state);
+        }
+        if (candidates.size() > 1) {
+            candidates.sort(BY_STALENESS);
         }
 
-        return cache.radiationLevel; // Возвращаем значение из кэша
+        batch.clear();
+        for (PlayerRadiationState state : candidates) {
+            long now = System.nanoTime();
+            if (budget > 0 && !batch.isEmpty() && now - start >= budget) {
+                break; // Бюджет исчерпан — остальные остаются ожидающими до следующего тика
+            }
+            snapshot(state, tracker, now, computeInline, run);
+            batch.add(state);
+        }
+        carriedOver = candidates.size() - batch.size();
+        return batch;
     }
 
     /**
-     * Определяет радиационный уровень региона.
+     * Снимок одного игрока (в потоке, владеющем игроком); computeInline — сразу посчитать радиацию.
      */
-    private int calculateRadiationLevel(Player player) {
-        Location loc = player.getLocation();
-        RegionContainer container = WorldGuard.getInstance().getPlatform().getRegionContainer();
-        RegionManager regionManager = container.get(BukkitAdapter.adapt(loc.getWorld()));
-
-        if (regionManager != null) {
-            ApplicableRegionSet regions = regionManager.getApplicableRegions(BukkitAdapter.asBlockVector(loc));
-            for (ProtectedRegion region : regions) {
-                Integer radiationLevel = region.getFlag(Grad.RADIATION_FLAG);
-                if (radiationLevel != null) {
-                    return radiationLevel; // Возвращаем уровень радиации региона
-                }
+    private void snapshot(PlayerRadiationState state, PlayerDirtyTracker tracker, long now, boolean computeInline,
+                          PhaseProfiler.Run run) {
+        PhaseProfiler profiler = manager.getProfiler();
+        long start = profiler.start();
+        Player player = state.player;
+        state.pending = false;
+        state.snapshotNanos = now;
+        player.getLocation(state.location);
+        state.hasLocation = true;
+        state.cached = false;
+        state.sourcesSampled = false;
+        boolean clean = !state.god && tracker.takeClean(state);
+        profiler.record(run, Phase.SNAPSHOT, start);
+        if (clean) {
+            // Игрок не двигался и вокруг ничего не менялось — берём прошлый результат
+            state.cached = true;
+            state.radiation = state.lastRate;
+        } else if (!state.god) {
+            // Уровни зачарования берутся из кэша, броня перечитывается только после её изменения
+            start = profiler.start();
+            manager.getArmorCache().get(state, player);
+            profiler.record(run, Phase.ARMOR, start);
+            if (computeInline) {
+                state.radiation = calculateRadiationForPlayer(state, run, false);
+            } else if (manager.isShieldingEnabled()) {
+                // Лучи экранирования читают блоки — радиацию от источников считаем здесь, в потоке игрока
+                start = profiler.start();
+                state.sourceRate = manager.getSourceDoseRate(state.location);
+                state.sourcesSampled = true;
+                profiler.record(run, Phase.SOURCES, start);
             }
         }
+    }
+
+    /**
+     * Фаза 2 (рабочий поток): расчёт радиации для игроков [from, to).
+     * Не обращается к Bukkit API, кроме чтения снимка и запросов к WorldGuard.
+     */
+    private void compute(List<PlayerRadiationState> snapshots, int from, int to, PhaseProfiler.Run run) {
+        for (int i = from; i < to; i++) {
+            PlayerRadiationState state = snapshots.get(i);
+            if (state.god || state.cached) continue;
+            state.radiation = calculateRadiationForPlayer(state, run, true);
+        }
+    }
 
-        return 0; // Если регионов с радиацией нет
+    /**
+     * Фаза 3 (основной поток): запись накопленной радиации и нанесение урона.
+     */
+    private void apply(List<PlayerRadiationState> snapshots, PhaseProfiler.Run run) {
+        PlayerDirtyTracker tracker = manager.getDirtyTracker();
+        LevelTable levelTable = manager.getLevelTable();
+        PhaseProfiler profiler = manager.getProfiler();
+        long start = profiler.start();
+        for (PlayerRadiationState state : snapshots) {
+            applyOne(state, tracker, levelTable);
+        }
+        profiler.record(run, Phase.APPLY, start);
+        profiler.endRun(run, snapshots.size());
     }
 
     /**
-     * Рассчитывает защиту игрока от радиации на основе брони.
+     * Применение результата одного игрока (в потоке, владеющем игроком).
      */
-    private double calculateArmorProtection(Player player, int radiationLevel) {
-        double protection = 0.0;
+    private void applyOne(PlayerRadiationState state, PlayerDirtyTracker tracker, LevelTable levelTable) {
+        Player player = state.player;
+        if (player == null || !player.isOnline()) {
+            return; // Вышел во время расчёта — состояние уже освобождено
+        }
 
-        for (ItemStack piece : player.getEquipment().getArmorContents()) {
-            if (piece == null) continue;
+        // Время с прошлой оценки игрока (первая оценка — одна секунда)
+        double elapsedSeconds = state.evaluated
+                ? Math.min(MAX_ELAPSED_SECONDS, (state.snapshotNanos - state.lastEvaluatedNanos) / 1_000_000_000.0)
+                : 1.0;
+        state.lastEvaluatedNanos = state.snapshotNanos;
+        state.evaluated = true;
+
+        // Пропускаем игроков с включённым "бог-режимом"
+        if (state.god) {
+            state.dose = 0.0; // Сбрасываем радиацию
+            return;
+        }
 
-            // Проверяем наличие зачарования Radiation Protection
-            if (piece.containsEnchantment(Grad.getRadiationProtectionEnchantment())) {
-                int level = piece.getEnchantmentLevel(Grad.getRadiationProtectionEnchantment());
-                protection += level * 0.25; // Каждое зачарование добавляет 25% защиты за уровень
+        if (!state.cached) {
+            tracker.storeRate(state, state.radiation);
+        }
 
-                // Если уровень зачарования выше или равен текущему уровню радиации, игрок игнорирует эффект
-                if (level >= radiationLevel) {
-                    return 1.0; // Полная защита от радиации данного уровня
-                }
+        // Обновляем радиацию игрока: скорость накопления задана в секунду
+        double updatedRad = state.dose + state.radiation * elapsedSeconds;
+        state.dose = updatedRad;
+
+        // Определяем, вызывает ли радиация урон (бинарный поиск по порогам damage_start)
+        LevelProfile damageLevel = levelTable.resolveDamage(updatedRad);
+        double damage = damageLevel != null ? damageLevel.damageAmount() : 0.0;
+
+        // Если радиация наносит урон
+        if (damage > 0) {
+            if (state.damageTimer <= 0) {
+                player.damage(damage); // Наносим урон игроку
+                state.damageTimer = damageLevel.damageInterval();
+            } else {
+                state.damageTimer -= elapsedSeconds; // Уменьшаем таймер до следующего урона
             }
         }
-
-        return Math.min(protection, 1.0); // Ограничиваем защиту максимум 100%
     }
 
     /**
-     * Вспомогательный класс для хранения данных кэша.
+     * Рассчитывает общий уровень радиации для игрока по снимку.
+     * onWorker — расчёт идёт в рабочем потоке, его время учитывается как процессорное.
      */
-    private static class CachedRegionData {
-        double damageTimer; // Таймер для урона от радиации
-        long timestamp; // Время последнего обновления данных
-        Location lastLocation; // Последняя локация игрока
-        int radiationLevel; // Уровень радиации в регионе
+    private double calculateRadiationForPlayer(PlayerRadiationState state, PhaseProfiler.Run run, boolean onWorker) {
+        PhaseProfiler profiler = manager.getProfiler();
+        double totalRadiation = 0.0;
+
+        // Радиация от источников, чья сфера может достать до игрока
+        long start = profiler.start();
+        totalRadiation += state.sourcesSampled ? state.sourceRate : manager.getSourceDoseRate(state.location);
+        record(profiler, run, Phase.SOURCES, start, onWorker);
+
+        // Проверка радиационного уровня в регионе
+        start = profiler.start();
+        int radiationLevel = getRadiationLevel(state);
+        if (radiationLevel > 0) {
+            totalRadiation += manager.getLevelTable().baseAccumulation(radiationLevel);
+        }
+        record(profiler, run, Phase.REGIONS, start, onWorker);
+
+        // Учитываем защиту от брони
+        start = profiler.start();
+        totalRadiation *= (1.0 - ArmorProtectionCache.calculateProtection(state.armorLevels, radiationLevel));
+        record(profiler, run, Phase.ARMOR, start, onWorker);
+        return totalRadiation;
+    }
 
-        CachedRegionData(double damageTimer, long timestamp, Location lastLocation, int radiationLevel) {
-            this.damageTimer = damageTimer;
-            this.timestamp = timestamp;
-            this.lastLocation = lastLocation;
-            this.radiationLevel = radiationLevel;
+    private static void record(PhaseProfiler profiler, PhaseProfiler.Run run, Phase phase, long start, boolean onWorker) {
+        if (onWorker) {
+            profiler.recordWorker(run, phase, start);
+        } else {
+            profiler.record(run, phase, start);
+        }
+    }
+
+    /**
+     * Получает радиационный уровень региона, в котором находится игрок.
+     * Пока игрок в том же блоке и кэш регионов не сбрасывался, уровень берётся из его состояния,
+     * иначе — из общего для всех игроков кэша по блокам (RegionLevelCache).
+     */
+    private int getRadiationLevel(PlayerRadiationState state) {
+        Location loc = state.location;
+        RegionLevelCache cache = manager.getRegionLevelCache();
+        long generation = cache.getGeneration(); // Читаем до запроса, чтобы не пропустить сброс
+        World world = loc.getWorld();
+        int bx = loc.getBlockX();
+        int by = loc.getBlockY();
+        int bz = loc.getBlockZ();
+        if (state.regionGeneration != generation || state.regionWorld != world
+                || state.regionBlockX != bx || state.regionBlockY != by || state.regionBlockZ != bz) {
+            state.regionLevel = cache.getLevel(world, bx, by, bz);
+            state.regionWorld = world;
+            state.regionBlockX = bx;
+            state.regionBlockY = by;
+            state.regionBlockZ = bz;
+            state.regionGeneration = generation;
         }
+        return state.regionLevel;
     }
 }
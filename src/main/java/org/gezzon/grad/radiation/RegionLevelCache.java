@@ -0,0 +1,270 @@
+package org.gezzon.grad.radiation;
+
+import com.sk89q.worldedit.bukkit.BukkitAdapter;
+import com.sk89q.worldedit.math.BlockVector2;
+import com.sk89q.worldedit.math.BlockVector3;
+import com.sk89q.worldguard.WorldGuard;
+import com.sk89q.worldguard.protection.ApplicableRegionSet;
+import com.sk89q.worldguard.protection.managers.RegionManager;
+import com.sk89q.worldguard.protection.regions.ProtectedRegion;
+import com.sk89q.worldguard.protection.regions.RegionType;
+import org.bukkit.World;
+import org.gezzon.grad.Grad;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Общий для всех игроков кэш уровня радиации регионов WorldGuard.
+ *  - для каждого мира хранится набор чанков, которые пересекает хотя бы один регион
+ *    с флагом radiation; в остальных чанках уровень сразу 0 без запроса к WorldGuard;
+ *  - в "радиационных" чанках уровень кэшируется по упакованным координатам блока
+ *    в таблице long -> int ограниченного размера (при переполнении она сбрасывается),
+ *    поэтому сотни игроков в одних и тех же регионах дают лишь несколько запросов
+ *    getApplicableRegions.
+ *
+ * WorldGuard не сообщает о создании, удалении и переопределении регионов событиями,
+ * поэтому refresh() периодически сравнивает отпечаток регионов с флагом и сбрасывает
+ * кэш мира, если он изменился.
+ *
+ * Потокобезопасен: getLevel вызывается из рабочих потоков расчёта.
+ */
+public class RegionLevelCache {
+
+    // Если регионы с флагом покрывают больше чанков, чем это, мир считается "сплошь радиационным"
+    private static final int MAX_INDEXED_CHUNKS = 1 << 16;
+
+    private final int maxBlocksPerWorld;
+    private final Map<String, WorldRegions> worlds = new ConcurrentHashMap<>();
+
+    // Увеличивается при каждом сбросе кэша; по нему игроки проверяют свой сохранённый уровень
+    private final AtomicLong generation = new AtomicLong();
+
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+
+    public RegionLevelCache(int maxBlocksPerWorld) {
+        this.maxBlocksPerWorld = Math.max(1, maxBlocksPerWorld);
+    }
+
+    /**
+     * Уровень радиации региона в блоке (bx, by, bz) мира world (0, если регионов с радиацией нет).
+     */
+    public int getLevel(World world, int bx, int by, int bz) {
+        WorldRegions regions = worldRegions(world);
+        if (regions == null) return 0;
+
+        if (!regions.mayHaveRadiation(bx >> 4, bz >> 4)) {
+            hits.increment();
+            return 0; // В чанке нет ни одного региона с флагом radiation
+        }
+
+        long key = BlockSourceIndex.blockKey(bx, by, bz);
+        synchronized (regions) {
+            int cached = regions.blocks.get(key);
+            if (cached != LongIntTable.EMPTY) {
+                hits.increment();
+                return cached;
+            }
+        }
+
+        misses.increment();
+        RegionManager regionManager = regionManager(world);
+        int level = regionManager != null ? queryLevel(regionManager, bx, by, bz) : 0;
+        if (level == LongIntTable.EMPTY) return level; // Совпадает с меткой пустой ячейки — не кэшируем
+        synchronized (regions) {
+            // Если за время запроса кэш мира сбросили, значение попадёт в уже выброшенный набор — это безопасно
+            if (regions.blocks.size >= maxBlocksPerWorld) {
+                regions.blocks = new LongIntTable();
+            }
+            regions.blocks.put(key, level);
+        }
+        return level;
+    }
+
+    /**
+     * Уровень радиации региона в блоке без поблочного кэша: чанки без регионов с флагом
+     * отсекаются, остальные точки идут прямо в WorldGuard. Для массовых выборок
+     * (карта радиации), которые иначе переполняли бы кэш и сбрасывали блоки игроков.
+     */
+    public int getLevelUncached(World world, int bx, int by, int bz) {
+        WorldRegions regions = worldRegions(world);
+        if (regions == null || !regions.mayHaveRadiation(bx >> 4, bz >> 4)) return 0;
+        RegionManager regionManager = regionManager(world);
+        return regionManager != null ? queryLevel(regionManager, bx, by, bz) : 0;
+    }
+
+    /**
+     * Проверить, изменились ли регионы с флагом radiation, и сбросить кэш изменившихся миров.
+     * Возвращает true, если хотя бы один мир был сброшен.
+     */
+    public boolean refresh() {
+        Map<String, RegionManager> loaded = new HashMap<>();
+        for (RegionManager regionManager : WorldGuard.getInstance().getPlatform().getRegionContainer().getLoaded()) {
+            loaded.put(regionManager.getName(), regionManager);
+        }
+
+        boolean changed = false;
+        for (Map.Entry<String, WorldRegions> entry : worlds.entrySet()) {
+            RegionManager regionManager = loaded.get(entry.getKey());
+            if (regionManager == null) {
+                // Мир выгружен — кэш будет собран заново при следующем обращении
+                worlds.remove(entry.getKey());
+                changed = true;
+            } else if (fingerprint(regionManager) != entry.getValue().fingerprint) {
+                worlds.put(entry.getKey(), build(regionManager));
+                changed = true;
+            }
+        }
+        if (changed) {
+            generation.incrementAndGet();
+        }
+        return changed;
+    }
+
+    /**
+     * Полностью сбросить кэш.
+     */
+    public void clear() {
+        worlds.clear();
+        generation.incrementAndGet();
+    }
+
+    /**
+     * Номер поколения кэша: меняется, когда уровни регионов могли измениться.
+     */
+    public long getGeneration() {
+        return generation.get();
+    }
+
+    public long getHits() {
+        return hits.sum();
+    }
+
+    public long getMisses() {
+        return misses.sum();
+    }
+
+    /**
+     * Кэш мира (собирается при первом обращении) или null, если у мира нет регионов WorldGuard.
+     */
+    private WorldRegions worldRegions(World world) {
+        WorldRegions regions = worlds.get(world.getName());
+        if (regions == null) {
+            RegionManager regionManager = regionManager(world);
+            if (regionManager == null) return null;
+            regions = worlds.computeIfAbsent(world.getName(), name -> build(regionManager));
+        }
+        return regions;
+    }
+
+    private static RegionManager regionManager(World world) {
+        return WorldGuard.getInstance().getPlatform().getRegionContainer().get(BukkitAdapter.adapt(world));
+    }
+
+    /**
+     * Запрос к WorldGuard: первый регион с флагом radiation в точке.
+     */
+    private static int queryLevel(RegionManager regionManager, int bx, int by, int bz) {
+        ApplicableRegionSet regions = regionManager.getApplicableRegions(BlockVector3.at(bx, by, bz));
+        for (ProtectedRegion region : regions) {
+            Integer radiationLevel = region.getFlag(Grad.RADIATION_FLAG);
+            if (radiationLevel != null) {
+                return radiationLevel;
+            }
+        }
+        return 0;
+    }
+
+    /**
+     * Собрать набор чанков мира, которые пересекают регионы с флагом radiation.
+     */
+    private WorldRegions build(RegionManager regionManager) {
+        List<ProtectedRegion> flagged = flaggedRegions(regionManager);
+        boolean everywhere = false;
+        Set<Long> chunks = new HashSet<>();
+        for (ProtectedRegion region : flagged) {
+            if (region.getType() == RegionType.GLOBAL) {
+                everywhere = true; // __global__ действует на весь мир
+                break;
+            }
+            BlockVector3 min = region.getMinimumPoint();
+            BlockVector3 max = region.getMaximumPoint();
+            int minCX = min.getBlockX() >> 4;
+            int maxCX = max.getBlockX() >> 4;
+            int minCZ = min.getBlockZ() >> 4;
+            int maxCZ = max.getBlockZ() >> 4;
+            if ((long) (maxCX - minCX + 1) * (maxCZ - minCZ + 1) + chunks.size() > MAX_INDEXED_CHUNKS) {
+                everywhere = true;
+                break;
+            }
+            for (int cx = minCX; cx <= maxCX; cx++) {
+                for (int cz = minCZ; cz <= maxCZ; cz++) {
+                    chunks.add(WorldSourceStore.chunkKey(cx, cz));
+                }
+            }
+        }
+        return new WorldRegions(fingerprint(flagged), everywhere, chunks);
+    }
+
+    private static List<ProtectedRegion> flaggedRegions(RegionManager regionManager) {
+        List<ProtectedRegion> flagged = new ArrayList<>();
+        for (ProtectedRegion region : regionManager.getRegions().values()) {
+            if (region.getFlag(Grad.RADIATION_FLAG) != null) {
+                flagged.add(region);
+            }
+        }
+        return flagged;
+    }
+
+    private static long fingerprint(RegionManager regionManager) {
+        return fingerprint(flaggedRegions(regionManager));
+    }
+
+    /**
+     * Отпечаток регионов с флагом: ID, значение флага, приоритет и геометрия.
+     * Сумма не зависит от порядка обхода регионов.
+     */
+    private static long fingerprint(List<ProtectedRegion> flagged) {
+        long sum = flagged.size();
+        for (ProtectedRegion region : flagged) {
+            long hash = region.getId().hashCode();
+            hash = hash * 31 + region.getFlag(Grad.RADIATION_FLAG);
+            hash = hash * 31 + region.getPriority();
+            hash = hash * 31 + region.getMinimumPoint().hashCode();
+            hash = hash * 31 + region.getMaximumPoint().hashCode();
+            for (BlockVector2 point : region.getPoints()) {
+                hash = hash * 31 + point.hashCode();
+            }
+            sum += hash * 0x9E3779B97F4A7C15L;
+        }
+        return sum;
+    }
+
+    /**
+     * Состояние кэша одного мира. Заменяется целиком при изменении регионов.
+     */
+    private static final class WorldRegions {
+        final long fingerprint;
+        final boolean everywhere;            // Регионы с флагом покрывают весь мир (или слишком много чанков)
+        final Set<Long> chunks;    // Чанки, которые пересекают регионы с флагом
+        LongIntTable blocks = new LongIntTable(); // Упакованный блок -> уровень (под блокировкой WorldRegions)
+
+        WorldRegions(long fingerprint, boolean everywhere, Set<Long> chunks) {
+            this.fingerprint = fingerprint;
+            this.everywhere = everywhere;
+            this.chunks = chunks;
+        }
+
+        boolean mayHaveRadiation(int cx, int cz) {
+            return everywhere || chunks.contains(WorldSourceStore.chunkKey(cx, cz));
+        }
+    }
+}
@@ -0,0 +1,133 @@
+package org.gezzon.grad.radiation;
+
+import org.bukkit.World;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Кэш результатов лучей экранирования: ID источника -> блок игрока -> доля дошедшей радиации.
+ * Пока блоки между источником и игроком не менялись, луч не пересчитывается.
+ *
+ * При изменении блока сбрасываются только лучи источников, чья сфера содержит блок,
+ * и только те, что через этот блок проходят. Размер кэша одного источника ограничен:
+ * при переполнении его лучи сбрасываются целиком.
+ *
+ * Лучи через незагруженные чанки и чанки чужого региона не кэшируются: загрузка чанка
+ * сбрасывает лучи, но смена владельца региона на Folia — нет.
+ *
+ * Методы синхронизированы, сам луч считается вне блокировки.
+ */
+public class ShieldingCache {
+
+    private final ShieldingModel model;
+    private final int maxRaysPerSource;
+
+    // ID источника -> упакованные координаты блока игрока -> Float.floatToRawIntBits(доля)
+    private final Map<Integer, LongIntTable> rays = new HashMap<>();
+
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+
+    public ShieldingCache(ShieldingModel model, int maxRaysPerSource) {
+        this.model = model;
+        this.maxRaysPerSource = Math.max(16, maxRaysPerSource);
+    }
+
+    /**
+     * Доля радиации источника id с центром (sx, sy, sz), дошедшая до блока (bx, by, bz) мира world.
+     * Вызывается из потока, владеющего блоком игрока (см. ShieldingModel.trace).
+     * Если луч вышел неполным, он не кэшируется, а в complete[0] пишется false.
+     */
+    public double transmission(World world, int id, double sx, double sy, double sz, int bx, int by, int bz,
+                               boolean[] complete) {
+        long key = BlockSourceIndex.blockKey(bx, by, bz);
+        synchronized (this) {
+            LongIntTable table = rays.get(id);
+            int bits = table != null ? table.get(key) : LongIntTable.EMPTY;
+            if (bits != LongIntTable.EMPTY) {
+                hits.increment();
+                return Float.intBitsToFloat(bits);
+            }
+        }
+
+        misses.increment();
+        boolean[] ray = {true};
+        float value = (float) model.trace(world, sx, sy, sz, bx, by, bz, ray);
+        if (!ray[0]) {
+            complete[0] = false;
+            return value;
+        }
+        synchronized (this) {
+            LongIntTable table = rays.computeIfAbsent(id, k -> new LongIntTable());
+            if (table.size >= maxRaysPerSource) {
+                table = new LongIntTable();
+                rays.put(id, table);
+            }
+            table.put(key, Float.floatToRawIntBits(value));
+        }
+        return value;
+    }
+
+    /**
+     * Блок (bx, by, bz) изменился: сбросить лучи источника id с центром (sx, sy, sz), проходящие через него.
+     * Возвращает число сброшенных лучей.
+     */
+    public synchronized int invalidateBlock(int id, double sx, double sy, double sz, int bx, int by, int bz) {
+        return invalidateBox(id, sx, sy, sz, bx, by, bz, bx, by, bz);
+    }
+
+    /**
+     * Изменились блоки параллелепипеда [min, max] (например, загрузился столб чанка):
+     * сбросить лучи источника id, проходящие через него. Возвращает число сброшенных лучей.
+     */
+    public synchronized int invalidateBox(int id, double sx, double sy, double sz,
+                                          int minX, int minY, int minZ, int maxX, int maxY, int maxZ) {
+        LongIntTable table = rays.get(id);
+        if (table == null) return 0;
+
+        long[] crossed = new long[table.size];
+        int count = 0;
+        for (int i = 0; i < table.keys.length; i++) {
+            if (table.values[i] == LongIntTable.EMPTY) continue;
+            long key = table.keys[i];
+            if (ShieldingModel.rayCrossesBox(sx, sy, sz,
+                    BlockSourceIndex.keyX(key), BlockSourceIndex.keyY(key), BlockSourceIndex.keyZ(key),
+                    minX, minY, minZ, maxX, maxY, maxZ)) {
+                crossed[count++] = key;
+            }
+        }
+        for (int i = 0; i < count; i++) {
+            table.remove(crossed[i]);
+        }
+        return count;
+    }
+
+    /**
+     * Забыть все лучи источника (удаление или перенос источника).
+     */
+    public synchronized void invalidateSource(int id) {
+        rays.remove(id);
+    }
+
+    public synchronized void clear() {
+        rays.clear();
+    }
+
+    public synchronized int size() {
+        int size = 0;
+        for (LongIntTable table : rays.values()) {
+            size += table.size;
+        }
+        return size;
+    }
+
+    public long getHits() {
+        return hits.sum();
+    }
+
+    public long getMisses() {
+        return misses.sum();
+    }
+}
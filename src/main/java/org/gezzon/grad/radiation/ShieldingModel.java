@@ -0,0 +1,192 @@
+package org.gezzon.grad.radiation;
+
+import org.bukkit.Bukkit;
+import org.bukkit.Material;
+import org.bukkit.World;
+
+import java.util.Map;
+
+/**
+ * Неизменяемая скомпилированная модель экранирования радиации блоками.
+ * Коэффициенты ослабления лежат в массиве по Material.ordinal(), поэтому проверка блока
+ * на пути луча — одно чтение типа и одно чтение массива.
+ *
+ * Доля радиации, дошедшая от источника до блока игрока, равна e^(-сумма μ·l),
+ * где μ — коэффициент материала (на блок), l — длина пути луча внутри блока.
+ * Луч идёт от центра блока источника к центру блока игрока методом обхода вокселей
+ * (Amanatides–Woo); сами эти два блока не учитываются.
+ *
+ * Блоки читаются через Bukkit API, поэтому trace вызывается только из потока, владеющего
+ * областью (основной поток на Paper, поток региона на Folia). Блоки незагруженных чанков
+ * и чанков чужого региона считаются воздухом; такой луч помечается неполным и не кэшируется.
+ */
+public final class ShieldingModel {
+
+    private static final ShieldingModel DISABLED = new ShieldingModel(new float[0]);
+
+    // При такой оптической толщине до игрока доходит меньше 10^-9 — дальше луч не продолжаем
+    private static final double MAX_OPTICAL_DEPTH = 20.0;
+
+    private final float[] attenuation; // Индекс = Material.ordinal(), 0 — блок не ослабляет
+
+    private ShieldingModel(float[] attenuation) {
+        this.attenuation = attenuation;
+    }
+
+    public static ShieldingModel disabled() {
+        return DISABLED;
+    }
+
+    /**
+     * Собрать модель. materials: имя материала или шаблон с * (например, *_concrete) -> коэффициент;
+     * точное имя важнее шаблона. solidDefault — коэффициент для остальных твёрдых блоков.
+     */
+    public static ShieldingModel compile(Map<String, Double> materials, double solidDefault) {
+        Material[] all = Material.values();
+        float[] attenuation = new float[all.length];
+        for (Material material : all) {
+            if (material.isLegacy()) continue;
+            Double exact = materials.get(material.name());
+            double value;
+            if (exact != null) {
+                value = exact;
+            } else {
+                Double pattern = matchPattern(materials, material.name());
+                value = pattern != null ? pattern : material.isSolid() ? solidDefault : 0.0;
+            }
+            attenuation[material.ordinal()] = (float) Math.max(0.0, value);
+        }
+        return new ShieldingModel(attenuation);
+    }
+
+    private static Double matchPattern(Map<String, Double> materials, String name) {
+        for (Map.Entry<String, Double> entry : materials.entrySet()) {
+            String key = entry.getKey();
+            int star = key.indexOf('*');
+            if (star < 0) continue;
+            if (name.startsWith(key.substring(0, star)) && name.endsWith(key.substring(star + 1))
+                    && name.length() >= key.length() - 1) {
+                return entry.getValue();
+            }
+        }
+        return null;
+    }
+
+    public boolean isEnabled() {
+        return attenuation.length > 0;
+    }
+
+    public double attenuation(Material material) {
+        int ordinal = material.ordinal();
+        return ordinal < attenuation.length ? attenuation[ordinal] : 0.0;
+    }
+
+    /**
+     * Доля радиации источника из точки (sx, sy, sz), дошедшая до блока (tx, ty, tz), от 0 до 1.
+     * Если луч прошёл через незагруженный чанк или чанк чужого региона, в complete[0] пишется false.
+     */
+    public double trace(World world, double sx, double sy, double sz, int tx, int ty, int tz, boolean[] complete) {
+        int x = (int) Math.floor(sx);
+        int y = (int) Math.floor(sy);
+        int z = (int) Math.floor(sz);
+        if (!isEnabled() || (x == tx && y == ty && z == tz)) return 1.0;
+
+        // Луч от центра блока источника к центру блока игрока, параметр t от 0 до 1
+        double ox = x + 0.5;
+        double oy = y + 0.5;
+        double oz = z + 0.5;
+        double dx = tx + 0.5 - ox;
+        double dy = ty + 0.5 - oy;
+        double dz = tz + 0.5 - oz;
+        double length = Math.sqrt(dx * dx + dy * dy + dz * dz);
+
+        int stepX = dx > 0 ? 1 : dx < 0 ? -1 : 0;
+        int stepY = dy > 0 ? 1 : dy < 0 ? -1 : 0;
+        int stepZ = dz > 0 ? 1 : dz < 0 ? -1 : 0;
+        // Из центра блока до первой границы всегда половина блока
+        double deltaX = stepX != 0 ? 1.0 / Math.abs(dx) : Double.POSITIVE_INFINITY;
+        double deltaY = stepY != 0 ? 1.0 / Math.abs(dy) : Double.POSITIVE_INFINITY;
+        double deltaZ = stepZ != 0 ? 1.0 / Math.abs(dz) : Double.POSITIVE_INFINITY;
+        double nextX = deltaX * 0.5;
+        double nextY = deltaY * 0.5;
+        double nextZ = deltaZ * 0.5;
+
+        int minY = world.getMinHeight();
+        int maxY = world.getMaxHeight();
+        int chunkX = Integer.MIN_VALUE;
+        int chunkZ = Integer.MIN_VALUE;
+        boolean readable = false;
+
+        double optical = 0.0;
+        double t = 0.0;
+        while (true) {
+            double exit = Math.min(nextX, Math.min(nextY, nextZ));
+            if (exit >= 1.0) break; // Дошли до блока игрока
+            if (exit > t) {
+                // Шаг сделан в прошлой итерации — блок (x, y, z) уже не блок источника
+                if (t > 0.0 && y >= minY && y < maxY) {
+                    if ((x >> 4) != chunkX || (z >> 4) != chunkZ) {
+                        chunkX = x >> 4;
+                        chunkZ = z >> 4;
+                        readable = world.isChunkLoaded(chunkX, chunkZ)
+                                && Bukkit.isOwnedByCurrentRegion(world, chunkX, chunkZ);
+                    }
+                    if (readable) {
+                        optical += attenuation[world.getType(x, y, z).ordinal()] * (exit - t) * length;
+                        if (optical >= MAX_OPTICAL_DEPTH) return 0.0;
+                    } else {
+                        complete[0] = false;
+                    }
+                }
+                t = exit;
+            }
+            if (exit == nextX) {
+                x += stepX;
+                nextX += deltaX;
+            } else if (exit == nextY) {
+                y += stepY;
+                nextY += deltaY;
+            } else {
+                z += stepZ;
+                nextZ += deltaZ;
+            }
+        }
+        return Math.exp(-optical);
+    }
+
+    /**
+     * Пересекает ли отрезок от центра блока источника (sx, sy, sz) до центра блока (tx, ty, tz) блок (bx, by, bz).
+     * Нужен, чтобы при изменении блока сбросить только лучи, которые через него проходят.
+     */
+    public static boolean rayCrossesBlock(double sx, double sy, double sz, int tx, int ty, int tz, int bx, int by, int bz) {
+        return rayCrossesBox(sx, sy, sz, tx, ty, tz, bx, by, bz, bx, by, bz);
+    }
+
+    /**
+     * То же для параллелепипеда блоков [min, max] включительно (например, столба загруженного чанка).
+     */
+    public static boolean rayCrossesBox(double sx, double sy, double sz, int tx, int ty, int tz,
+                                        int minX, int minY, int minZ, int maxX, int maxY, int maxZ) {
+        double ox = Math.floor(sx) + 0.5;
+        double oy = Math.floor(sy) + 0.5;
+        double oz = Math.floor(sz) + 0.5;
+        double[] range = {0.0, 1.0};
+        return clip(ox, tx + 0.5 - ox, minX, maxX + 1, range)
+                && clip(oy, ty + 0.5 - oy, minY, maxY + 1, range)
+                && clip(oz, tz + 0.5 - oz, minZ, maxZ + 1, range);
+    }
+
+    /**
+     * Сужение отрезка параметров range до части, где координата origin + t·delta лежит в [min, max].
+     */
+    private static boolean clip(double origin, double delta, int min, int max, double[] range) {
+        if (delta == 0.0) {
+            return origin >= min && origin <= max;
+        }
+        double t1 = (min - origin) / delta;
+        double t2 = (max - origin) / delta;
+        range[0] = Math.max(range[0], Math.min(t1, t2));
+        range[1] = Math.min(range[1], Math.max(t1, t2));
+        return range[0] <= range[1];
+    }
+}
@@ -0,0 +1,191 @@
+package org.gezzon.grad.radiation;
+
+import org.bukkit.World;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Учёт загруженных чанков под сферами источников.
+ * Для каждого источника хранится, сколько чанков, которые пересекает круг его сферы,
+ * сейчас загружено. Источник активен (участвует в расчёте), пока это число больше нуля:
+ * радиация из незагруженной области может дойти до игрока только через загруженный чанк.
+ *
+ * Обновляется событиями загрузки и выгрузки чанков, поэтому размер активного набора
+ * следует за загруженной частью мира, а не за общим числом источников.
+ * Методы синхронизированы: на Folia события чанков приходят из потоков разных регионов.
+ */
+public class SourceActivation {
+
+    // Мир -> ключ чанка -> ID источников, чья сфера пересекает колонну чанка
+    private final Map<String, Map<Long, WorldSourceStore.IdList>> cells = new HashMap<>();
+    private final Map<Integer, Registration> registrations = new HashMap<>();
+    private volatile int activeCount; // Пишется под блокировкой, читается без неё (метрики)
+
+    /**
+     * Зарегистрировать источник и сосчитать загруженные чанки под ним.
+     * Возвращает true, если источник сразу активен.
+     */
+    public synchronized boolean register(int id, World world, double x, double z, double radius) {
+        unregister(id);
+        Registration registration = new Registration(world.getName(), x, z, radius);
+        Map<Long, WorldSourceStore.IdList> worldCells = cells.computeIfAbsent(registration.world, name -> new HashMap<>());
+        WorldSourceStore.forEachCell(x, z, radius, key -> {
+            worldCells.computeIfAbsent(key, k -> new WorldSourceStore.IdList()).add(id);
+            if (world.isChunkLoaded((int) (key >> 32), (int) key)) {
+                registration.loadedChunks++;
+            }
+        });
+        registrations.put(id, registration);
+        if (registration.loadedChunks > 0) {
+            activeCount++;
+        }
+        return registration.loadedChunks > 0;
+    }
+
+    /**
+     * Снять источник с учёта. Возвращает true, если он был активен.
+     */
+    public synchronized boolean unregister(int id) {
+        Registration registration = registrations.remove(id);
+        if (registration == null) return false;
+
+        Map<Long, WorldSourceStore.IdList> worldCells = cells.get(registration.world);
+        if (worldCells != null) {
+            WorldSourceStore.forEachCell(registration.x, registration.z, registration.radius, key -> {
+                WorldSourceStore.IdList list = worldCells.get(key);
+                if (list != null && list.remove(id) && list.size == 0) {
+                    worldCells.remove(key);
+                }
+            });
+            if (worldCells.isEmpty()) {
+                cells.remove(registration.world);
+            }
+        }
+        if (registration.loadedChunks > 0) {
+            activeCount--;
+            return true;
+        }
+        return false;
+    }
+
+    /**
+     * Радиус, с которым источник зарегистрирован (0, если его нет).
+     */
+    public synchronized double getRadius(int id) {
+        Registration registration = registrations.get(id);
+        return registration != null ? registration.radius : 0.0;
+    }
+
+    /**
+     * Чанк загружен. Возвращает ID источников, которые стали активными.
+     */
+    public synchronized List<Integer> chunkLoaded(String world, int cx, int cz) {
+        List<Integer> activated = new ArrayList<>();
+        forEachInChunk(world, cx, cz, (id, registration) -> {
+            if (registration.loadedChunks++ == 0) {
+                activeCount++;
+                activated.add(id);
+            }
+        });
+        return activated;
+    }
+
+    /**
+     * Чанк выгружен. Возвращает ID источников, под которыми больше не осталось загруженных чанков.
+     */
+    public synchronized List<Integer> chunkUnloaded(String world, int cx, int cz) {
+        List<Integer> deactivated = new ArrayList<>();
+        forEachInChunk(world, cx, cz, (id, registration) -> {
+            if (registration.loadedChunks > 0 && --registration.loadedChunks == 0) {
+                activeCount--;
+                deactivated.add(id);
+            }
+        });
+        return deactivated;
+    }
+
+    /**
+     * ID источников, чья сфера пересекает колонну чанка (cx, cz).
+     */
+    public synchronized List<Integer> sourcesInChunk(String world, int cx, int cz) {
+        List<Integer> ids = new ArrayList<>();
+        forEachInChunk(world, cx, cz, (id, registration) -> ids.add(id));
+        return ids;
+    }
+
+    /**
+     * Снять с учёта все источники мира (при выгрузке мира).
+     */
+    public synchronized void clearWorld(String world) {
+        Iterator<Map.Entry<Integer, Registration>> iterator = registrations.entrySet().iterator();
+        while (iterator.hasNext()) {
+            Registration registration = iterator.next().getValue();
+            if (registration.world.equals(world)) {
+                if (registration.loadedChunks > 0) {
+                    activeCount--;
+                }
+                iterator.remove();
+            }
+        }
+        cells.remove(world);
+    }
+
+    /**
+     * ID всех активных источников.
+     */
+    public synchronized List<Integer> getActiveIds() {
+        List<Integer> ids = new ArrayList<>(activeCount);
+        for (Map.Entry<Integer, Registration> entry : registrations.entrySet()) {
+            if (entry.getValue().loadedChunks > 0) {
+                ids.add(entry.getKey());
+            }
+        }
+        return ids;
+    }
+
+    /**
+     * Количество активных источников.
+     */
+    public int getActiveCount() {
+        return activeCount;
+    }
+
+    private void forEachInChunk(String world, int cx, int cz, ChunkAction action) {
+        Map<Long, WorldSourceStore.IdList> worldCells = cells.get(world);
+        if (worldCells == null) return;
+        WorldSourceStore.IdList list = worldCells.get(WorldSourceStore.chunkKey(cx, cz));
+        if (list == null) return;
+        for (int i = 0; i < list.size; i++) {
+            Registration registration = registrations.get(list.ids[i]);
+            if (registration != null) {
+                action.accept(list.ids[i], registration);
+            }
+        }
+    }
+
+    private interface ChunkAction {
+        void accept(int id, Registration registration);
+    }
+
+    /**
+     * Параметры, с которыми источник зарегистрирован, и число загруженных чанков под ним.
+     */
+    private static final class Registration {
+        final String world;
+        final double x;
+        final double z;
+        final double radius;
+        int loadedChunks;
+
+        Registration(String world, double x, double z, double radius) {
+            this.world = world;
+            this.x = x;
+            this.z = z;
+            this.radius = radius;
+        }
+    }
+}
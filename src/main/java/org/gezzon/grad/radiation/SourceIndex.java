@@ -0,0 +1,159 @@
+package org.gezzon.grad.radiation;
+
+import org.bukkit.Location;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.function.IntToDoubleFunction;
+
+/**
+ * Пространственный индекс источников радиации, разбитый по мирам.
+ * Для каждого мира держит компактное хранилище WorldSourceStore
+ * (параллельные массивы + сетка по чанкам), поэтому запрос по точке
+ * затрагивает только источники своего мира и своего чанка.
+ *
+ * Изменения источников выполняются в основном потоке, а чтение (расчёт радиации)
+ * идёт из рабочих потоков, поэтому доступ защищён ReadWriteLock.
+ */
+public class SourceIndex {
+
+    // Мир -> хранилище его источников
+    private final Map<String, WorldSourceStore> worlds = new HashMap<>();
+
+    private final ReadWriteLock lock = new ReentrantReadWriteLock();
+
+    /**
+     * Добавить источник в индекс.
+     */
+    public void add(RadiationSource source) {
+        Location center = source.getCenter();
+        if (center.getWorld() == null) return;
+
+        lock.writeLock().lock();
+        try {
+            worlds.computeIfAbsent(center.getWorld().getName(), WorldSourceStore::new)
+                    .add(source.getId(), center.getX(), center.getY(), center.getZ(),
+                            source.getRadius(), source.getIntensity(), source.getPower());
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Добавить много источников за одну блокировку записи (массовый импорт).
+     */
+    public void addAll(Collection<RadiationSource> sources) {
+        lock.writeLock().lock();
+        try {
+            for (RadiationSource source : sources) {
+                Location center = source.getCenter();
+                if (center.getWorld() == null) continue;
+                worlds.computeIfAbsent(center.getWorld().getName(), WorldSourceStore::new)
+                        .add(source.getId(), center.getX(), center.getY(), center.getZ(),
+                                source.getRadius(), source.getIntensity(), source.getPower());
+            }
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Удалить источник из индекса.
+     */
+    public void remove(RadiationSource source) {
+        Location center = source.getCenter();
+        if (center.getWorld() == null) return;
+
+        lock.writeLock().lock();
+        try {
+            WorldSourceStore store = worlds.get(center.getWorld().getName());
+            if (store != null && store.remove(source.getId()) && store.isEmpty()) {
+                worlds.remove(store.getWorldName());
+            }
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Полностью очистить индекс.
+     */
+    public void clear() {
+        lock.writeLock().lock();
+        try {
+            worlds.clear();
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Суммарная скорость накопления радиации в точке loc от всех источников её мира.
+     */
+    public double sumDoseRate(Location loc, IntToDoubleFunction baseAccumulation) {
+        if (loc.getWorld() == null) return 0.0;
+        return sumDoseRate(loc.getWorld().getName(), loc.getX(), loc.getY(), loc.getZ(), baseAccumulation);
+    }
+
+    /**
+     * Суммарная скорость накопления радиации в точке (x, y, z) мира worldName.
+     */
+    public double sumDoseRate(String worldName, double x, double y, double z, IntToDoubleFunction baseAccumulation) {
+        return sumDoseRate(worldName, x, y, z, baseAccumulation, null);
+    }
+
+    /**
+     * Суммарная скорость накопления в точке с учётом экранирования (transmission, null — без него).
+     */
+    public double sumDoseRate(String worldName, double x, double y, double z, IntToDoubleFunction baseAccumulation,
+                              WorldSourceStore.Transmission transmission) {
+        lock.readLock().lock();
+        try {
+            WorldSourceStore store = worlds.get(worldName);
+            if (store == null) return 0.0;
+            return store.sumDoseRate(x, y, z, baseAccumulation, transmission);
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * ID источников мира worldName, чья сфера содержит точку (x, y, z).
+     */
+    public List<Integer> getCovering(String worldName, double x, double y, double z) {
+        List<Integer> result = new ArrayList<>();
+        lock.readLock().lock();
+        try {
+            WorldSourceStore store = worlds.get(worldName);
+            if (store != null) {
+                store.forEachCovering(x, y, z, result::add);
+            }
+        } finally {
+            lock.readLock().unlock();
+        }
+        return result;
+    }
+
+    /**
+     * ID источников, центр которых находится не дальше distance от точки loc.
+     */
+    public List<Integer> getWithin(Location loc, double distance) {
+        List<Integer> result = new ArrayList<>();
+        if (loc.getWorld() == null) return result;
+        lock.readLock().lock();
+        try {
+            WorldSourceStore store = worlds.get(loc.getWorld().getName());
+            if (store != null) {
+                store.forEachWithin(loc.getX(), loc.getY(), loc.getZ(), distance, result::add);
+            }
+        } finally {
+            lock.readLock().unlock();
+        }
+        return result;
+    }
+}
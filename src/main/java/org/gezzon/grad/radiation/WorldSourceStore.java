@@ -0,0 +1,296 @@
+package org.gezzon.grad.radiation;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.function.IntConsumer;
+import java.util.function.IntToDoubleFunction;
+
+/**
+ * Компактное хранилище источников радиации одного мира (structure-of-arrays).
+ * Центр, радиус, квадрат радиуса, интенсивность и power лежат в параллельных
+ * примитивных массивах, поэтому горячий цикл тика идёт по плоским double[]
+ * без разыменования Location и без проверки мира.
+ *
+ * ID -> слот хранится в массиве slotById; при удалении последний слот
+ * переносится на место удалённого (swap-remove), ID остаются стабильными.
+ * Сетка по чанкам (колонны 16x16) хранит ID источников, чья сфера достаёт до чанка.
+ */
+public class WorldSourceStore {
+
+    private static final int INITIAL_CAPACITY = 16;
+
+    private final String worldName;
+
+    private int size;
+    private int[] ids = new int[INITIAL_CAPACITY];
+    private double[] x = new double[INITIAL_CAPACITY];
+    private double[] y = new double[INITIAL_CAPACITY];
+    private double[] z = new double[INITIAL_CAPACITY];
+    private double[] radius = new double[INITIAL_CAPACITY];
+    private double[] radiusSquared = new double[INITIAL_CAPACITY];
+    private int[] intensity = new int[INITIAL_CAPACITY];
+    private double[] power = new double[INITIAL_CAPACITY];
+
+    // ID -> слот (-1, если источника в этом мире нет)
+    private int[] slotById = new int[INITIAL_CAPACITY];
+
+    // Ключ чанка -> ID источников, чья сфера пересекает колонну чанка
+    private final Map<Long, IdList> grid = new HashMap<>();
+
+    public WorldSourceStore(String worldName) {
+        this.worldName = worldName;
+        Arrays.fill(slotById, -1);
+    }
+
+    public String getWorldName() {
+        return worldName;
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public boolean isEmpty() {
+        return size == 0;
+    }
+
+    public boolean contains(int id) {
+        return id >= 0 && id < slotById.length && slotById[id] >= 0;
+    }
+
+    /**
+     * Добавить источник. Если источник с таким ID уже есть, он будет перезаписан.
+     */
+    public void add(int id, double cx, double cy, double cz, double r, int level, double pow) {
+        if (contains(id)) {
+            remove(id);
+        }
+        ensureCapacity(size + 1);
+        ensureIdCapacity(id);
+
+        int slot = size++;
+        ids[slot] = id;
+        x[slot] = cx;
+        y[slot] = cy;
+        z[slot] = cz;
+        radius[slot] = r;
+        radiusSquared[slot] = r * r;
+        intensity[slot] = level;
+        power[slot] = pow;
+        slotById[id] = slot;
+
+        forEachCell(cx, cz, r, key -> grid.computeIfAbsent(key, k -> new IdList()).add(id));
+    }
+
+    /**
+     * Удалить источник по ID (swap-remove).
+     */
+    public boolean remove(int id) {
+        if (!contains(id)) return false;
+        int slot = slotById[id];
+
+        forEachCell(x[slot], z[slot], radius[slot], key -> {
+            IdList list = grid.get(key);
+            if (list != null && list.remove(id) && list.size == 0) {
+                grid.remove(key);
+            }
+        });
+
+        int last = --size;
+        if (slot != last) {
+            ids[slot] = ids[last];
+            x[slot] = x[last];
+            y[slot] = y[last];
+            z[slot] = z[last];
+            radius[slot] = radius[last];
+            radiusSquared[slot] = radiusSquared[last];
+            intensity[slot] = intensity[last];
+            power[slot] = power[last];
+            slotById[ids[slot]] = slot;
+        }
+        slotById[id] = -1;
+        return true;
+    }
+
+    /**
+     * Суммарная скорость накопления радиации в точке от всех источников мира.
+     * baseAccumulation: уровень источника -> base_accumulation (0, если уровня нет).
+     */
+    public double sumDoseRate(double px, double py, double pz, IntToDoubleFunction baseAccumulation) {
+        return sumDoseRate(px, py, pz, baseAccumulation, null);
+    }
+
+    /**
+     * То же с учётом экранирования: вклад каждого источника умножается на transmission
+     * (null — без экранирования). transmission вызывается только для источников, достающих до точки.
+     */
+    public double sumDoseRate(double px, double py, double pz, IntToDoubleFunction baseAccumulation,
+                              Transmission transmission) {
+        IdList cell = grid.get(chunkKey(floorChunk(px), floorChunk(pz)));
+        if (cell == null) return 0.0;
+
+        double total = 0.0;
+        int[] cellIds = cell.ids;
+        for (int i = 0, n = cell.size; i < n; i++) {
+            int slot = slotById[cellIds[i]];
+            double dx = x[slot] - px;
+            double dy = y[slot] - py;
+            double dz = z[slot] - pz;
+            double distanceSquared = dx * dx + dy * dy + dz * dz;
+            double rs = radiusSquared[slot];
+            if (distanceSquared <= rs) {
+                double factor = 1.0 - Math.sqrt(distanceSquared) / radius[slot];
+                if (factor > 0) {
+                    if (transmission != null) {
+                        factor *= transmission.between(cellIds[i], x[slot], y[slot], z[slot]);
+                    }
+                    total += baseAccumulation.applyAsDouble(intensity[slot]) * factor;
+                }
+            }
+        }
+        return total;
+    }
+
+    /**
+     * Передать в action ID всех источников, центр которых не дальше distance от точки.
+     * Просматриваются только ячейки, покрывающие квадрат запроса.
+     */
+    public void forEachWithin(double px, double py, double pz, double distance, IntConsumer action) {
+        double distanceSquared = distance * distance;
+        int minCX = floorChunk(px - distance);
+        int maxCX = floorChunk(px + distance);
+        int minCZ = floorChunk(pz - distance);
+        int maxCZ = floorChunk(pz + distance);
+        for (int cx = minCX; cx <= maxCX; cx++) {
+            for (int cz = minCZ; cz <= maxCZ; cz++) {
+                IdList cell = grid.get(chunkKey(cx, cz));
+                if (cell == null) continue;
+                for (int i = 0; i < cell.size; i++) {
+                    int id = cell.ids[i];
+                    int slot = slotById[id];
+                    // Центр источника лежит ровно в одном чанке — в нём и засчитываем, чтобы не было дублей
+                    if (floorChunk(x[slot]) != cx || floorChunk(z[slot]) != cz) continue;
+                    double dx = x[slot] - px;
+                    double dy = y[slot] - py;
+                    double dz = z[slot] - pz;
+                    if (dx * dx + dy * dy + dz * dz <= distanceSquared) {
+                        action.accept(id);
+                    }
+                }
+            }
+        }
+    }
+
+    /**
+     * Передать в action ID источников, чья сфера содержит точку (px, py, pz).
+     */
+    public void forEachCovering(double px, double py, double pz, IntConsumer action) {
+        IdList cell = grid.get(chunkKey(floorChunk(px), floorChunk(pz)));
+        if (cell == null) return;
+        for (int i = 0; i < cell.size; i++) {
+            int slot = slotById[cell.ids[i]];
+            double dx = x[slot] - px;
+            double dy = y[slot] - py;
+            double dz = z[slot] - pz;
+            if (dx * dx + dy * dy + dz * dz <= radiusSquared[slot]) {
+                action.accept(cell.ids[i]);
+            }
+        }
+    }
+
+    private void ensureCapacity(int required) {
+        if (required <= ids.length) return;
+        int capacity = Math.max(required, ids.length + (ids.length >> 1));
+        ids = Arrays.copyOf(ids, capacity);
+        x = Arrays.copyOf(x, capacity);
+        y = Arrays.copyOf(y, capacity);
+        z = Arrays.copyOf(z, capacity);
+        radius = Arrays.copyOf(radius, capacity);
+        radiusSquared = Arrays.copyOf(radiusSquared, capacity);
+        intensity = Arrays.copyOf(intensity, capacity);
+        power = Arrays.copyOf(power, capacity);
+    }
+
+    private void ensureIdCapacity(int id) {
+        if (id < slotById.length) return;
+        int oldLength = slotById.length;
+        slotById = Arrays.copyOf(slotById, Math.max(id + 1, oldLength + (oldLength >> 1)));
+        Arrays.fill(slotById, oldLength, slotById.length, -1);
+    }
+
+    /**
+     * Обойти ключи всех чанков, которые пересекает круг сферы (cx, cz, r) в плоскости XZ.
+     */
+    static void forEachCell(double cx, double cz, double r, LongAction action) {
+        int minCX = floorChunk(cx - r);
+        int maxCX = floorChunk(cx + r);
+        int minCZ = floorChunk(cz - r);
+        int maxCZ = floorChunk(cz + r);
+        for (int chunkX = minCX; chunkX <= maxCX; chunkX++) {
+            for (int chunkZ = minCZ; chunkZ <= maxCZ; chunkZ++) {
+                // Пропускаем угловые чанки, до которых круг сферы не дотягивается
+                if (circleIntersectsChunk(cx, cz, r, chunkX, chunkZ)) {
+                    action.accept(chunkKey(chunkX, chunkZ));
+                }
+            }
+        }
+    }
+
+    static int floorChunk(double coordinate) {
+        return ((int) Math.floor(coordinate)) >> 4;
+    }
+
+    static long chunkKey(int cx, int cz) {
+        return ((long) cx << 32) | (cz & 0xFFFFFFFFL);
+    }
+
+    /**
+     * Пересекает ли круг (x, z, r) квадрат чанка (cx, cz).
+     */
+    private static boolean circleIntersectsChunk(double x, double z, double r, int cx, int cz) {
+        double minX = cx << 4;
+        double minZ = cz << 4;
+        double nearestX = Math.max(minX, Math.min(x, minX + 16));
+        double nearestZ = Math.max(minZ, Math.min(z, minZ + 16));
+        double dx = x - nearestX;
+        double dz = z - nearestZ;
+        return dx * dx + dz * dz <= r * r;
+    }
+
+    /**
+     * Доля радиации источника id с центром (sx, sy, sz), дошедшая до точки запроса (от 0 до 1).
+     */
+    public interface Transmission {
+        double between(int id, double sx, double sy, double sz);
+    }
+
+    interface LongAction {
+        void accept(long value);
+    }
+
+    /**
+     * Растущий массив ID для одной ячейки сетки.
+     */
+    static final class IdList {
+        int[] ids = new int[4];
+        int size;
+
+        void add(int id) {
+            if (size == ids.length) {
+                ids = Arrays.copyOf(ids, size << 1);
+            }
+            ids[size++] = id;
+        }
+
+        boolean remove(int id) {
+            for (int i = 0; i < size; i++) {
+                if (ids[i] == id) {
+                    ids[i] = ids[--size];
+                    return true;
+                }
+            }
+            return false;
+        }
+    }
+}
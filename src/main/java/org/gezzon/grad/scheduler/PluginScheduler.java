@@ -0,0 +1,149 @@
+package org.gezzon.grad.scheduler;
+
+import org.bukkit.Bukkit;
+import org.bukkit.Location;
+import org.bukkit.entity.Entity;
+import org.bukkit.plugin.Plugin;
+
+import java.util.concurrent.TimeUnit;
+import java.util.function.BooleanSupplier;
+
+/**
+ * Планировщик задач плагина, работающий и на Paper, и на Folia.
+ * На Paper задачи идут через обычный BukkitScheduler (основной поток).
+ * На Folia BukkitScheduler недоступен, поэтому:
+ *  - глобальные операции (сохранения, сброс кэшей) — через глобальный региональный планировщик;
+ *  - операции с игроком — через планировщик самой сущности (поток её региона);
+ *  - операции с блоками и сущностями вокруг точки — через планировщик региона этой точки;
+ *  - фоновые операции — через асинхронный планировщик.
+ */
+public class PluginScheduler {
+
+    private static final boolean FOLIA = detectFolia();
+
+    private final Plugin plugin;
+
+    public PluginScheduler(Plugin plugin) {
+        this.plugin = plugin;
+    }
+
+    /**
+     * Запущен ли сервер на Folia (региональная многопоточность).
+     */
+    public static boolean isFolia() {
+        return FOLIA;
+    }
+
+    /**
+     * Выполнить задачу в глобальном контексте (основной поток на Paper) как можно скорее.
+     */
+    public void runGlobal(Runnable task) {
+        if (FOLIA) {
+            Bukkit.getGlobalRegionScheduler().execute(plugin, task);
+        } else {
+            Bukkit.getScheduler().runTask(plugin, task);
+        }
+    }
+
+    /**
+     * Выполнить задачу в глобальном контексте через delayTicks тиков.
+     */
+    public void runGlobalLater(Runnable task, long delayTicks) {
+        long delay = Math.max(1L, delayTicks);
+        if (FOLIA) {
+            Bukkit.getGlobalRegionScheduler().runDelayed(plugin, scheduled -> task.run(), delay);
+        } else {
+            Bukkit.getScheduler().runTaskLater(plugin, task, delay);
+        }
+    }
+
+    /**
+     * Повторять задачу в глобальном контексте.
+     */
+    public void runGlobalTimer(Runnable task, long delayTicks, long periodTicks) {
+        long delay = Math.max(1L, delayTicks);
+        long period = Math.max(1L, periodTicks);
+        if (FOLIA) {
+            Bukkit.getGlobalRegionScheduler().runAtFixedRate(plugin, scheduled -> task.run(), delay, period);
+        } else {
+            Bukkit.getScheduler().runTaskTimer(plugin, task, delay, period);
+        }
+    }
+
+    /**
+     * Повторять задачу в фоновом потоке (период в тиках, 1 тик = 50 мс).
+     */
+    public void runAsyncTimer(Runnable task, long delayTicks, long periodTicks) {
+        long delay = Math.max(1L, delayTicks);
+        long period = Math.max(1L, periodTicks);
+        if (FOLIA) {
+            Bukkit.getAsyncScheduler().runAtFixedRate(plugin, scheduled -> task.run(), delay * 50L, period * 50L, TimeUnit.MILLISECONDS);
+        } else {
+            Bukkit.getScheduler().runTaskTimerAsynchronously(plugin, task, delay, period);
+        }
+    }
+
+    /**
+     * Выполнить задачу в потоке региона, которому принадлежит location (основной поток на Paper),
+     * в ближайшем тике.
+     */
+    public void runAtLocation(Location location, Runnable task) {
+        if (FOLIA) {
+            Bukkit.getRegionScheduler().execute(plugin, location, task);
+        } else {
+            Bukkit.getScheduler().runTask(plugin, task);
+        }
+    }
+
+    /**
+     * Выполнить задачу в потоке, владеющем сущностью (основной поток на Paper).
+     * Планировщик сущности есть и в Paper, поэтому ветвление не нужно.
+     * Возвращает false, если сущность уже удалена и задача не будет выполнена.
+     */
+    public boolean runForEntity(Entity entity, Runnable task) {
+        return entity.getScheduler().execute(plugin, task, null, 1L);
+    }
+
+    /**
+     * Повторять задачу в потоке, владеющем сущностью, пока сущность существует.
+     * Задача автоматически прекращается, когда игрок выходит или сущность удаляется.
+     */
+    public void runForEntityTimer(Entity entity, Runnable task, long delayTicks, long periodTicks) {
+        entity.getScheduler().runAtFixedRate(plugin, scheduled -> task.run(), null,
+                Math.max(1L, delayTicks), Math.max(1L, periodTicks));
+    }
+
+    /**
+     * Повторять задачу в потоке, владеющем сущностью, пока она возвращает true
+     * (или пока сущность существует).
+     */
+    public void runForEntityWhile(Entity entity, BooleanSupplier task, long delayTicks, long periodTicks) {
+        entity.getScheduler().runAtFixedRate(plugin, scheduled -> {
+            if (!task.getAsBoolean()) {
+                scheduled.cancel();
+            }
+        }, null, Math.max(1L, delayTicks), Math.max(1L, periodTicks));
+    }
+
+    /**
+     * Отменить все задачи плагина (при выключении).
+     * Задачи планировщиков сущностей на Folia отменяются сервером вместе с плагином.
+     */
+    public void cancelAll() {
+        if (FOLIA) {
+            Bukkit.getGlobalRegionScheduler().cancelTasks(plugin);
+            Bukkit.getAsyncScheduler().cancelTasks(plugin);
+        } else {
+            Bukkit.getScheduler().cancelTasks(plugin);
+        }
+    }
+
+    private static boolean detectFolia() {
+        try {
+            Class.forName("io.papermc.paper.threadedregions.RegionizedServer");
+            return true;
+        } catch (ClassNotFoundException e) {
+            return false;
+        }
+    }
+}
@@ -0,0 +1,341 @@
+package org.gezzon.grad.storage;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.logging.Logger;
+import java.util.zip.CRC32;
+
+/**
+ * Бинарное хранилище источников: компактный снимок + журнал изменений (append-only).
+ *
+ * Снимок (radiation-sources.bin): магическое число, версия, таблица имён миров
+ * и записи фиксированного размера без упаковки в Number.
+ * Журнал (radiation-sources.journal): пакеты [длина][CRC32][операции], каждый пакет —
+ * изменения одного сохранения. При старте снимок читается, журнал проигрывается
+ * поверх него; повреждённый хвост журнала (обрыв записи) отбрасывается.
+ *
+ * Сохранение дописывает в журнал только изменённые источники, поэтому его цена
+ * зависит от числа изменений, а не от общего числа источников. Когда журнал
+ * разрастается больше порога, он сворачивается в новый снимок в том же фоновом потоке.
+ */
+public class BinarySourceStorage implements SourceStorage {
+
+    private static final int SNAPSHOT_MAGIC = 0x47524144; // "GRAD"
+    private static final int SNAPSHOT_VERSION = 1;
+
+    private static final byte OP_UPSERT = 1;
+    private static final byte OP_DELETE = 2;
+
+    private final File snapshotFile;
+    private final File journalFile;
+    private final int compactThreshold; // Операций в журнале, после которых он сворачивается в снимок
+    private final Logger logger;
+
+    private int journalOperations; // Операций в журнале с момента последнего сворачивания
+
+    public BinarySourceStorage(File snapshotFile, File journalFile, int compactThreshold, Logger logger) {
+        this.snapshotFile = snapshotFile;
+        this.journalFile = journalFile;
+        this.compactThreshold = Math.max(1, compactThreshold);
+        this.logger = logger;
+    }
+
+    /**
+     * Есть ли на диске данные этого хранилища.
+     */
+    public boolean exists() {
+        return snapshotFile.exists() || journalFile.exists();
+    }
+
+    /**
+     * Однократная миграция из radiation-sources.yml: если бинарных файлов ещё нет,
+     * а YAML-файл есть, его содержимое записывается в снимок, а YAML переименовывается
+     * в *.migrated. Возвращает число перенесённых источников или -1, если миграция не нужна.
+     */
+    public int migrateFrom(YamlSourceStorage yaml) throws IOException {
+        if (exists() || !yaml.getFile().exists()) {
+            return -1;
+        }
+        List<SourceRecord> records = yaml.load();
+        writeSnapshot(records);
+        retire(yaml.getFile());
+        return records.size();
+    }
+
+    /**
+     * Обратный перенос при возврате на storage.engine: yaml. Если radiation-sources.yml нет,
+     * а бинарные файлы есть, источники записываются в YAML, а снимок и журнал переименовываются
+     * в *.migrated — иначе следующий переход на binary поднял бы устаревший снимок.
+     * Возвращает число перенесённых источников или -1, если перенос не нужен.
+     */
+    public int migrateTo(YamlSourceStorage yaml) throws IOException {
+        if (!exists() || yaml.getFile().exists()) {
+            return -1;
+        }
+        List<SourceRecord> records = load();
+        yaml.save(records);
+        retire(snapshotFile);
+        retire(journalFile);
+        return records.size();
+    }
+
+    /**
+     * Переименовать перенесённый файл в *.migrated (прежний *.migrated заменяется).
+     */
+    private void retire(File file) {
+        if (!file.exists()) return;
+        try {
+            Files.move(file.toPath(), file.toPath().resolveSibling(file.getName() + ".migrated"),
+                    StandardCopyOption.REPLACE_EXISTING);
+        } catch (IOException e) {
+            logger.warning("Не удалось переименовать " + file.getName() + " после миграции: " + e.getMessage());
+        }
+    }
+
+    @Override
+    public boolean isIncremental() {
+        return true;
+    }
+
+    @Override
+    public List<SourceRecord> load() throws IOException {
+        Map<Integer, SourceRecord> records = new LinkedHashMap<>();
+        if (snapshotFile.exists()) {
+            for (SourceRecord record : readSnapshot()) {
+                records.put(record.id(), record);
+            }
+        }
+        journalOperations = replayJournal(records);
+        return new ArrayList<>(records.values());
+    }
+
+    @Override
+    public void save(SourceChanges changes) throws IOException {
+        if (changes.full()) {
+            // Полный список — сразу пишем новый снимок и обнуляем журнал
+            writeSnapshot(changes.upserts());
+            truncateJournal();
+            return;
+        }
+        if (changes.isEmpty()) {
+            return;
+        }
+
+        ByteArrayOutputStream payload = new ByteArrayOutputStream();
+        DataOutputStream out = new DataOutputStream(payload);
+        for (SourceRecord record : changes.upserts()) {
+            out.writeByte(OP_UPSERT);
+            writeRecord(out, record);
+            out.writeUTF(record.world());
+        }
+        for (int id : changes.deletedIds()) {
+            out.writeByte(OP_DELETE);
+            out.writeInt(id);
+        }
+        out.flush();
+        appendBatch(payload.toByteArray());
+        journalOperations += changes.upserts().size() + changes.deletedIds().size();
+
+        if (journalOperations >= compactThreshold) {
+            compact();
+        }
+    }
+
+    /**
+     * Свернуть журнал в новый снимок. Если сервер упадёт между записью снимка
+     * и очисткой журнала, повторное проигрывание журнала ничего не испортит:
+     * операции идемпотентны.
+     */
+    public void compact() throws IOException {
+        List<SourceRecord> records = load();
+        writeSnapshot(records);
+        truncateJournal();
+        logger.info("Журнал источников радиации свёрнут в снимок: " + records.size() + " источников.");
+    }
+
+    private List<SourceRecord> readSnapshot() throws IOException {
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(Files.newInputStream(snapshotFile.toPath()), 1 << 16))) {
+            if (in.readInt() != SNAPSHOT_MAGIC) {
+                throw new IOException("Файл " + snapshotFile.getName() + " не является снимком источников радиации");
+            }
+            int version = in.readInt();
+            if (version != SNAPSHOT_VERSION) {
+                throw new IOException("Неподдерживаемая версия снимка " + snapshotFile.getName() + ": " + version);
+            }
+
+            String[] worlds = new String[in.readInt()];
+            for (int i = 0; i < worlds.length; i++) {
+                worlds[i] = in.readUTF();
+            }
+
+            int count = in.readInt();
+            List<SourceRecord> records = new ArrayList<>(count);
+            for (int i = 0; i < count; i++) {
+                int id = in.readInt();
+                int intensity = in.readInt();
+                double radius = in.readDouble();
+                double power = in.readDouble();
+                double x = in.readDouble();
+                double y = in.readDouble();
+                double z = in.readDouble();
+                String world = worlds[in.readInt()];
+                records.add(new SourceRecord(id, intensity, radius, power, world, x, y, z));
+            }
+            return records;
+        }
+    }
+
+    private void writeSnapshot(List<SourceRecord> records) throws IOException {
+        Map<String, Integer> worldIndex = new HashMap<>();
+        List<String> worlds = new ArrayList<>();
+        for (SourceRecord record : records) {
+            if (!worldIndex.containsKey(record.world())) {
+                worldIndex.put(record.world(), worlds.size());
+                worlds.add(record.world());
+            }
+        }
+
+        // Записи фиксированного размера: 2 int + 5 double + индекс мира
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream(16 + records.size() * 52);
+        DataOutputStream out = new DataOutputStream(new BufferedOutputStream(bytes, 1 << 16));
+        out.writeInt(SNAPSHOT_MAGIC);
+        out.writeInt(SNAPSHOT_VERSION);
+        out.writeInt(worlds.size());
+        for (String world : worlds) {
+            out.writeUTF(world);
+        }
+        out.writeInt(records.size());
+        for (SourceRecord record : records) {
+            writeRecord(out, record);
+            out.writeInt(worldIndex.get(record.world()));
+        }
+        out.flush();
+        YamlSourceStorage.writeAtomically(snapshotFile.toPath(), bytes.toByteArray());
+    }
+
+    /**
+     * Общая часть записи источника в снимке и журнале (без мира).
+     */
+    private static void writeRecord(DataOutputStream out, SourceRecord record) throws IOException {
+        out.writeInt(record.id());
+        out.writeInt(record.intensity());
+        out.writeDouble(record.radius());
+        out.writeDouble(record.power());
+        out.writeDouble(record.x());
+        out.writeDouble(record.y());
+        out.writeDouble(record.z());
+    }
+
+    /**
+     * Дописать пакет операций в журнал и сбросить его на диск.
+     */
+    private void appendBatch(byte[] payload) throws IOException {
+        CRC32 crc = new CRC32();
+        crc.update(payload);
+        ByteBuffer buffer = ByteBuffer.allocate(8 + payload.length);
+        buffer.putInt(payload.length);
+        buffer.putInt((int) crc.getValue());
+        buffer.put(payload);
+        buffer.flip();
+
+        try (FileChannel channel = FileChannel.open(journalFile.toPath(), StandardOpenOption.CREATE,
+                StandardOpenOption.WRITE, StandardOpenOption.APPEND)) {
+            while (buffer.hasRemaining()) {
+                channel.write(buffer);
+            }
+            channel.force(false);
+        }
+    }
+
+    /**
+     * Проиграть журнал поверх records. Возвращает число применённых операций.
+     * Недописанный или повреждённый хвост обрезается.
+     */
+    private int replayJournal(Map<Integer, SourceRecord> records) throws IOException {
+        if (!journalFile.exists()) return 0;
+
+        int operations = 0;
+        long validLength = 0;
+        long fileLength = journalFile.length();
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(Files.newInputStream(journalFile.toPath()), 1 << 16))) {
+            while (true) {
+                int length;
+                try {
+                    length = in.readInt();
+                } catch (EOFException e) {
+                    break; // Журнал закончился ровно на границе пакета
+                }
+                int expectedCrc = in.readInt();
+                // Длина из повреждённого заголовка может быть любой: пакет длиннее остатка файла — тоже оборванный хвост
+                if (length < 0 || length > fileLength - validLength - 8) break;
+                byte[] payload = new byte[length];
+                in.readFully(payload);
+
+                CRC32 crc = new CRC32();
+                crc.update(payload);
+                if ((int) crc.getValue() != expectedCrc) break;
+
+                operations += applyBatch(new ByteArrayInputStream(payload), records);
+                validLength += 8 + length;
+            }
+        } catch (EOFException e) {
+            // Обрыв посреди пакета — применяем всё до него
+        }
+
+        if (validLength < fileLength) {
+            logger.warning("Журнал источников радиации повреждён после " + validLength + " байт, хвост отброшен.");
+            try (FileChannel channel = FileChannel.open(journalFile.toPath(), StandardOpenOption.WRITE)) {
+                channel.truncate(validLength);
+            }
+        }
+        return operations;
+    }
+
+    private static int applyBatch(InputStream payload, Map<Integer, SourceRecord> records) throws IOException {
+        DataInputStream in = new DataInputStream(payload);
+        int operations = 0;
+        while (in.available() > 0) {
+            byte op = in.readByte();
+            if (op == OP_UPSERT) {
+                int id = in.readInt();
+                int intensity = in.readInt();
+                double radius = in.readDouble();
+                double power = in.readDouble();
+                double x = in.readDouble();
+                double y = in.readDouble();
+                double z = in.readDouble();
+                String world = in.readUTF();
+                records.put(id, new SourceRecord(id, intensity, radius, power, world, x, y, z));
+            } else if (op == OP_DELETE) {
+                records.remove(in.readInt());
+            } else {
+                throw new IOException("Неизвестная операция журнала: " + op);
+            }
+            operations++;
+        }
+        return operations;
+    }
+
+    private void truncateJournal() throws IOException {
+        Files.deleteIfExists(journalFile.toPath());
+        journalOperations = 0;
+    }
+}
@@ -0,0 +1,63 @@
+package org.gezzon.grad.storage;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.Map;
+import java.util.UUID;
+
+/**
+ * Хранение радиации игроков в папке playerdata: по маленькому бинарному файлу на игрока.
+ * Запись атомарная (временный файл + переименование).
+ */
+public class FilePlayerDoseStore implements PlayerDoseStore {
+
+    private static final int FORMAT_VERSION = 1;
+
+    private final File folder;
+
+    public FilePlayerDoseStore(File folder) {
+        this.folder = folder;
+    }
+
+    @Override
+    public double load(UUID uuid) throws IOException {
+        File file = fileOf(uuid);
+        if (!file.exists()) {
+            return 0.0;
+        }
+        try (DataInputStream in = new DataInputStream(new ByteArrayInputStream(Files.readAllBytes(file.toPath())))) {
+            int version = in.readInt();
+            if (version != FORMAT_VERSION) {
+                throw new IOException("Неподдерживаемая версия файла " + file.getName() + ": " + version);
+            }
+            return in.readDouble();
+        }
+    }
+
+    @Override
+    public void saveAll(Map<UUID, Double> doses) throws IOException {
+        for (Map.Entry<UUID, Double> entry : doses.entrySet()) {
+            File file = fileOf(entry.getKey());
+            if (entry.getValue() <= 0.0) {
+                // Нулевая радиация — файл не нужен
+                Files.deleteIfExists(file.toPath());
+                continue;
+            }
+            ByteArrayOutputStream bytes = new ByteArrayOutputStream(12);
+            DataOutputStream out = new DataOutputStream(bytes);
+            out.writeInt(FORMAT_VERSION);
+            out.writeDouble(entry.getValue());
+            out.flush();
+            YamlSourceStorage.writeAtomically(file.toPath(), bytes.toByteArray());
+        }
+    }
+
+    private File fileOf(UUID uuid) {
+        return new File(folder, uuid + ".dat");
+    }
+}
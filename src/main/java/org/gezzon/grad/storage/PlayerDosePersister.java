@@ -0,0 +1,183 @@
+package org.gezzon.grad.storage;
+
+import org.bukkit.plugin.Plugin;
+import org.gezzon.grad.profiling.PhaseProfiler;
+import org.gezzon.grad.profiling.RadiationPersistenceEvent;
+import org.gezzon.grad.scheduler.PluginScheduler;
+
+import java.io.IOException;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Supplier;
+import java.util.logging.Level;
+
+/**
+ * Асинхронная загрузка и сохранение накопленной радиации игроков.
+ *  - загрузка: в AsyncPlayerPreLoginEvent (поток входа), результат забирается в PlayerJoinEvent;
+ *  - сохранение: пакетами раз в интервал и при выходе игрока, в отдельном фоновом потоке;
+ *  - при выключении плагина — финальное синхронное сохранение.
+ * Основной поток сервера никогда не ждёт диск или базу.
+ */
+public class PlayerDosePersister {
+
+    private final Plugin plugin;
+    private final PlayerDoseStore store;
+    private final ExecutorService io;
+
+    // Загруженные до входа значения: UUID -> радиация (забираются в PlayerJoinEvent)
+    private final Map<UUID, Double> preloaded = new ConcurrentHashMap<>();
+
+    // Значения, отправленные на запись, но ещё не записанные (быстрый перезаход не должен прочитать старое)
+    private final Map<UUID, Double> unsaved = new ConcurrentHashMap<>();
+
+    // Игроки, чья радиация ещё грузится: их значение в памяти неполное и не должно попасть на диск
+    private final Map<UUID, CompletableFuture<Double>> loading = new ConcurrentHashMap<>();
+
+    private final PhaseProfiler profiler;
+    private final AtomicInteger pendingWrites = new AtomicInteger();
+
+    public PlayerDosePersister(Plugin plugin, PlayerDoseStore store, PhaseProfiler profiler) {
+        this.plugin = plugin;
+        this.store = store;
+        this.profiler = profiler;
+        this.io = Executors.newSingleThreadExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "Grad-PlayerDose");
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    /**
+     * Запустить периодическое пакетное сохранение. snapshot вызывается в основном потоке
+     * (на Folia — в глобальном региональном планировщике).
+     */
+    public void startAutoSave(Supplier<Map<UUID, Double>> snapshot, long intervalTicks) {
+        long interval = Math.max(20L, intervalTicks);
+        new PluginScheduler(plugin).runGlobalTimer(() -> saveAsync(snapshot.get()), interval, interval);
+    }
+
+    /**
+     * Загрузить радиацию игрока заранее (вызывается из потока AsyncPlayerPreLoginEvent, блокирующе).
+     */
+    public void preload(UUID uuid) throws IOException {
+        preloaded.put(uuid, load(uuid));
+    }
+
+    /**
+     * Забрать значение, загруженное в preload, или null, если его нет.
+     */
+    public Double takePreloaded(UUID uuid) {
+        return preloaded.remove(uuid);
+    }
+
+    /**
+     * Забыть предзагруженное значение (вход игрока был отменён).
+     */
+    public void discardPreloaded(UUID uuid) {
+        preloaded.remove(uuid);
+    }
+
+    /**
+     * Загрузить радиацию игрока в фоновом потоке. Пока загрузка не завершена через finishLoad,
+     * игрок не сохраняется ни пакетами, ни при выключении.
+     */
+    public CompletableFuture<Double> loadAsync(UUID uuid) {
+        CompletableFuture<Double> future = CompletableFuture.supplyAsync(() -> {
+            try {
+                return load(uuid);
+            } catch (IOException e) {
+                throw new IllegalStateException(e);
+            }
+        }, io);
+        loading.put(uuid, future);
+        return future;
+    }
+
+    /**
+     * Завершить загрузку игрока. Возвращает её результат, если загрузка была и ещё никем не забрана,
+     * иначе null. Применение загруженного значения и выход игрока забирают её ровно один раз.
+     */
+    public CompletableFuture<Double> finishLoad(UUID uuid) {
+        return loading.remove(uuid);
+    }
+
+    /**
+     * Отправить пакет значений на запись в фоновом потоке.
+     * Игроки с незавершённой загрузкой пропускаются.
+     */
+    public void saveAsync(Map<UUID, Double> doses) {
+        Map<UUID, Double> batch = withoutLoading(doses);
+        if (batch.isEmpty()) return;
+        unsaved.putAll(batch);
+        pendingWrites.incrementAndGet();
+        io.execute(() -> {
+            try {
+                saveAll(batch);
+                // Удаляем только записанные значения: более новое значение из следующего пакета остаётся
+                batch.forEach((uuid, dose) -> unsaved.remove(uuid, dose));
+            } catch (IOException e) {
+                plugin.getLogger().log(Level.WARNING, "Не удалось сохранить радиацию игроков!", e);
+            } finally {
+                pendingWrites.decrementAndGet();
+            }
+        });
+    }
+
+    /**
+     * Количество пакетов, ожидающих записи.
+     */
+    public int getPendingWrites() {
+        return pendingWrites.get();
+    }
+
+    /**
+     * Дописать очередь, синхронно сохранить финальные значения и закрыть хранилище.
+     * Вызывается в основном потоке из Grad.onDisable.
+     */
+    public void shutdown(Map<UUID, Double> finalDoses) throws IOException {
+        io.shutdown();
+        try {
+            if (!io.awaitTermination(30, TimeUnit.SECONDS)) {
+                plugin.getLogger().warning("Фоновое сохранение радиации игроков не завершилось за 30 секунд.");
+                io.shutdownNow();
+            }
+        } catch (InterruptedException e) {
+            io.shutdownNow();
+            Thread.currentThread().interrupt();
+        }
+        try {
+            saveAll(withoutLoading(finalDoses));
+        } finally {
+            store.close();
+        }
+    }
+
+    /**
+     * Записать пакет с замером времени (фаза "Сохранение" и JFR-событие).
+     */
+    private void saveAll(Map<UUID, Double> doses) throws IOException {
+        RadiationPersistenceEvent event = profiler.beginPersistence();
+        long start = profiler.start();
+        store.saveAll(doses);
+        profiler.endPersistence(event, start, "player-dose", doses.size());
+    }
+
+    private Map<UUID, Double> withoutLoading(Map<UUID, Double> doses) {
+        if (loading.isEmpty()) return doses;
+        Map<UUID, Double> filtered = new HashMap<>(doses);
+        filtered.keySet().removeAll(loading.keySet());
+        return filtered;
+    }
+
+    private double load(UUID uuid) throws IOException {
+        Double pending = unsaved.get(uuid);
+        return pending != null ? pending : store.load(uuid);
+    }
+}
@@ -0,0 +1,29 @@
+package org.gezzon.grad.storage;
+
+import java.io.IOException;
+import java.util.Map;
+import java.util.UUID;
+
+/**
+ * Долговременное хранилище накопленной радиации игроков.
+ * Реализации: FilePlayerDoseStore (файл на игрока) и SqlitePlayerDoseStore (встроенная SQLite).
+ * Методы вызываются только из фоновых потоков (асинхронный вход игрока, поток сохранения).
+ */
+public interface PlayerDoseStore {
+
+    /**
+     * Накопленная радиация игрока или 0, если записи нет.
+     */
+    double load(UUID uuid) throws IOException;
+
+    /**
+     * Сохранить пакет значений одной операцией.
+     */
+    void saveAll(Map<UUID, Double> doses) throws IOException;
+
+    /**
+     * Закрыть хранилище (после последнего сохранения).
+     */
+    default void close() throws IOException {
+    }
+}
@@ -0,0 +1,17 @@
+package org.gezzon.grad.storage;
+
+import java.util.List;
+
+/**
+ * Пакет изменений источников для одного сохранения.
+ *
+ * @param upserts    добавленные или изменённые источники (при full — все источники)
+ * @param deletedIds ID удалённых источников
+ * @param full       upserts содержит полный список источников
+ */
+public record SourceChanges(List<SourceRecord> upserts, List<Integer> deletedIds, boolean full) {
+
+    public boolean isEmpty() {
+        return !full && upserts.isEmpty() && deletedIds.isEmpty();
+    }
+}
@@ -0,0 +1,10 @@
+package org.gezzon.grad.storage;
+
+/**
+ * Неизменяемый снимок одного источника радиации для сохранения на диск.
+ * В отличие от RadiationSource не ссылается на объект World, поэтому
+ * его можно безопасно передавать в фоновые потоки.
+ */
+public record SourceRecord(int id, int intensity, double radius, double power,
+                           String world, double x, double y, double z) {
+}
@@ -0,0 +1,34 @@
+package org.gezzon.grad.storage;
+
+import java.io.IOException;
+import java.util.List;
+
+/**
+ * Движок хранения источников радиации на диске.
+ * Реализации: YamlSourceStorage (полная перезапись radiation-sources.yml)
+ * и BinarySourceStorage (бинарный снимок + журнал изменений).
+ */
+public interface SourceStorage {
+
+    /**
+     * Прочитать все сохранённые источники.
+     */
+    List<SourceRecord> load() throws IOException;
+
+    /**
+     * Записать изменения. Вызывается из фонового потока сохранения.
+     */
+    void save(SourceChanges changes) throws IOException;
+
+    /**
+     * true — движку достаточно только изменённых источников;
+     * false — ему нужен полный список при каждом сохранении.
+     */
+    boolean isIncremental();
+
+    /**
+     * Освободить ресурсы (при выключении плагина, после последнего save).
+     */
+    default void close() throws IOException {
+    }
+}
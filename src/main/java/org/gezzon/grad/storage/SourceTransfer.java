@@ -0,0 +1,373 @@
+package org.gezzon.grad.storage;
+
+import com.google.gson.JsonElement;
+import com.google.gson.JsonObject;
+import com.google.gson.JsonParseException;
+import com.google.gson.JsonParser;
+import org.bukkit.command.CommandSender;
+import org.bukkit.entity.Player;
+import org.bukkit.plugin.Plugin;
+import org.gezzon.grad.radiation.LevelTable;
+import org.gezzon.grad.radiation.RadiationManager;
+import org.gezzon.grad.scheduler.PluginScheduler;
+
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.logging.Level;
+import java.util.regex.Pattern;
+
+/**
+ * Массовый перенос источников между серверами (/radiation import и /radiation export).
+ * Файлы лежат в папке transfers плагина, формат выбирается по расширению:
+ *  - .csv: строка заголовка (id,world,x,y,z,intensity,radius,power), дальше по строке на источник;
+ *  - .jsonl: по JSON-объекту на строку с теми же полями.
+ * Столбец id при импорте не используется — источники получают новые ID.
+ *
+ * Чтение и проверка файла идут в фоновом потоке; если хотя бы одна строка неверна,
+ * ничего не применяется. Проверенные источники применяются в глобальном потоке
+ * одной транзакцией менеджера (RadiationManager.importSources): одно пополнение индекса
+ * и одно отложенное сохранение. Экспорт делает снимок в потоке команды и пишет файл в фоне.
+ */
+public class SourceTransfer {
+
+    private static final Pattern FILE_NAME = Pattern.compile("[A-Za-z0-9_][A-Za-z0-9._-]*\\.(csv|jsonl)");
+    private static final String[] COLUMNS = {"id", "world", "x", "y", "z", "intensity", "radius", "power"};
+    private static final double MAX_COORDINATE = 30_000_000;
+    private static final int MAX_REPORTED_ERRORS = 10;
+
+    private final Plugin plugin;
+    private final PluginScheduler scheduler;
+    private final RadiationManager manager;
+    private final ExecutorService worker;
+    private final AtomicBoolean running = new AtomicBoolean(); // Одновременно выполняется только один перенос
+
+    public SourceTransfer(Plugin plugin, RadiationManager manager) {
+        this.plugin = plugin;
+        this.scheduler = new PluginScheduler(plugin);
+        this.manager = manager;
+        this.worker = Executors.newSingleThreadExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "Grad-Transfer");
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    /**
+     * Папка файлов переноса.
+     */
+    public File getFolder() {
+        return new File(plugin.getDataFolder(), "transfers");
+    }
+
+    /**
+     * Допустимое имя файла: без каталогов, с расширением .csv или .jsonl.
+     */
+    public static boolean isValidName(String name) {
+        return FILE_NAME.matcher(name).matches();
+    }
+
+    /**
+     * Запустить импорт из файла name. replace — заменить все существующие источники.
+     * Возвращает false, если предыдущий перенос ещё выполняется.
+     */
+    public boolean importFile(CommandSender sender, String name, boolean replace) {
+        if (!running.compareAndSet(false, true)) {
+            return false;
+        }
+        File file = new File(getFolder(), name);
+        LevelTable levels = manager.getLevelTable();
+        long started = System.nanoTime();
+        worker.execute(() -> {
+            try {
+                List<String> lines = Files.readAllLines(file.toPath(), StandardCharsets.UTF_8);
+                List<SourceRecord> records = new ArrayList<>(lines.size());
+                List<String> errors = new ArrayList<>();
+                int errorCount = parse(sender, lines, name.endsWith(".csv"), levels, records, errors);
+                if (errorCount > 0) {
+                    reply(sender, "§cИмпорт отменён: ошибок " + errorCount + ", ничего не изменено.");
+                    for (String error : errors) {
+                        reply(sender, "§c  " + error);
+                    }
+                    running.set(false);
+                    return;
+                }
+                if (records.isEmpty()) {
+                    reply(sender, "§cВ файле " + name + " нет источников.");
+                    running.set(false);
+                    return;
+                }
+
+                reply(sender, "§7Проверено источников: " + records.size() + ". Применение...");
+                scheduler.runGlobal(() -> {
+                    try {
+                        int added = manager.importSources(records, replace);
+                        double seconds = (System.nanoTime() - started) / 1_000_000_000.0;
+                        reply(sender, String.format(Locale.ROOT, "§aИмпортировано источников: %d за %.1f с%s.",
+                                added, seconds, replace ? " (прежние источники удалены)" : ""));
+                    } finally {
+                        running.set(false);
+                    }
+                });
+            } catch (IOException e) {
+                reply(sender, "§cНе удалось прочитать transfers/" + name + ": " + e.getMessage());
+                running.set(false);
+            } catch (RuntimeException e) {
+                plugin.getLogger().log(Level.SEVERE, "Ошибка при импорте источников", e);
+                reply(sender, "§cОшибка при импорте источников, подробности в консоли.");
+                running.set(false);
+            }
+        });
+        return true;
+    }
+
+    /**
+     * Запустить экспорт всех источников в файл name. Снимок делается сразу (в потоке команды).
+     * Возвращает false, если предыдущий перенос ещё выполняется.
+     */
+    public boolean exportFile(CommandSender sender, String name) {
+        if (!running.compareAndSet(false, true)) {
+            return false;
+        }
+        List<SourceRecord> records = manager.exportSources();
+        File file = new File(getFolder(), name);
+        boolean csv = name.endsWith(".csv");
+        worker.execute(() -> {
+            try {
+                Files.createDirectories(getFolder().toPath());
+                if (file.exists()) {
+                    reply(sender, "§cФайл transfers/" + name + " уже существует.");
+                    return;
+                }
+                // Пишем во временный файл и переименовываем, чтобы не оставить половину файла
+                File temp = new File(getFolder(), name + ".tmp");
+                try (BufferedWriter writer = Files.newBufferedWriter(temp.toPath(), StandardCharsets.UTF_8)) {
+                    if (csv) {
+                        writer.write(String.join(",", COLUMNS));
+                        writer.newLine();
+                    }
+                    for (SourceRecord record : records) {
+                        writer.write(csv ? toCsv(record) : toJson(record));
+                        writer.newLine();
+                    }
+                }
+                Files.move(temp.toPath(), file.toPath(), StandardCopyOption.ATOMIC_MOVE);
+                reply(sender, "§aЭкспортировано источников: " + records.size() + " в transfers/" + name + ".");
+            } catch (IOException e) {
+                plugin.getLogger().log(Level.WARNING, "Не удалось записать источники в " + file, e);
+                reply(sender, "§cНе удалось записать transfers/" + name + ": " + e.getMessage());
+            } finally {
+                running.set(false);
+            }
+        });
+        return true;
+    }
+
+    /**
+     * Имена файлов в папке переноса (для автодополнения).
+     */
+    public List<String> listFiles() {
+        List<String> names = new ArrayList<>();
+        String[] files = getFolder().list();
+        if (files != null) {
+            for (String name : files) {
+                if (isValidName(name)) {
+                    names.add(name);
+                }
+            }
+        }
+        return names;
+    }
+
+    /**
+     * Остановить фоновый поток (при выключении плагина).
+     */
+    public void shutdown() {
+        worker.shutdownNow();
+    }
+
+    /**
+     * Разобрать и проверить строки файла. Правильные записи добавляются в records,
+     * первые ошибки — в errors. Возвращает общее число ошибок.
+     */
+    private int parse(CommandSender sender, List<String> lines, boolean csv, LevelTable levels,
+                      List<SourceRecord> records, List<String> errors) {
+        Map<String, Integer> header = null;
+        int errorCount = 0;
+        int step = Math.max(10_000, lines.size() / 4); // Прогресс — не чаще, чем по четвертям файла
+        for (int i = 0; i < lines.size(); i++) {
+            if (i > 0 && i % step == 0) {
+                reply(sender, "§7Прочитано строк: " + i + " из " + lines.size() + "...");
+            }
+            String line = lines.get(i).trim();
+            if (line.isEmpty() || line.startsWith("#")) continue;
+
+            try {
+                Map<String, String> fields;
+                if (csv) {
+                    String[] cells = line.split(",", -1);
+                    if (header == null) {
+                        header = parseHeader(cells);
+                        continue;
+                    }
+                    fields = new HashMap<>();
+                    for (Map.Entry<String, Integer> column : header.entrySet()) {
+                        if (column.getValue() < cells.length) {
+                            fields.put(column.getKey(), cells[column.getValue()].trim());
+                        }
+                    }
+                } else {
+                    fields = parseJson(line);
+                }
+                records.add(toRecord(fields, levels));
+            } catch (IllegalArgumentException | IllegalStateException e) {
+                if (header == null && csv) {
+                    // Без заголовка остальные строки не разобрать
+                    errors.add("строка " + (i + 1) + ": " + e.getMessage());
+                    return errorCount + 1;
+                }
+                errorCount++;
+                if (errors.size() < MAX_REPORTED_ERRORS) {
+                    errors.add("строка " + (i + 1) + ": " + e.getMessage());
+                }
+            }
+        }
+        return errorCount;
+    }
+
+    private static Map<String, Integer> parseHeader(String[] cells) {
+        Map<String, Integer> header = new HashMap<>();
+        for (int i = 0; i < cells.length; i++) {
+            header.put(cells[i].trim().toLowerCase(Locale.ROOT), i);
+        }
+        for (String required : new String[]{"world", "x", "y", "z", "intensity", "radius"}) {
+            if (!header.containsKey(required)) {
+                throw new IllegalArgumentException("в заголовке CSV нет столбца " + required);
+            }
+        }
+        return header;
+    }
+
+    private static Map<String, String> parseJson(String line) {
+        JsonElement element;
+        try {
+            element = JsonParser.parseString(line);
+        } catch (JsonParseException e) {
+            throw new IllegalArgumentException("неверный JSON: " + e.getMessage());
+        }
+        if (!element.isJsonObject()) {
+            throw new IllegalArgumentException("ожидается JSON-объект");
+        }
+        Map<String, String> fields = new HashMap<>();
+        for (Map.Entry<String, JsonElement> entry : element.getAsJsonObject().entrySet()) {
+            if (entry.getValue().isJsonPrimitive()) {
+                fields.put(entry.getKey().toLowerCase(Locale.ROOT), entry.getValue().getAsString());
+            }
+        }
+        return fields;
+    }
+
+    /**
+     * Проверенная запись источника (ID 0 — назначается при применении).
+     */
+    private static SourceRecord toRecord(Map<String, String> fields, LevelTable levels) {
+        String world = fields.get("world");
+        if (world == null || world.isEmpty()) {
+            throw new IllegalArgumentException("не указан мир");
+        }
+        double x = coordinate(fields, "x");
+        double y = coordinate(fields, "y");
+        double z = coordinate(fields, "z");
+        int intensity;
+        try {
+            intensity = Integer.parseInt(required(fields, "intensity"));
+        } catch (NumberFormatException e) {
+            throw new IllegalArgumentException("intensity должен быть целым числом");
+        }
+        if (levels.get(intensity) == null) {
+            throw new IllegalArgumentException("уровня " + intensity + " нет в config.yml");
+        }
+        double radius = number(fields, "radius", null);
+        if (radius <= 0) {
+            throw new IllegalArgumentException("radius должен быть больше 0");
+        }
+        double power = number(fields, "power", "1");
+        if (power < 0) {
+            throw new IllegalArgumentException("power не может быть отрицательным");
+        }
+        return new SourceRecord(0, intensity, radius, power, world, x, y, z);
+    }
+
+    private static double coordinate(Map<String, String> fields, String name) {
+        double value = number(fields, name, null);
+        if (Math.abs(value) > MAX_COORDINATE) {
+            throw new IllegalArgumentException(name + " за пределами мира");
+        }
+        return value;
+    }
+
+    private static double number(Map<String, String> fields, String name, String defaultValue) {
+        String text = fields.get(name);
+        if (text == null || text.isEmpty()) {
+            if (defaultValue == null) {
+                throw new IllegalArgumentException("не указано " + name);
+            }
+            text = defaultValue;
+        }
+        try {
+            double value = Double.parseDouble(text);
+            if (!Double.isFinite(value)) {
+                throw new NumberFormatException();
+            }
+            return value;
+        } catch (NumberFormatException e) {
+            throw new IllegalArgumentException("неверное число в " + name + ": " + text);
+        }
+    }
+
+    private static String required(Map<String, String> fields, String name) {
+        String text = fields.get(name);
+        if (text == null || text.isEmpty()) {
+            throw new IllegalArgumentException("не указано " + name);
+        }
+        return text;
+    }
+
+    private static String toCsv(SourceRecord record) {
+        return record.id() + "," + record.world() + "," + record.x() + "," + record.y() + "," + record.z() + ","
+                + record.intensity() + "," + record.radius() + "," + record.power();
+    }
+
+    private static String toJson(SourceRecord record) {
+        JsonObject json = new JsonObject();
+        json.addProperty("id", record.id());
+        json.addProperty("world", record.world());
+        json.addProperty("x", record.x());
+        json.addProperty("y", record.y());
+        json.addProperty("z", record.z());
+        json.addProperty("intensity", record.intensity());
+        json.addProperty("radius", record.radius());
+        json.addProperty("power", record.power());
+        return json.toString();
+    }
+
+    private void reply(CommandSender sender, String message) {
+        if (!plugin.isEnabled()) return;
+        if (sender instanceof Player) {
+            scheduler.runForEntity((Player) sender, () -> sender.sendMessage(message));
+        } else {
+            scheduler.runGlobal(() -> sender.sendMessage(message));
+        }
+    }
+}
@@ -0,0 +1,86 @@
+package org.gezzon.grad.storage;
+
+import java.io.File;
+import java.io.IOException;
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.Map;
+import java.util.UUID;
+
+/**
+ * Хранение радиации игроков во встроенной базе SQLite (драйвер входит в состав сервера).
+ * Используется одно соединение, поэтому методы синхронизированы:
+ * загрузка при входе и пакетное сохранение идут из разных фоновых потоков.
+ */
+public class SqlitePlayerDoseStore implements PlayerDoseStore {
+
+    private final Connection connection;
+
+    public SqlitePlayerDoseStore(File databaseFile) throws IOException {
+        try {
+            Class.forName("org.sqlite.JDBC");
+            databaseFile.getParentFile().mkdirs();
+            connection = DriverManager.getConnection("jdbc:sqlite:" + databaseFile.getAbsolutePath());
+            try (Statement statement = connection.createStatement()) {
+                statement.execute("PRAGMA journal_mode=WAL");
+                statement.execute("CREATE TABLE IF NOT EXISTS grad_player_dose ("
+                        + "uuid TEXT PRIMARY KEY, "
+                        + "dose REAL NOT NULL)");
+            }
+        } catch (ClassNotFoundException | SQLException e) {
+            throw new IOException("Не удалось открыть базу " + databaseFile.getName(), e);
+        }
+    }
+
+    @Override
+    public synchronized double load(UUID uuid) throws IOException {
+        try (PreparedStatement statement = connection.prepareStatement(
+                "SELECT dose FROM grad_player_dose WHERE uuid = ?")) {
+            statement.setString(1, uuid.toString());
+            try (ResultSet result = statement.executeQuery()) {
+                return result.next() ? result.getDouble(1) : 0.0;
+            }
+        } catch (SQLException e) {
+            throw new IOException("Не удалось загрузить радиацию игрока " + uuid, e);
+        }
+    }
+
+    @Override
+    public synchronized void saveAll(Map<UUID, Double> doses) throws IOException {
+        if (doses.isEmpty()) return;
+        try {
+            connection.setAutoCommit(false);
+            try (PreparedStatement statement = connection.prepareStatement(
+                    "INSERT INTO grad_player_dose (uuid, dose) VALUES (?, ?) "
+                            + "ON CONFLICT(uuid) DO UPDATE SET dose = excluded.dose")) {
+                for (Map.Entry<UUID, Double> entry : doses.entrySet()) {
+                    statement.setString(1, entry.getKey().toString());
+                    statement.setDouble(2, entry.getValue());
+                    statement.addBatch();
+                }
+                statement.executeBatch();
+                connection.commit();
+            } catch (SQLException e) {
+                connection.rollback();
+                throw e;
+            } finally {
+                connection.setAutoCommit(true);
+            }
+        } catch (SQLException e) {
+            throw new IOException("Не удалось сохранить радиацию игроков", e);
+        }
+    }
+
+    @Override
+    public synchronized void close() throws IOException {
+        try {
+            connection.close();
+        } catch (SQLException e) {
+            throw new IOException(e);
+        }
+    }
+}
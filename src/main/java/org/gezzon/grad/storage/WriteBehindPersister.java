@@ -0,0 +1,175 @@
+package org.gezzon.grad.storage;
+
+import org.bukkit.plugin.Plugin;
+import org.gezzon.grad.profiling.PhaseProfiler;
+import org.gezzon.grad.profiling.RadiationPersistenceEvent;
+import org.gezzon.grad.scheduler.PluginScheduler;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.IntFunction;
+import java.util.function.Supplier;
+import java.util.logging.Level;
+
+/**
+ * Отложенное (write-behind) сохранение источников радиации.
+ * Изменения не пишутся на диск сразу: первое изменение планирует сохранение
+ * через delayTicks, а все изменения за это время объединяются в одну запись.
+ * Снимок состояния делается в основном потоке, сериализация и запись —
+ * в отдельном фоновом потоке. При выключении плагина flush() гарантированно
+ * дописывает последнее состояние.
+ *
+ * Для инкрементальных движков (журнал) в снимок попадают только изменённые
+ * источники, для остальных — полный список.
+ *
+ * На Folia изменения приходят из потоков разных регионов, поэтому учёт изменений
+ * синхронизирован, а снимок делается в глобальном региональном планировщике.
+ */
+public class WriteBehindPersister {
+
+    private final Plugin plugin;
+    private final PluginScheduler scheduler;
+    private final SourceStorage storage;
+    private final Supplier<List<SourceRecord>> fullSnapshot; // Вызывается только в основном потоке
+    private final IntFunction<SourceRecord> recordLookup;    // ID -> снимок источника или null, если удалён
+    private final long delayTicks;
+    private final PhaseProfiler profiler;
+
+    private final ExecutorService writer;
+    private final AtomicInteger pendingWrites = new AtomicInteger(); // Снимков в очереди на запись
+    private final Set<Integer> changedIds = new LinkedHashSet<>();   // Изменённые с прошлого снимка (под блокировкой)
+    private boolean saveScheduled; // Сохранение уже запланировано (под блокировкой)
+
+    public WriteBehindPersister(Plugin plugin, SourceStorage storage, Supplier<List<SourceRecord>> fullSnapshot,
+                                IntFunction<SourceRecord> recordLookup, long delayTicks, PhaseProfiler profiler) {
+        this.plugin = plugin;
+        this.scheduler = new PluginScheduler(plugin);
+        this.storage = storage;
+        this.fullSnapshot = fullSnapshot;
+        this.recordLookup = recordLookup;
+        this.delayTicks = Math.max(1L, delayTicks);
+        this.profiler = profiler;
+        this.writer = Executors.newSingleThreadExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "Grad-Persistence");
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    /**
+     * Отметить источник как добавленный, изменённый или удалённый и запланировать сохранение.
+     * Повторные изменения до срабатывания объединяются.
+     */
+    public synchronized void markChanged(int id) {
+        changedIds.add(id);
+        if (saveScheduled) return;
+        saveScheduled = true;
+        scheduler.runGlobalLater(this::snapshotAndWrite, delayTicks);
+    }
+
+    /**
+     * Отметить сразу много источников (массовый импорт): одно сохранение на всю пачку.
+     */
+    public synchronized void markChanged(Collection<Integer> ids) {
+        if (ids.isEmpty()) return;
+        changedIds.addAll(ids);
+        if (saveScheduled) return;
+        saveScheduled = true;
+        scheduler.runGlobalLater(this::snapshotAndWrite, delayTicks);
+    }
+
+    /**
+     * Количество снимков, ожидающих записи на диск.
+     */
+    public int getPendingWrites() {
+        return pendingWrites.get();
+    }
+
+    /**
+     * Синхронно сохранить текущее состояние и остановить фоновый поток.
+     * Вызывается в основном потоке из Grad.onDisable.
+     */
+    public void flush() throws IOException {
+        SourceChanges changes;
+        synchronized (this) {
+            saveScheduled = false;
+            changes = collectChanges();
+        }
+
+        // Дожидаемся уже поставленных записей, чтобы они не перезаписали финальный снимок
+        writer.shutdown();
+        try {
+            if (!writer.awaitTermination(30, TimeUnit.SECONDS)) {
+                plugin.getLogger().warning("Фоновое сохранение источников не завершилось за 30 секунд.");
+                writer.shutdownNow();
+            }
+        } catch (InterruptedException e) {
+            writer.shutdownNow();
+            Thread.currentThread().interrupt();
+        }
+        try {
+            save(changes);
+        } finally {
+            storage.close();
+        }
+    }
+
+    private void snapshotAndWrite() {
+        SourceChanges changes;
+        synchronized (this) {
+            if (!saveScheduled) return; // Уже сохранено через flush()
+            saveScheduled = false;
+            changes = collectChanges();
+        }
+        pendingWrites.incrementAndGet();
+        writer.execute(() -> {
+            try {
+                save(changes);
+            } catch (IOException e) {
+                plugin.getLogger().log(Level.WARNING, "Не удалось сохранить источники радиации!", e);
+            } finally {
+                pendingWrites.decrementAndGet();
+            }
+        });
+    }
+
+    /**
+     * Записать изменения с замером времени (фаза "Сохранение" и JFR-событие).
+     */
+    private void save(SourceChanges changes) throws IOException {
+        RadiationPersistenceEvent event = profiler.beginPersistence();
+        long start = profiler.start();
+        storage.save(changes);
+        profiler.endPersistence(event, start, "sources", changes.upserts().size() + changes.deletedIds().size());
+    }
+
+    /**
+     * Собрать изменения с прошлого снимка (под блокировкой).
+     */
+    private SourceChanges collectChanges() {
+        if (!storage.isIncremental()) {
+            changedIds.clear();
+            return new SourceChanges(fullSnapshot.get(), List.of(), true);
+        }
+        List<SourceRecord> upserts = new ArrayList<>();
+        List<Integer> deleted = new ArrayList<>();
+        for (int id : changedIds) {
+            SourceRecord record = recordLookup.apply(id);
+            if (record != null) {
+                upserts.add(record);
+            } else {
+                deleted.add(id);
+            }
+        }
+        changedIds.clear();
+        return new SourceChanges(upserts, deleted, false);
+    }
+}
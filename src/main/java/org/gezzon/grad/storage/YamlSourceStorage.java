@@ -0,0 +1,118 @@
+package org.gezzon.grad.storage;
+
+import org.bukkit.configuration.file.YamlConfiguration;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Хранение источников радиации в YAML-файле (radiation-sources.yml).
+ * Запись идёт во временный файл с последующим атомарным переименованием,
+ * поэтому при падении сервера посреди записи старый файл остаётся целым.
+ */
+public class YamlSourceStorage implements SourceStorage {
+
+    private final File file;
+
+    public YamlSourceStorage(File file) {
+        this.file = file;
+    }
+
+    public File getFile() {
+        return file;
+    }
+
+    /**
+     * Прочитать все источники из файла. Если файла нет — пустой список.
+     */
+    @Override
+    public List<SourceRecord> load() {
+        List<SourceRecord> records = new ArrayList<>();
+        if (!file.exists()) {
+            return records;
+        }
+        YamlConfiguration config = YamlConfiguration.loadConfiguration(file);
+        for (Map<?, ?> entry : config.getMapList("sources")) {
+            records.add(new SourceRecord(
+                    ((Number) entry.get("id")).intValue(),
+                    ((Number) entry.get("intensity")).intValue(),
+                    ((Number) entry.get("radius")).doubleValue(),
+                    ((Number) entry.get("power")).doubleValue(),
+                    (String) entry.get("world"),
+                    ((Number) entry.get("x")).doubleValue(),
+                    ((Number) entry.get("y")).doubleValue(),
+                    ((Number) entry.get("z")).doubleValue()
+            ));
+        }
+        return records;
+    }
+
+    /**
+     * YAML переписывается целиком, поэтому нужен полный список источников.
+     */
+    @Override
+    public boolean isIncremental() {
+        return false;
+    }
+
+    @Override
+    public void save(SourceChanges changes) throws IOException {
+        save(changes.upserts());
+    }
+
+    /**
+     * Записать все источники в файл (временный файл + атомарное переименование).
+     * Может вызываться из любого потока.
+     */
+    public void save(List<SourceRecord> records) throws IOException {
+        List<Map<String, Object>> list = new ArrayList<>(records.size());
+        for (SourceRecord record : records) {
+            Map<String, Object> entry = new HashMap<>();
+            entry.put("id", record.id());
+            entry.put("intensity", record.intensity());
+            entry.put("radius", record.radius());
+            entry.put("power", record.power());
+            entry.put("world", record.world());
+            entry.put("x", record.x());
+            entry.put("y", record.y());
+            entry.put("z", record.z());
+            list.add(entry);
+        }
+        YamlConfiguration config = new YamlConfiguration();
+        config.set("sources", list);
+        writeAtomically(file.toPath(), config.saveToString().getBytes(StandardCharsets.UTF_8));
+    }
+
+    /**
+     * Записать данные во временный файл рядом с target и переименовать его поверх target.
+     */
+    static void writeAtomically(Path target, byte[] data) throws IOException {
+        Files.createDirectories(target.toAbsolutePath().getParent());
+        Path temp = target.resolveSibling(target.getFileName() + ".tmp");
+        try (FileChannel channel = FileChannel.open(temp, StandardOpenOption.CREATE,
+                StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE)) {
+            ByteBuffer buffer = ByteBuffer.wrap(data);
+            while (buffer.hasRemaining()) {
+                channel.write(buffer);
+            }
+            channel.force(true); // Данные должны попасть на диск до переименования
+        }
+        try {
+            Files.move(temp, target, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch (AtomicMoveNotSupportedException e) {
+            Files.move(temp, target, StandardCopyOption.REPLACE_EXISTING);
+        }
+    }
+}
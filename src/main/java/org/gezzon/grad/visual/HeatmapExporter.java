@@ -0,0 +1,265 @@
+package org.gezzon.grad.visual;
+
+import org.bukkit.World;
+import org.bukkit.command.CommandSender;
+import org.bukkit.configuration.file.FileConfiguration;
+import org.bukkit.entity.Player;
+import org.bukkit.plugin.Plugin;
+import org.gezzon.grad.radiation.LevelTable;
+import org.gezzon.grad.radiation.RadiationManager;
+import org.gezzon.grad.radiation.RegionLevelCache;
+import org.gezzon.grad.radiation.WorldSourceStore;
+import org.gezzon.grad.scheduler.PluginScheduler;
+
+import javax.imageio.ImageIO;
+import java.awt.Color;
+import java.awt.image.BufferedImage;
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinWorkerThread;
+import java.util.concurrent.RecursiveAction;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.IntToDoubleFunction;
+import java.util.logging.Level;
+
+/**
+ * Карта скорости накопления радиации (источники + регионы WorldGuard) по участку мира.
+ * Выборка делится на плитки 64x64 и считается в отдельном ForkJoinPool по снимку
+ * источников, поэтому основной поток только делает снимок и запускает задачу.
+ * Результат — PNG (цвет по логарифмической шкале) и CSV с ненулевыми точками
+ * в папке heatmaps плагина.
+ */
+public class HeatmapExporter {
+
+    private static final int TILE = 64;
+    private static final int ZERO_COLOR = 0x202020;
+
+    private final Plugin plugin;
+    private final PluginScheduler scheduler;
+    private final RadiationManager manager;
+    private final long maxSamples;
+    private final ForkJoinPool pool;
+    private final AtomicBoolean running = new AtomicBoolean(); // Одновременно строится только одна карта
+
+    public HeatmapExporter(Plugin plugin, RadiationManager manager) {
+        this.plugin = plugin;
+        this.scheduler = new PluginScheduler(plugin);
+        this.manager = manager;
+        FileConfiguration config = plugin.getConfig();
+        this.maxSamples = Math.max(1L, config.getLong("heatmap.max-samples", 16_777_216L));
+        int threads = config.getInt("heatmap.threads", 0);
+        if (threads <= 0) {
+            threads = Math.max(1, Runtime.getRuntime().availableProcessors() - 1);
+        }
+        this.pool = new ForkJoinPool(threads, forkJoinPool -> {
+            ForkJoinWorkerThread thread = ForkJoinPool.defaultForkJoinWorkerThreadFactory.newThread(forkJoinPool);
+            thread.setName("Grad-Heatmap-" + thread.getPoolIndex());
+            thread.setDaemon(true);
+            return thread;
+        }, null, false);
+    }
+
+    /**
+     * Наименьший шаг, при котором участок укладывается в heatmap.max-samples.
+     */
+    public int minimumStep(int minX, int minZ, int maxX, int maxZ) {
+        int step = 1;
+        while (samples(minX, maxX, step) * samples(minZ, maxZ, step) > maxSamples) {
+            step++;
+        }
+        return step;
+    }
+
+    public long getMaxSamples() {
+        return maxSamples;
+    }
+
+    /**
+     * Запустить построение карты. Вызывается в потоке команды: здесь делается только
+     * снимок источников. Возвращает false, если предыдущая карта ещё строится.
+     */
+    public boolean export(CommandSender sender, World world, int minX, int minZ, int maxX, int maxZ, int y, int step) {
+        if (!running.compareAndSet(false, true)) {
+            return false;
+        }
+        WorldSourceStore sources = manager.snapshotWorldSources(world.getName());
+        LevelTable levels = manager.getLevelTable();
+        RegionLevelCache regions = manager.getRegionLevelCache();
+        Grid grid = new Grid(world, minX, minZ, (int) samples(minX, maxX, step), (int) samples(minZ, maxZ, step), y, step);
+        long started = System.nanoTime();
+
+        CompletableFuture.runAsync(() -> {
+            float[] values = new float[grid.width * grid.height];
+            new TileTask(grid, values, sources, levels::baseAccumulation, levels, regions, 0, grid.tileCount()).invoke();
+            try {
+                String name = String.format("%s_%d_%d_%d_%d_y%d_s%d", world.getName(), minX, minZ, maxX, maxZ, y, step);
+                File folder = new File(plugin.getDataFolder(), "heatmaps");
+                Files.createDirectories(folder.toPath());
+                float max = writePng(grid, values, new File(folder, name + ".png"));
+                long nonZero = writeCsv(grid, values, new File(folder, name + ".csv"));
+                double seconds = (System.nanoTime() - started) / 1_000_000_000.0;
+                reply(sender, String.format("§aКарта радиации готова за %.1f с: heatmaps/%s.png и .csv (%dx%d, ненулевых точек %d, максимум %.3f/с).",
+                        seconds, name, grid.width, grid.height, nonZero, max));
+            } catch (IOException e) {
+                plugin.getLogger().log(Level.WARNING, "Не удалось записать карту радиации", e);
+                reply(sender, "§cНе удалось записать карту радиации: " + e.getMessage());
+            }
+        }, pool).whenComplete((ignored, error) -> {
+            running.set(false);
+            if (error != null) {
+                plugin.getLogger().log(Level.SEVERE, "Ошибка при построении карты радиации", error);
+                reply(sender, "§cОшибка при построении карты радиации, подробности в консоли.");
+            }
+        });
+        return true;
+    }
+
+    /**
+     * Остановить потоки (при выключении плагина).
+     */
+    public void shutdown() {
+        pool.shutdownNow();
+    }
+
+    private void reply(CommandSender sender, String message) {
+        if (!plugin.isEnabled()) return;
+        if (sender instanceof Player) {
+            scheduler.runForEntity((Player) sender, () -> sender.sendMessage(message));
+        } else {
+            scheduler.runGlobal(() -> sender.sendMessage(message));
+        }
+    }
+
+    private static long samples(int min, int max, int step) {
+        return ((long) max - min) / step + 1;
+    }
+
+    /**
+     * PNG: одна точка выборки — один пиксель, север сверху. Возвращает максимум по карте.
+     */
+    private static float writePng(Grid grid, float[] values, File file) throws IOException {
+        float max = 0f;
+        for (float value : values) {
+            max = Math.max(max, value);
+        }
+        double scale = max > 0f ? Math.log1p(max) : 1.0;
+        BufferedImage image = new BufferedImage(grid.width, grid.height, BufferedImage.TYPE_INT_RGB);
+        for (int row = 0; row < grid.height; row++) {
+            for (int column = 0; column < grid.width; column++) {
+                float value = values[row * grid.width + column];
+                int rgb = ZERO_COLOR;
+                if (value > 0f) {
+                    // Зелёный (слабо) -> жёлтый -> красный (максимум)
+                    float t = (float) (Math.log1p(value) / scale);
+                    rgb = Color.HSBtoRGB((1f - t) / 3f, 1f, 0.5f + 0.5f * t) & 0xFFFFFF;
+                }
+                image.setRGB(column, row, rgb);
+            }
+        }
+        ImageIO.write(image, "png", file);
+        return max;
+    }
+
+    /**
+     * CSV "x,z,dose_rate" только для ненулевых точек. Возвращает число записанных строк.
+     */
+    private static long writeCsv(Grid grid, float[] values, File file) throws IOException {
+        long rows = 0;
+        try (BufferedWriter out = Files.newBufferedWriter(file.toPath(), StandardCharsets.UTF_8)) {
+            out.write("x,z,dose_rate\n");
+            StringBuilder line = new StringBuilder(48);
+            for (int row = 0; row < grid.height; row++) {
+                for (int column = 0; column < grid.width; column++) {
+                    float value = values[row * grid.width + column];
+                    if (value <= 0f) continue;
+                    line.setLength(0);
+                    line.append(grid.minX + column * grid.step).append(',')
+                            .append(grid.minZ + row * grid.step).append(',')
+                            .append(value).append('\n');
+                    out.append(line);
+                    rows++;
+                }
+            }
+        }
+        return rows;
+    }
+
+    /**
+     * Параметры выборки: мир, угол, размер в точках, высота и шаг.
+     */
+    private record Grid(World world, int minX, int minZ, int width, int height, int y, int step) {
+
+        int tilesX() {
+            return (width + TILE - 1) / TILE;
+        }
+
+        int tileCount() {
+            return tilesX() * ((height + TILE - 1) / TILE);
+        }
+    }
+
+    /**
+     * Расчёт плиток [from, to): диапазон делится пополам, пока не останется одна плитка.
+     */
+    private static final class TileTask extends RecursiveAction {
+        private final Grid grid;
+        private final float[] values;
+        private final WorldSourceStore sources;
+        private final IntToDoubleFunction baseAccumulation;
+        private final LevelTable levels;
+        private final RegionLevelCache regions;
+        private final int from;
+        private final int to;
+
+        TileTask(Grid grid, float[] values, WorldSourceStore sources, IntToDoubleFunction baseAccumulation,
+                 LevelTable levels, RegionLevelCache regions, int from, int to) {
+            this.grid = grid;
+            this.values = values;
+            this.sources = sources;
+            this.baseAccumulation = baseAccumulation;
+            this.levels = levels;
+            this.regions = regions;
+            this.from = from;
+            this.to = to;
+        }
+
+        @Override
+        protected void compute() {
+            if (to - from > 1) {
+                int middle = (from + to) >>> 1;
+                invokeAll(new TileTask(grid, values, sources, baseAccumulation, levels, regions, from, middle),
+                        new TileTask(grid, values, sources, baseAccumulation, levels, regions, middle, to));
+                return;
+            }
+            if (from < to) {
+                computeTile(from);
+            }
+        }
+
+        private void computeTile(int tile) {
+            int startColumn = (tile % grid.tilesX()) * TILE;
+            int startRow = (tile / grid.tilesX()) * TILE;
+            int endColumn = Math.min(grid.width, startColumn + TILE);
+            int endRow = Math.min(grid.height, startRow + TILE);
+            int y = grid.y;
+            for (int row = startRow; row < endRow; row++) {
+                int z = grid.minZ + row * grid.step;
+                for (int column = startColumn; column < endColumn; column++) {
+                    int x = grid.minX + column * grid.step;
+                    // Как и в расчёте игроков: источники в центре блока плюс уровень региона
+                    double rate = sources.sumDoseRate(x + 0.5, y + 0.5, z + 0.5, baseAccumulation);
+                    int level = regions.getLevelUncached(grid.world, x, y, z);
+                    if (level > 0) {
+                        rate += levels.baseAccumulation(level);
+                    }
+                    values[row * grid.width + column] = (float) rate;
+                }
+            }
+        }
+    }
+}
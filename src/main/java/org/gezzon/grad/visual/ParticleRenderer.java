@@ -0,0 +1,230 @@
+package org.gezzon.grad.visual;
+
+import org.bukkit.Location;
+import org.bukkit.Particle;
+import org.bukkit.World;
+import org.bukkit.configuration.file.FileConfiguration;
+import org.bukkit.entity.Player;
+import org.bukkit.plugin.Plugin;
+import org.gezzon.grad.radiation.RadiationManager;
+import org.gezzon.grad.radiation.RadiationSource;
+import org.gezzon.grad.scheduler.PluginScheduler;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Отрисовка сфер источников частицами для /radiation view.
+ *  - точки сферы берутся из заранее посчитанных наборов SpherePoints, плотность
+ *    выбирается по расстоянию от игрока до поверхности сферы;
+ *  - частицы отправляются порциями: не больше particles-per-tick на игрока за тик,
+ *    остальное дорисовывается в следующих тиках, поэтому "view all" не вешает сервер;
+ *  - в режиме toggle источники, центр которых в пределах view-range, перерисовываются периодически,
+ *    пока игрок не выключит режим.
+ *
+ * Очередь игрока обрабатывается в потоке, владеющем игроком (на Folia — поток его региона).
+ */
+public class ParticleRenderer {
+
+    private static final Particle PARTICLE = Particle.VILLAGER_HAPPY;
+    private static final double POINT_SPACING = 1.5; // Расстояние между частицами на сфере вблизи, в блоках
+
+    private final PluginScheduler scheduler;
+    private final RadiationManager manager;
+    private final int particlesPerTick;
+    private final double viewRange;
+    private final int redrawTicks;
+    private final double fullDetailDistance;
+
+    private final Map<UUID, ViewSession> sessions = new ConcurrentHashMap<>();
+    private final Set<UUID> toggled = ConcurrentHashMap.newKeySet(); // Игроки с включённым режимом toggle
+
+    public ParticleRenderer(Plugin plugin, RadiationManager manager) {
+        this.scheduler = new PluginScheduler(plugin);
+        this.manager = manager;
+        FileConfiguration config = plugin.getConfig();
+        this.particlesPerTick = Math.max(1, config.getInt("visualization.particles-per-tick", 200));
+        this.viewRange = Math.max(1.0, config.getDouble("visualization.view-range", 64.0));
+        this.redrawTicks = Math.max(1, config.getInt("visualization.redraw-ticks", 20));
+        this.fullDetailDistance = Math.max(1.0, config.getDouble("visualization.full-detail-distance", 16.0));
+    }
+
+    /**
+     * Один раз нарисовать источники sources (только из мира игрока и в пределах view-range).
+     */
+    public void show(Player player, Collection<RadiationSource> sources) {
+        List<RadiationSource> copy = new ArrayList<>(sources);
+        scheduler.runForEntity(player, () -> {
+            ViewSession session = sessions.computeIfAbsent(player.getUniqueId(), uuid -> new ViewSession());
+            enqueue(player, session, copy);
+            ensureRunning(player, session);
+        });
+    }
+
+    /**
+     * Переключить режим постоянной отрисовки ближайших источников. Возвращает новое состояние.
+     */
+    public boolean toggle(Player player) {
+        UUID uuid = player.getUniqueId();
+        if (toggled.remove(uuid)) {
+            return false;
+        }
+        toggled.add(uuid);
+        scheduler.runForEntity(player, () ->
+                ensureRunning(player, sessions.computeIfAbsent(uuid, id -> new ViewSession())));
+        return true;
+    }
+
+    /**
+     * Выключить режим toggle и прекратить дорисовку очереди игрока.
+     */
+    public void stop(Player player) {
+        toggled.remove(player.getUniqueId());
+        scheduler.runForEntity(player, () -> {
+            ViewSession session = sessions.get(player.getUniqueId());
+            if (session != null) {
+                session.queue.clear();
+            }
+        });
+    }
+
+    /**
+     * Забыть игрока (при выходе): его задача отрисовки останавливается сервером вместе с сущностью.
+     */
+    public void forget(UUID uuid) {
+        toggled.remove(uuid);
+        sessions.remove(uuid);
+    }
+
+    private void ensureRunning(Player player, ViewSession session) {
+        if (session.running) return;
+        session.running = true;
+        scheduler.runForEntityWhile(player, () -> tick(player, session), 1L, 1L);
+    }
+
+    /**
+     * Один тик отрисовки игрока. Возвращает false, когда рисовать больше нечего.
+     */
+    private boolean tick(Player player, ViewSession session) {
+        UUID uuid = player.getUniqueId();
+        boolean persistent = toggled.contains(uuid);
+        if (persistent && session.queue.isEmpty() && --session.redrawCountdown <= 0) {
+            session.redrawCountdown = redrawTicks;
+            enqueue(player, session, manager.getSourcesNear(player.getLocation(), viewRange));
+        }
+
+        World world = player.getWorld();
+        int budget = particlesPerTick;
+        while (budget > 0 && !session.queue.isEmpty()) {
+            RenderJob job = session.queue.peekFirst();
+            if (job.world != world) {
+                session.queue.pollFirst(); // Игрок сменил мир — сферу уже не видно
+                continue;
+            }
+            SpherePoints points = job.points;
+            int end = Math.min(points.size(), job.next + budget);
+            for (int i = job.next; i < end; i++) {
+                player.spawnParticle(PARTICLE,
+                        job.x + points.x(i) * job.radius,
+                        job.y + points.y(i) * job.radius,
+                        job.z + points.z(i) * job.radius,
+                        1, 0, 0, 0, 0);
+            }
+            budget -= end - job.next;
+            job.next = end;
+            if (end == points.size()) {
+                session.queue.pollFirst();
+            }
+        }
+
+        if (session.queue.isEmpty() && !persistent) {
+            session.running = false;
+            sessions.remove(uuid, session);
+            return false;
+        }
+        return true;
+    }
+
+    /**
+     * Поставить в очередь источники из мира игрока, ближайшие первыми.
+     * Источники, уже стоящие в очереди, и сферы дальше view-range пропускаются.
+     */
+    private void enqueue(Player player, ViewSession session, Collection<RadiationSource> sources) {
+        Location eye = player.getLocation();
+        World world = eye.getWorld();
+        List<RenderJob> jobs = new ArrayList<>();
+        for (RadiationSource source : sources) {
+            Location center = source.getCenter();
+            if (center.getWorld() != world || session.contains(source.getId())) continue;
+            double radius = source.getRadius();
+            double gap = Math.max(0.0, center.distance(eye) - radius); // До поверхности сферы (0 — игрок внутри)
+            if (gap > viewRange) continue;
+            jobs.add(new RenderJob(source.getId(), world, center.getX(), center.getY(), center.getZ(),
+                    radius, detailFor(radius, gap), gap));
+        }
+        jobs.sort(Comparator.comparingDouble(job -> job.gap));
+        session.queue.addAll(jobs);
+    }
+
+    /**
+     * Набор точек для сферы радиуса radius, до поверхности которой gap блоков:
+     * вблизи — около одной частицы на POINT_SPACING блоков, дальше плотность падает квадратично.
+     */
+    private SpherePoints detailFor(double radius, double gap) {
+        double target = 4.0 * Math.PI * radius * radius / (POINT_SPACING * POINT_SPACING);
+        if (gap > fullDetailDistance) {
+            double falloff = fullDetailDistance / gap;
+            target *= falloff * falloff;
+        }
+        return SpherePoints.atLeast((int) Math.ceil(target));
+    }
+
+    /**
+     * Очередь отрисовки одного игрока. Меняется только в потоке, владеющем игроком.
+     */
+    private static final class ViewSession {
+        final ArrayDeque<RenderJob> queue = new ArrayDeque<>();
+        boolean running;      // Задача отрисовки запущена
+        int redrawCountdown;  // Тиков до перерисовки в режиме toggle
+
+        boolean contains(int sourceId) {
+            for (RenderJob job : queue) {
+                if (job.sourceId == sourceId) return true;
+            }
+            return false;
+        }
+    }
+
+    /**
+     * Одна сфера в очереди: снимок центра и радиуса и позиция, до которой она уже нарисована.
+     */
+    private static final class RenderJob {
+        final int sourceId;
+        final World world;
+        final double x;
+        final double y;
+        final double z;
+        final double radius;
+        final SpherePoints points;
+        final double gap;
+        int next;
+
+        RenderJob(int sourceId, World world, double x, double y, double z, double radius, SpherePoints points, double gap) {
+            this.sourceId = sourceId;
+            this.world = world;
+            this.x = x;
+            this.y = y;
+            this.z = z;
+            this.radius = radius;
+            this.points = points;
+            this.gap = gap;
+        }
+    }
+}
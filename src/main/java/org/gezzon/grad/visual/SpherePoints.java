@@ -0,0 +1,70 @@
+package org.gezzon.grad.visual;
+
+/**
+ * Заранее посчитанные наборы точек на единичной сфере (решётка Фибоначчи).
+ * Точки решётки распределены по поверхности почти равномерно, без сгущения
+ * у полюсов, как у колец по широте. Наборы считаются один раз при загрузке
+ * класса, при отрисовке остаётся только умножение на радиус и сдвиг к центру.
+ *
+ * Уровни детализации: 32, 64, ..., 2048 точек (каждый следующий вдвое плотнее).
+ */
+public final class SpherePoints {
+
+    private static final int MIN_POINTS = 32;
+    private static final int LEVELS = 7;
+    private static final double GOLDEN_ANGLE = Math.PI * (3.0 - Math.sqrt(5.0));
+
+    private static final SpherePoints[] BY_LEVEL = new SpherePoints[LEVELS];
+
+    static {
+        for (int level = 0; level < LEVELS; level++) {
+            BY_LEVEL[level] = new SpherePoints(MIN_POINTS << level);
+        }
+    }
+
+    private final float[] x;
+    private final float[] y;
+    private final float[] z;
+
+    private SpherePoints(int count) {
+        x = new float[count];
+        y = new float[count];
+        z = new float[count];
+        for (int i = 0; i < count; i++) {
+            double py = 1.0 - (i + 0.5) * 2.0 / count; // От 1 до -1 с шагом по площади
+            double ring = Math.sqrt(1.0 - py * py);
+            double angle = GOLDEN_ANGLE * i;
+            x[i] = (float) (Math.cos(angle) * ring);
+            y[i] = (float) py;
+            z[i] = (float) (Math.sin(angle) * ring);
+        }
+    }
+
+    /**
+     * Наименьший набор, в котором не меньше count точек (или самый плотный, если таких нет).
+     */
+    public static SpherePoints atLeast(int count) {
+        for (SpherePoints points : BY_LEVEL) {
+            if (points.size() >= count) {
+                return points;
+            }
+        }
+        return BY_LEVEL[LEVELS - 1];
+    }
+
+    public int size() {
+        return x.length;
+    }
+
+    public float x(int index) {
+        return x[index];
+    }
+
+    public float y(int index) {
+        return y[index];
+    }
+
+    public float z(int index) {
+        return z[index];
+    }
+}
@@ -0,0 +1,34 @@
+package org.gezzon.grad.radiation;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
+
+/**
+ * Упаковка координат блока в long: отрицательные координаты и границы мира.
+ */
+class BlockSourceIndexTest {
+
+    @Test
+    void packsAndUnpacksNegativeCoordinates() {
+        int[][] blocks = {
+                {0, 0, 0}, {-1, -1, -1}, {-30_000_000, -64, -30_000_000}, {30_000_000, 319, 30_000_000},
+                {-16, 2047, 15}, {1, -2048, -1}, {-12_345, -33, 6_789}
+        };
+        for (int[] block : blocks) {
+            long key = BlockSourceIndex.blockKey(block[0], block[1], block[2]);
+            assertEquals(block[0], BlockSourceIndex.keyX(key));
+            assertEquals(block[1], BlockSourceIndex.keyY(key));
+            assertEquals(block[2], BlockSourceIndex.keyZ(key));
+        }
+    }
+
+    @Test
+    void neighbouringBlocksGetDistinctKeys() {
+        long origin = BlockSourceIndex.blockKey(-1, -1, -1);
+        assertNotEquals(origin, BlockSourceIndex.blockKey(0, -1, -1));
+        assertNotEquals(origin, BlockSourceIndex.blockKey(-1, 0, -1));
+        assertNotEquals(origin, BlockSourceIndex.blockKey(-1, -1, 0));
+    }
+}
@@ -0,0 +1,54 @@
+package org.gezzon.grad.radiation;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+/**
+ * Удаление сдвигом в LongIntTable: после любых удалений поиск находит все оставшиеся ключи.
+ */
+class LongIntTableTest {
+
+    @Test
+    void matchesHashMapUnderRandomPutsAndRemoves() {
+        LongIntTable table = new LongIntTable();
+        Map<Long, Integer> expected = new HashMap<>();
+        Random random = new Random(42);
+        for (int i = 0; i < 200_000; i++) {
+            // Маленький диапазон ключей — длинные цепочки коллизий и частые удаления из их середины
+            long key = BlockSourceIndex.blockKey(random.nextInt(64) - 32, random.nextInt(8), random.nextInt(64) - 32);
+            if (random.nextInt(3) == 0) {
+                table.remove(key);
+                expected.remove(key);
+            } else {
+                table.put(key, i);
+                expected.put(key, i);
+            }
+        }
+
+        assertEquals(expected.size(), table.size);
+        for (Map.Entry<Long, Integer> entry : expected.entrySet()) {
+            assertEquals((int) entry.getValue(), table.get(entry.getKey()));
+        }
+    }
+
+    @Test
+    void removeKeepsCollidingChainReachable() {
+        LongIntTable table = new LongIntTable();
+        for (int i = 0; i < 12; i++) {
+            table.put(i, i);
+        }
+        for (int i = 0; i < 12; i += 2) {
+            table.remove(i);
+        }
+
+        for (int i = 0; i < 12; i++) {
+            assertEquals(i % 2 == 0 ? LongIntTable.EMPTY : i, table.get(i));
+        }
+        assertEquals(6, table.size);
+    }
+}
@@ -0,0 +1,140 @@
+package org.gezzon.grad.storage;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Comparator;
+import java.util.List;
+import java.util.logging.Logger;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Проигрывание журнала бинарного хранилища: обрыв хвоста, неверная CRC,
+ * повреждённая длина пакета и сворачивание журнала в снимок.
+ */
+class BinarySourceStorageTest {
+
+    private static final Logger LOGGER = Logger.getLogger(BinarySourceStorageTest.class.getName());
+
+    @TempDir
+    Path folder;
+
+    private File snapshot;
+    private File journal;
+
+    @BeforeEach
+    void setUp() {
+        snapshot = folder.resolve("radiation-sources.bin").toFile();
+        journal = folder.resolve("radiation-sources.journal").toFile();
+    }
+
+    @Test
+    void replaysJournalOverSnapshot() throws IOException {
+        BinarySourceStorage storage = open(100);
+        storage.save(full(source(1, 1.0), source(2, 2.0)));
+        storage.save(new SourceChanges(List.of(source(2, 5.0), source(3, 3.0)), List.of(1), false));
+
+        assertEquals(List.of(source(2, 5.0), source(3, 3.0)), sorted(open(100).load()));
+    }
+
+    @Test
+    void dropsTornTail() throws IOException {
+        BinarySourceStorage storage = open(100);
+        storage.save(upsert(source(1, 1.0)));
+        long firstBatch = journal.length();
+        storage.save(upsert(source(2, 2.0)));
+        truncate(journal.length() - 3);
+
+        assertEquals(List.of(source(1, 1.0)), sorted(open(100).load()));
+        assertEquals(firstBatch, journal.length());
+    }
+
+    @Test
+    void dropsBatchWithCrcMismatch() throws IOException {
+        BinarySourceStorage storage = open(100);
+        storage.save(upsert(source(1, 1.0)));
+        long firstBatch = journal.length();
+        storage.save(upsert(source(2, 2.0)));
+        byte[] bytes = Files.readAllBytes(journal.toPath());
+        bytes[bytes.length - 1] ^= 0x5A;
+        Files.write(journal.toPath(), bytes);
+
+        assertEquals(List.of(source(1, 1.0)), sorted(open(100).load()));
+        assertEquals(firstBatch, journal.length());
+    }
+
+    @Test
+    void treatsOversizedLengthHeaderAsTornTail() throws IOException {
+        BinarySourceStorage storage = open(100);
+        storage.save(upsert(source(1, 1.0)));
+        long firstBatch = journal.length();
+        try (FileChannel channel = FileChannel.open(journal.toPath(), StandardOpenOption.APPEND)) {
+            channel.write(ByteBuffer.allocate(12).putInt(Integer.MAX_VALUE).putInt(0).putInt(0).flip());
+        }
+
+        assertEquals(List.of(source(1, 1.0)), sorted(open(100).load()));
+        assertEquals(firstBatch, journal.length());
+    }
+
+    @Test
+    void compactsJournalIntoSnapshot() throws IOException {
+        BinarySourceStorage storage = open(2);
+        storage.save(full(source(1, 1.0)));
+        storage.save(upsert(source(2, 2.0)));
+        assertTrue(journal.exists());
+        storage.save(new SourceChanges(List.of(source(3, 3.0)), List.of(1), false));
+
+        assertFalse(journal.exists());
+        assertEquals(List.of(source(2, 2.0), source(3, 3.0)), sorted(open(2).load()));
+    }
+
+    @Test
+    void replayAfterInterruptedCompactionIsIdempotent() throws IOException {
+        BinarySourceStorage storage = open(100);
+        storage.save(full(source(1, 1.0)));
+        storage.save(new SourceChanges(List.of(source(2, 2.0)), List.of(1), false));
+        byte[] journalBytes = Files.readAllBytes(journal.toPath());
+        storage.compact();
+        // Сервер упал между записью снимка и удалением журнала
+        Files.write(journal.toPath(), journalBytes);
+
+        assertEquals(List.of(source(2, 2.0)), sorted(open(100).load()));
+    }
+
+    private BinarySourceStorage open(int compactThreshold) {
+        return new BinarySourceStorage(snapshot, journal, compactThreshold, LOGGER);
+    }
+
+    private void truncate(long length) throws IOException {
+        try (FileChannel channel = FileChannel.open(journal.toPath(), StandardOpenOption.WRITE)) {
+            channel.truncate(length);
+        }
+    }
+
+    private static SourceRecord source(int id, double radius) {
+        return new SourceRecord(id, 2, radius, 1.0, "world", id * 16.0, 64.0, -id * 16.0);
+    }
+
+    private static SourceChanges full(SourceRecord... records) {
+        return new SourceChanges(List.of(records), List.of(), true);
+    }
+
+    private static SourceChanges upsert(SourceRecord record) {
+        return new SourceChanges(List.of(record), List.of(), false);
+    }
+
+    private static List<SourceRecord> sorted(List<SourceRecord> records) {
+        return records.stream().sorted(Comparator.comparingInt(SourceRecord::id)).toList();
+    }
+}